@@ -1,20 +1,20 @@
 package bike.hackboy.bronco;
 
-import android.bluetooth.BluetoothDevice;
+import android.Manifest;
 import android.bluetooth.BluetoothManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBar;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.navigation.fragment.NavHostFragment;
@@ -22,20 +22,19 @@ import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.Set;
+import java.util.List;
 
+import bike.hackboy.bronco.bean.ScannedBikeBean;
+import bike.hackboy.bronco.hal.BikeScanner;
 import bike.hackboy.bronco.view.DeviceListAdapter;
 
 public class CbyDiscovery extends Fragment {
-	protected final ArrayList<BluetoothDevice> matchingDevices = new ArrayList<>();
+	protected static final int REQUEST_LOCATION = 1;
+
 	protected RecyclerView recyclerViewDevices;
 	protected DeviceListAdapter deviceListAdapter;
-	protected boolean firstRun = true;
-
-	private final Handler loaderThreadHandler = new Handler(Looper.getMainLooper());
-	private final Runnable hideLoader = () ->
-		requireView().findViewById(R.id.loader).setVisibility(View.INVISIBLE);
+	protected BikeScanner scanner;
+	protected boolean permissionAsked = false;
 
 	protected final BroadcastReceiver messageReceiver = new BroadcastReceiver() {
 		@Override
@@ -56,6 +55,8 @@ public class CbyDiscovery extends Fragment {
 
 		LocalBroadcastManager.getInstance(requireContext())
 			.registerReceiver(messageReceiver, new IntentFilter(BuildConfig.APPLICATION_ID));
+
+		listDevices();
 	}
 
 	@Override
@@ -64,6 +65,8 @@ public class CbyDiscovery extends Fragment {
 
 		LocalBroadcastManager.getInstance(requireContext())
 			.unregisterReceiver(messageReceiver);
+
+		scanner.stop();
 	}
 
 	@Override
@@ -83,7 +86,27 @@ public class CbyDiscovery extends Fragment {
 	public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
 		super.onViewCreated(view, savedInstanceState);
 
-		deviceListAdapter = new DeviceListAdapter(requireContext(), matchingDevices);
+		BluetoothManager bluetoothManager = (BluetoothManager) requireContext().getSystemService(Context.BLUETOOTH_SERVICE);
+		scanner = new BikeScanner(bluetoothManager.getAdapter());
+		scanner.setOnResultsListener(new BikeScanner.OnResultsListener() {
+			@Override
+			public void onResults(List<ScannedBikeBean> bikes) {
+				showDevices(bikes);
+			}
+
+			@Override
+			public void onScanStopped() {
+				requireView().findViewById(R.id.loader).setVisibility(View.INVISIBLE);
+				if (deviceListAdapter.getItemCount() < 1) requireView().findViewById(R.id.no_devices).setVisibility(View.VISIBLE);
+			}
+
+			@Override
+			public void onScanFailed(int errorCode) {
+				showDevices(scanner.listBonded());
+			}
+		});
+
+		deviceListAdapter = new DeviceListAdapter(requireContext());
 		deviceListAdapter.setOnDeviceClickListener(new DeviceListAdapter.onDeviceClickListener() {
 			@Override
 			public void onClick(String mac) {
@@ -96,6 +119,20 @@ public class CbyDiscovery extends Fragment {
 		recyclerViewDevices.setItemAnimator(new DefaultItemAnimator());
 
 		view.findViewById(R.id.button_connect).setOnClickListener(v -> listDevices());
+	}
+
+	@Override
+	public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+		if (requestCode != REQUEST_LOCATION) return;
+
+		if (grantResults.length < 1 || grantResults[0] != PackageManager.PERMISSION_GRANTED) {
+			LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+				new Intent(BuildConfig.APPLICATION_ID)
+					.putExtra("event", "toast")
+					.putExtra("message", getString(R.string.location_permission_denied))
+			);
+		}
+
 		listDevices();
 	}
 
@@ -104,34 +141,46 @@ public class CbyDiscovery extends Fragment {
 
 		requireView().findViewById(R.id.bluetooth_off).setVisibility(View.INVISIBLE);
 		requireView().findViewById(R.id.no_devices).setVisibility(View.INVISIBLE);
-		requireView().findViewById(R.id.items_list).setVisibility(View.INVISIBLE);
 
-		matchingDevices.clear();
+		scanner.stop();
 
 		if (!bluetoothManager.getAdapter().isEnabled()) {
+			requireView().findViewById(R.id.items_list).setVisibility(View.INVISIBLE);
 			requireView().findViewById(R.id.bluetooth_off).setVisibility(View.VISIBLE);
 			return;
 		}
 
-		if(!firstRun) showPlaceboLoader();
-		firstRun = false;
-
-		Set<BluetoothDevice> pairedDevices = bluetoothManager.getAdapter().getBondedDevices();
-
-		for(BluetoothDevice device : pairedDevices) {
-			if(device.getName().equals("COWBOY")) {
-				matchingDevices.add(device);
+		// scanning needs location access before Android 12
+		if (ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+			if (!permissionAsked) {
+				permissionAsked = true;
+				requestPermissions(new String[] { Manifest.permission.ACCESS_FINE_LOCATION }, REQUEST_LOCATION);
+				return;
 			}
+
+			showDevices(scanner.listBonded());
+			return;
 		}
 
-		if (matchingDevices.size() < 1) {
-			requireView().findViewById(R.id.no_devices).setVisibility(View.VISIBLE);
+		if (!scanner.start()) {
+			showDevices(scanner.listBonded());
 			return;
 		}
 
-		requireView().findViewById(R.id.items_list).setVisibility(View.VISIBLE);
-		deviceListAdapter.notifyDataSetChanged();
-		//Log.d("devices", matchingDevices.toString());
+		// whatever was found last time stays up until the scan says otherwise
+		requireView().findViewById(R.id.loader).setVisibility(View.VISIBLE);
+	}
+
+	protected void showDevices(List<ScannedBikeBean> bikes) {
+		boolean found = bikes.size() > 0;
+
+		if (found || !scanner.isScanning()) requireView().findViewById(R.id.loader).setVisibility(View.INVISIBLE);
+
+		requireView().findViewById(R.id.no_devices).setVisibility(found || scanner.isScanning() ? View.INVISIBLE : View.VISIBLE);
+		requireView().findViewById(R.id.items_list).setVisibility(found ? View.VISIBLE : View.INVISIBLE);
+
+		deviceListAdapter.submitList(bikes);
+		//Log.d("devices", bikes.toString());
 	}
 
 	protected void connect(String mac) {
@@ -142,13 +191,4 @@ public class CbyDiscovery extends Fragment {
 		intent.putExtra("mac", mac);
 		LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(intent);
 	}
-
-	// listing is instant but let's give some fake feedback to the user so
-	// they don't think nothing happened if the list stays the same
-	protected void showPlaceboLoader() {
-		loaderThreadHandler.removeCallbacks(hideLoader);
-
-		requireView().findViewById(R.id.loader).setVisibility(View.VISIBLE);
-		loaderThreadHandler.postDelayed(hideLoader, (int) (Math.random()*400 + 400));
-	}
 }
\ No newline at end of file
@@ -27,11 +27,17 @@ import com.google.protobuf.InvalidProtocolBufferException;
 
 import bike.hackboy.bronco.bean.DashboardBean;
 import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.telemetry.Latency;
+import bike.hackboy.bronco.telemetry.Telemetry;
+import bike.hackboy.bronco.utils.Tracer;
+import bike.hackboy.bronco.view.TelemetryChartView;
 
 public class Dashboard extends Fragment {
+
 	protected boolean locked = true;
 	protected boolean hasEnabledNotifications = false;
 	protected View view = null;
+	protected TelemetryChartView chart = null;
 
 	protected final BroadcastReceiver messageReceiver = new BroadcastReceiver() {
 		@Override
@@ -43,6 +49,7 @@ public class Dashboard extends Fragment {
 
 			String uuid = intent.getStringExtra("uuid");
 			byte[] value = (intent.getByteArrayExtra("value"));
+			long received = intent.getLongExtra("received", Latency.now());
 
 			switch (uuid.toUpperCase()) {
 				case Uuid.characteristicUnlockString:
@@ -52,12 +59,17 @@ public class Dashboard extends Fragment {
 
 				case Uuid.characteristicDashboardString:
 					//Log.d("uuid_check", "is a dashboard uuid");
+					boolean traced = Tracer.begin("dashboard decode");
+
 					try {
 						DashboardBean db = (new DashboardBean()).fromProtobuf(DashboardProto.Dashboard.parseFrom(value));
-						updateDashboard(db);
+						Telemetry.latency.frameDecoded.record(Latency.now() - received);
+						updateDashboard(db, received);
 					} catch (InvalidProtocolBufferException e) {
 						// ignore, this happens when bike is locked so don't spam it
 						//Log.e("ch_value", "could not parse as protobuf", e);
+					} finally {
+						Tracer.end(traced);
 					}
 				break;
 			}
@@ -89,6 +101,7 @@ public class Dashboard extends Fragment {
 		LocalBroadcastManager.getInstance(requireContext())
 			.registerReceiver(messageReceiver, new IntentFilter(BuildConfig.APPLICATION_ID));
 
+		sendIntent("attach-dashboard");
 		sendIntent("read-lock");
 
 		if(!hasEnabledNotifications) {
@@ -103,6 +116,8 @@ public class Dashboard extends Fragment {
 
 		requireActivity().getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
+		sendIntent("detach-dashboard");
+
 		LocalBroadcastManager.getInstance(requireContext())
 			.unregisterReceiver(messageReceiver);
 	}
@@ -110,6 +125,9 @@ public class Dashboard extends Fragment {
 	public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
 		this.view = view;
 
+		chart = view.findViewById(R.id.chart);
+		chart.setBuffer(Telemetry.history);
+
 		view.findViewById(R.id.button_goto_settings).setOnClickListener(v -> NavHostFragment
 			.findNavController(Dashboard.this)
 			.navigate(R.id.action_Dashboard_to_Settings));
@@ -144,27 +162,43 @@ public class Dashboard extends Fragment {
 	}
 
 	@SuppressLint("DefaultLocale")
-	protected void updateDashboard(DashboardBean db) {
+	protected void updateDashboard(DashboardBean db, long received) {
 		try {
 			//Log.d("dashboard_state", "on dashboard state");
 			//Log.d("dash_parsed", db.toString());
 
 			view.findViewById(R.id.group_settings).setVisibility(View.VISIBLE);
 
+			// from here until the frame that shows it is drawn
+			int render = Tracer.beginAsync("render");
+
 			requireActivity().runOnUiThread(() -> {
 				if (locked) {
 					view.findViewById(R.id.group_locked).setVisibility(View.VISIBLE);
 					view.findViewById(R.id.group_unlocked).setVisibility(View.INVISIBLE);
 
+					Tracer.endAsync("render", render);
 					return;
 				}
 
+				boolean traced = Tracer.begin("dashboard update");
+
 				((TextView) view.findViewById(R.id.distance)).setText(db.getDistance());
 				((TextView) view.findViewById(R.id.battery_percent)).setText(db.getBattery());
 				((TextView) view.findViewById(R.id.duration)).setText(db.getDuration());
 				((TextView) view.findViewById(R.id.speed)).setText(db.getSpeed());
 				((ProgressBar) view.findViewById(R.id.assistance)).setProgress(db.getRawPower());
 				((ProgressBar) view.findViewById(R.id.battery)).setProgress(db.getRawBattery());
+				chart.onSample();
+
+				float range = Telemetry.range.getRange();
+				double whPerKm = Telemetry.energy.getTripWhPerKm();
+
+				((TextView) view.findViewById(R.id.range)).setText(String.format(
+					"%s%s",
+					range < 0 ? "" : String.format(getString(R.string.range_left), String.format("%.1f", range)),
+					whPerKm <= 0 ? "" : String.format(getString(R.string.wh_per_km), String.format("%.1f", whPerKm))
+				));
 
 				view.findViewById(R.id.group_locked).setVisibility(View.INVISIBLE);
 				view.findViewById(R.id.group_unlocked).setVisibility(View.VISIBLE);
@@ -174,6 +208,14 @@ public class Dashboard extends Fragment {
 
 				view.findViewById(R.id.button_light_off).setVisibility(db.isLightOn() ? View.VISIBLE : View.INVISIBLE);
 				view.findViewById(R.id.icon_light_off).setVisibility(db.isLightOn() ? View.INVISIBLE : View.VISIBLE);
+
+				Tracer.end(traced);
+
+				// runs with the next frame's animations, right before it's drawn
+				view.postOnAnimation(() -> {
+					Telemetry.latency.frameDisplayed.record(Latency.now() - received);
+					Tracer.endAsync("render", render);
+				});
 			});
 		} catch (Exception e) {
 			Log.e("dashboard_update", "failed in dashboard listener", e);
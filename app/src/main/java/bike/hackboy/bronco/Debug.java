@@ -0,0 +1,142 @@
+package bike.hackboy.bronco;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.ActionBar;
+import androidx.fragment.app.Fragment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import bike.hackboy.bronco.telemetry.Telemetry;
+import bike.hackboy.bronco.utils.Tracer;
+
+public class Debug extends Fragment {
+	protected static final int REFRESH_INTERVAL = 1000;
+
+	protected final Handler handler = new Handler(Looper.getMainLooper());
+	protected TextView report = null;
+
+	protected final Runnable refresh = new Runnable() {
+		@Override
+		public void run() {
+			report.setText(buildReport());
+			handler.postDelayed(this, REFRESH_INTERVAL);
+		}
+	};
+
+	@Override
+	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+		ActionBar bar = ((MainActivity) requireActivity()).getSupportActionBar();
+		assert bar != null;
+
+		bar.setTitle(R.string.debug);
+		bar.setDisplayHomeAsUpEnabled(true);
+
+		return inflater.inflate(R.layout.debug, container, false);
+	}
+
+	public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+		super.onViewCreated(view, savedInstanceState);
+
+		report = view.findViewById(R.id.latency_report);
+
+		view.findViewById(R.id.button_reset).setOnClickListener(v -> {
+			Telemetry.latency.reset();
+			Telemetry.metrics.reset();
+			report.setText(buildReport());
+		});
+
+		view.findViewById(R.id.button_export).setOnClickListener(v -> export());
+
+		Button tracing = view.findViewById(R.id.button_tracing);
+		updateTracingButton(tracing);
+
+		tracing.setOnClickListener(v -> {
+			Tracer.setEnabled(!Tracer.isEnabled());
+
+			requireContext().getSharedPreferences(Tracer.PREFERENCES, Context.MODE_PRIVATE)
+				.edit()
+				.putBoolean(Tracer.PREFERENCE_ENABLED, Tracer.isEnabled())
+				.apply();
+
+			updateTracingButton(tracing);
+		});
+	}
+
+	protected void updateTracingButton(Button button) {
+		button.setText(String.format(
+			getString(R.string.system_tracing),
+			getString(Tracer.isEnabled() ? R.string.on : R.string.off)
+		));
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		handler.post(refresh);
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+		handler.removeCallbacks(refresh);
+	}
+
+	protected String buildReport() {
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+
+		Telemetry.latency.report(out);
+		out.println();
+		Telemetry.metrics.report(out);
+		out.flush();
+
+		return text.toString();
+	}
+
+	protected void export() {
+		String text = buildReport();
+
+		// keep a copy next to the captures, then hand it to whatever the user wants to share with
+		File directory = requireContext().getExternalFilesDir("latency");
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+
+		if (directory != null && (directory.isDirectory() || directory.mkdirs())) {
+			File file = new File(directory, "latency-" + name + ".txt");
+
+			try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+				out.write(text);
+				Toast.makeText(requireContext(), "Saved to " + file.getName(), Toast.LENGTH_SHORT).show();
+			} catch (IOException e) {
+				Toast.makeText(requireContext(), "Could not save: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+			}
+		}
+
+		Intent share = new Intent(Intent.ACTION_SEND)
+			.setType("text/plain")
+			.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.latency_report))
+			.putExtra(Intent.EXTRA_TEXT, text);
+
+		startActivity(Intent.createChooser(share, getString(R.string.export)));
+	}
+}
@@ -18,6 +18,7 @@ import androidx.fragment.app.Fragment;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.navigation.fragment.NavHostFragment;
 
+import bike.hackboy.bronco.bean.ConfigProfileBean;
 import bike.hackboy.bronco.data.Uuid;
 import bike.hackboy.bronco.utils.FlashWriter;
 
@@ -26,7 +27,7 @@ public class FieldWeakening extends Fragment {
 	protected int weakeningAsiValue = 0;
 	protected boolean commitWrite = false;
 
-	protected static final double ASI_FIELD_WEAKENING_MULTIPLIER = 40.96;
+	protected static final double ASI_FIELD_WEAKENING_MULTIPLIER = ConfigProfileBean.ASI_FIELD_WEAKENING_MULTIPLIER;
 
 	protected final BroadcastReceiver messageReceiver = new BroadcastReceiver() {
 		@Override
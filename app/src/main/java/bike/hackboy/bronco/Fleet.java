@@ -0,0 +1,100 @@
+package bike.hackboy.bronco;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.ActionBar;
+import androidx.fragment.app.Fragment;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.DefaultItemAnimator;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+import bike.hackboy.bronco.bean.BikeStateBean;
+import bike.hackboy.bronco.view.FleetListAdapter;
+
+public class Fleet extends Fragment {
+	protected RecyclerView recyclerViewBikes;
+	protected FleetListAdapter fleetListAdapter;
+
+	protected final BroadcastReceiver messageReceiver = new BroadcastReceiver() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public void onReceive(Context context, Intent intent) {
+			String event = intent.getStringExtra("event");
+			if (!"on-fleet".equals(event)) return;
+
+			showBikes((List<BikeStateBean>) intent.getSerializableExtra("bikes"));
+		}
+	};
+
+	@Override
+	public void onResume() {
+		super.onResume();
+
+		LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(requireContext());
+		lbm.registerReceiver(messageReceiver, new IntentFilter(BuildConfig.APPLICATION_ID));
+
+		// the service sends snapshots for as long as someone's watching
+		lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "watch-fleet"));
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+
+		LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(requireContext());
+		lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "unwatch-fleet"));
+		lbm.unregisterReceiver(messageReceiver);
+	}
+
+	@Override
+	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+		View rootView = inflater.inflate(R.layout.fleet, container, false);
+		recyclerViewBikes = rootView.findViewById(R.id.items_list);
+
+		ActionBar bar = ((MainActivity) requireActivity()).getSupportActionBar();
+		assert bar != null;
+
+		bar.setTitle(R.string.fleet);
+		bar.setDisplayHomeAsUpEnabled(true);
+
+		return rootView;
+	}
+
+	public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+		super.onViewCreated(view, savedInstanceState);
+
+		fleetListAdapter = new FleetListAdapter(requireContext());
+		fleetListAdapter.setOnBikeClickListener(new FleetListAdapter.onBikeClickListener() {
+			@Override
+			public void onClick(String mac) {
+				LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+					new Intent(BuildConfig.APPLICATION_ID)
+						.putExtra("event", "switch-bike")
+						.putExtra("mac", mac)
+				);
+			}
+		});
+
+		recyclerViewBikes.setLayoutManager(new LinearLayoutManager(requireContext()));
+		recyclerViewBikes.setAdapter(fleetListAdapter);
+		recyclerViewBikes.setItemAnimator(new DefaultItemAnimator());
+		// the list fills the screen whatever is in it, refreshes don't need to measure it again
+		recyclerViewBikes.setHasFixedSize(true);
+	}
+
+	protected void showBikes(List<BikeStateBean> bikes) {
+		requireView().findViewById(R.id.no_bikes).setVisibility(bikes.isEmpty() ? View.VISIBLE : View.INVISIBLE);
+		fleetListAdapter.submitList(bikes);
+	}
+}
@@ -4,7 +4,10 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-
+import android.content.pm.ShortcutInfo;
+import android.content.pm.ShortcutManager;
+import android.graphics.drawable.Icon;
+import android.os.Build;
 import android.os.Bundle;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -19,10 +22,14 @@ import android.widget.Toast;
 import java.util.ArrayList;
 import java.util.List;
 
+import bike.hackboy.bronco.bean.ConfigProfileBean;
 import bike.hackboy.bronco.hal.BikeService;
+import bike.hackboy.bronco.utils.ProfileStore;
 
 public class MainActivity extends AppCompatActivity {
     protected static final String ACTION_RESET_SPEED = "bike.hackboy.bronco.RESET_SPEED";
+    protected static final String ACTION_APPLY_PROFILE = "bike.hackboy.bronco.APPLY_PROFILE";
+    protected static final String EXTRA_PROFILE = "profile";
     protected LocalBroadcastManager localBroadcastManager;
 
     private final BroadcastReceiver messageReceiver = new BroadcastReceiver() {
@@ -58,6 +65,8 @@ public class MainActivity extends AppCompatActivity {
 
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
+
+        updateProfileShortcuts(getApplicationContext());
     }
 
     @Override
@@ -106,6 +115,41 @@ public class MainActivity extends AppCompatActivity {
 
             this.finishAffinity();
         }
+
+        if (ACTION_APPLY_PROFILE.equals(getIntent().getAction())) {
+            LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(
+                new Intent(BuildConfig.APPLICATION_ID)
+                    .putExtra("event", "apply-profile")
+                    .putExtra("name", getIntent().getStringExtra(EXTRA_PROFILE))
+            );
+
+            this.finishAffinity();
+        }
+    }
+
+    // one launcher shortcut per ride profile, next to the static reset speed one
+    public static void updateProfileShortcuts(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N_MR1) return;
+
+        ShortcutManager shortcutManager = context.getSystemService(ShortcutManager.class);
+        List<ShortcutInfo> shortcuts = new ArrayList<>();
+
+        for (ConfigProfileBean profile : ProfileStore.load(context)) {
+            if (shortcuts.size() >= shortcutManager.getMaxShortcutCountPerActivity() - 1) break;
+
+            Intent intent = new Intent(context, MainActivity.class)
+                .setAction(ACTION_APPLY_PROFILE)
+                .putExtra(EXTRA_PROFILE, profile.getName());
+
+            shortcuts.add(new ShortcutInfo.Builder(context, "profile_" + profile.getName())
+                .setShortLabel(profile.getName())
+                .setLongLabel(context.getString(R.string.apply_profile, profile.getName()))
+                .setIcon(Icon.createWithResource(context, R.drawable.ic_bike))
+                .setIntent(intent)
+                .build());
+        }
+
+        shortcutManager.setDynamicShortcuts(shortcuts);
     }
 
     @Override
@@ -125,6 +169,8 @@ public class MainActivity extends AppCompatActivity {
         backable.add((String) getText(R.string.speed_setting));
         backable.add((String) getText(R.string.field_weakening));
         backable.add((String) getText(R.string.settings));
+        backable.add((String) getText(R.string.debug));
+        backable.add((String) getText(R.string.fleet));
 
         assert getSupportActionBar() != null;
         assert getSupportActionBar().getTitle() != null;
@@ -19,25 +19,58 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
+import bike.hackboy.bronco.bean.ConfigProfileBean;
 import bike.hackboy.bronco.bean.SettingBean;
 import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.hal.ProfileApplier;
+import bike.hackboy.bronco.hal.transport.ReplayTransport;
+import bike.hackboy.bronco.telemetry.Telemetry;
+import bike.hackboy.bronco.utils.ProfileStore;
 import bike.hackboy.bronco.view.SettingsAdapter;
 
 public class Settings extends Fragment {
-	protected final ArrayList<SettingBean> settings = new ArrayList<>();
 	protected RecyclerView recyclerViewSettings;
 	protected SettingsAdapter settingsListAdapter;
 
 	protected boolean isUnlocked;
+	protected boolean lockKnown = false;
 	protected int autoLockTimer = -1;
 
+	protected String[] bikes = {};
+	protected String activeBike = null;
+	protected int maxBikes = 0;
+
+	// matches R.array.replay_speeds
+	protected static final double[] REPLAY_SPEEDS = { 1, 10, ReplayTransport.AS_FAST_AS_POSSIBLE };
+
+	protected static final int[] AUTO_LOCK_VALUES = { 0, 5, 10, 15, 30 };
+	protected static final String[] MAX_BIKES_ITEMS = { "1", "2", "3", "4", "5" };
+
+	// formatted once per screen, not on every lock or timer update
+	protected String[] autoLockItems;
+	protected String onLabel;
+	protected String offLabel;
+	protected File lastCapture = null;
+
 	protected final BroadcastReceiver messageReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(Context context, Intent intent) {
 			String event = intent.getStringExtra("event");
+
+			if (event.equals("on-bikes")) {
+				Settings.this.bikes = intent.getStringArrayExtra("macs");
+				Settings.this.activeBike = intent.getStringExtra("active");
+				Settings.this.maxBikes = intent.getIntExtra("max", 0);
+				buildSettings();
+				return;
+			}
+
 			if(!event.equals("on-characteristic-read")) return;
 
 			String uuid = intent.getStringExtra("uuid");
@@ -45,12 +78,19 @@ public class Settings extends Fragment {
 
 			switch(uuid.toUpperCase()) {
 				case Uuid.characteristicUnlockString:
+					// the bike repeats itself, nothing to rebuild then
+					if (Settings.this.lockKnown && Settings.this.isUnlocked == (value[0] == 0x1)) return;
+
+					Settings.this.lockKnown = true;
 					Settings.this.isUnlocked = (value[0] == 0x1);
 					buildSettings();
 				break;
 
 				case Uuid.characteristicSettingsReadString:
-					if(value[0] == 0xa && value[1] == 0x3) {
+					// unit 10 answers for the speed too, the applier reads both
+					if (intent.getIntExtra("register", -1) != ProfileApplier.REGISTER_AUTO_LOCK) return;
+
+					if(value[0] == 0xa && value[1] == 0x3 && value[4] != Settings.this.autoLockTimer) {
 						Settings.this.autoLockTimer = value[4];
 						buildSettings();
 					}
@@ -93,7 +133,19 @@ public class Settings extends Fragment {
 	public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
 		super.onViewCreated(view, savedInstanceState);
 
-		settingsListAdapter = new SettingsAdapter(requireContext(), settings);
+		settingsListAdapter = new SettingsAdapter(requireContext());
+
+		String minutes = getString(R.string.number_minutes);
+		autoLockItems = new String[AUTO_LOCK_VALUES.length];
+		autoLockItems[0] = getString(R.string.disabled);
+
+		for (int i = 1; i < AUTO_LOCK_VALUES.length; i++) {
+			autoLockItems[i] = String.format(minutes, AUTO_LOCK_VALUES[i]);
+		}
+
+		onLabel = getString(R.string.on);
+		offLabel = getString(R.string.off);
+		lastCapture = findLastCapture();
 
 		recyclerViewSettings.setLayoutManager(new LinearLayoutManager(requireContext()));
 		recyclerViewSettings.setAdapter(settingsListAdapter);
@@ -104,94 +156,315 @@ public class Settings extends Fragment {
 		// lock state read is instant so shouldn't block
 		lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "read-lock"));
 		lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "read-auto-lock"));
+		lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "list-bikes"));
 	}
 
 	protected void buildSettings() {
-		settings.clear();
+		List<SettingBean> settings = new ArrayList<>();
 
 		if (isUnlocked) {
 			settings.add(new SettingBean()
+				.setId(R.string.speed_setting)
 				.setName((String) getText(R.string.speed_setting))
 				.setDescription((String) getText(R.string.description_speed_setting))
 				.setHasArrow(true)
-				.setOnClickListener(v ->
-					NavHostFragment.findNavController(Settings.this)
-						.navigate(R.id.action_settings_to_SpeedSetting))
+				.setOnClickListener(openSpeedSetting)
 			);
 
 			settings.add(new SettingBean()
+				.setId(R.string.field_weakening)
 				.setName((String) getText(R.string.field_weakening))
 				.setDescription((String) getText(R.string.description_field_weakening))
 				.setHasArrow(true)
-				.setOnClickListener(v ->
-					NavHostFragment.findNavController(Settings.this)
-						.navigate(R.id.action_settings_to_FieldWeakening))
+				.setOnClickListener(openFieldWeakening)
+			);
+
+			settings.add(new SettingBean()
+				.setId(R.string.ride_profiles)
+				.setName((String) getText(R.string.ride_profiles))
+				.setDescription((String) getText(R.string.description_ride_profiles))
+				.setOnClickListener(openProfiles)
 			);
 		}
 
 		settings.add(new SettingBean()
+			.setId(R.string.cby_user_details)
 			.setName((String) getText(R.string.cby_user_details))
 			.setDescription((String) getText(R.string.description_bike_details))
 			.setHasArrow(true)
-			.setOnClickListener(v ->
-				NavHostFragment.findNavController(Settings.this)
-					.navigate(R.id.action_settings_to_UserData))
+			.setOnClickListener(openUserData)
 		);
 
-		int[] values = {0, 5, 10, 15, 30};
-		String[] items = {
-			getString(R.string.disabled),
-			String.format(getString(R.string.number_minutes), "5"),
-			String.format(getString(R.string.number_minutes), "10"),
-			String.format(getString(R.string.number_minutes), "15"),
-			String.format(getString(R.string.number_minutes), "30"),
-		};
-
-		String autoLockTimerValue = (autoLockTimer > 0) ? String.valueOf(autoLockTimer) : getString(R.string.off);
-
 		settings.add(new SettingBean()
+			.setId(R.string.auto_lock)
 			.setName((String) getText(R.string.auto_lock))
 			.setDescription((String) getText(R.string.description_auto_lock))
-			.setValue(autoLockTimer > -1 ? autoLockTimerValue : "")
-			.setOnClickListener(v -> {
-				if(autoLockTimer < 0) return;
-
-				new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
-					.setTitle(R.string.auto_lock)
-					.setItems(items, (dialog, which) -> setAutoLockTimer(values[which]))
-					.show();
-			})
+			.setValue(autoLockTimer < 0 ? "" : autoLockTimer > 0 ? String.valueOf(autoLockTimer) : offLabel)
+			.setOnClickListener(showAutoLock)
 		);
 
 		settings.add(new SettingBean()
+			.setId(R.string.disconnect)
 			.setName((String) getText(R.string.disconnect))
 			.setDescription((String) getText(R.string.description_disconnect))
-			.setOnClickListener(v ->
-				LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
-					new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "disconnect")
-				))
+			.setOnClickListener(disconnect)
 		);
 
+		if (maxBikes > 0) {
+			settings.add(new SettingBean()
+				.setId(R.string.bikes)
+				.setName((String) getText(R.string.bikes))
+				.setDescription((String) getText(R.string.description_bikes))
+				.setValue(String.format(getString(R.string.number_bikes), bikes.length, maxBikes))
+				.setOnClickListener(openBikes)
+			);
+
+			settings.add(new SettingBean()
+				.setId(R.string.fleet)
+				.setName((String) getText(R.string.fleet))
+				.setDescription((String) getText(R.string.description_fleet))
+				.setHasArrow(true)
+				.setOnClickListener(openFleet)
+			);
+
+			settings.add(new SettingBean()
+				.setId(R.string.max_bikes)
+				.setName((String) getText(R.string.max_bikes))
+				.setDescription((String) getText(R.string.description_max_bikes))
+				.setValue(String.valueOf(maxBikes))
+				.setOnClickListener(showMaxBikes)
+			);
+		}
+
 		settings.add(new SettingBean()
+			.setId(R.string.frame_capture)
+			.setName((String) getText(R.string.frame_capture))
+			.setDescription((String) getText(R.string.description_frame_capture))
+			.setValue(Telemetry.capture.isRunning() ? onLabel : offLabel)
+			.setOnClickListener(toggleCapture)
+		);
+
+		if (lastCapture != null && !Telemetry.capture.isRunning()) {
+			settings.add(new SettingBean()
+				.setId(R.string.replay_capture)
+				.setName((String) getText(R.string.replay_capture))
+				.setDescription((String) getText(R.string.description_replay_capture))
+				.setValue(lastCapture.getName())
+				.setOnClickListener(showReplay)
+			);
+		}
+
+		settings.add(new SettingBean()
+			.setId(R.string.debug)
+			.setName((String) getText(R.string.debug))
+			.setDescription((String) getText(R.string.description_debug))
+			.setHasArrow(true)
+			.setOnClickListener(openDebug)
+		);
+
+		settings.add(new SettingBean()
+			.setId(R.string.about)
 			.setName((String) getText(R.string.about))
 			.setDescription((String) getText(R.string.description_about))
-			.setOnClickListener(v ->
-				new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
-					.setTitle(R.string.about_title)
-					.setMessage(R.string.credits)
-					.setNegativeButton(R.string.got_it, null)
-					.setPositiveButton(R.string.visit_sub, (dialog, whichButton) -> {
-						dialog.dismiss();
-						Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("https://www.reddit.com/r/cowboybikes/"));
-						startActivity(browserIntent);
-					})
-					.show())
+			.setOnClickListener(showAbout)
 		);
 
 		requireView().findViewById(R.id.unlock_for_more_options).setVisibility(isUnlocked ? View.GONE : View.VISIBLE);
 		requireView().findViewById(R.id.items_list).setVisibility(View.VISIBLE);
 
-		settingsListAdapter.notifyDataSetChanged();
+		settingsListAdapter.submitList(settings);
+	}
+
+	// --------------------------------------------------
+	// made once, every rebuild hands the same ones to the new beans
+
+	protected final View.OnClickListener openSpeedSetting = v ->
+		NavHostFragment.findNavController(Settings.this).navigate(R.id.action_settings_to_SpeedSetting);
+
+	protected final View.OnClickListener openFieldWeakening = v ->
+		NavHostFragment.findNavController(Settings.this).navigate(R.id.action_settings_to_FieldWeakening);
+
+	protected final View.OnClickListener openUserData = v ->
+		NavHostFragment.findNavController(Settings.this).navigate(R.id.action_settings_to_UserData);
+
+	protected final View.OnClickListener openFleet = v ->
+		NavHostFragment.findNavController(Settings.this).navigate(R.id.action_settings_to_Fleet);
+
+	protected final View.OnClickListener openDebug = v ->
+		NavHostFragment.findNavController(Settings.this).navigate(R.id.action_settings_to_Debug);
+
+	protected final View.OnClickListener openProfiles = v -> showProfiles();
+
+	protected final View.OnClickListener openBikes = v -> showBikes();
+
+	protected final View.OnClickListener showAutoLock = v -> {
+		if (autoLockTimer < 0) return;
+
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.auto_lock)
+			.setItems(autoLockItems, (dialog, which) -> setAutoLockTimer(AUTO_LOCK_VALUES[which]))
+			.show();
+	};
+
+	protected final View.OnClickListener disconnect = v ->
+		LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+			new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "disconnect")
+		);
+
+	protected final View.OnClickListener showMaxBikes = v ->
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.max_bikes)
+			.setItems(MAX_BIKES_ITEMS, (dialog, which) ->
+				LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+					new Intent(BuildConfig.APPLICATION_ID)
+						.putExtra("event", "set-max-bikes")
+						.putExtra("value", which + 1)
+				)
+			)
+			.setNegativeButton(R.string.cancel, null)
+			.show();
+
+	protected final View.OnClickListener toggleCapture = v -> {
+		// sync so the new state is there when the list is rebuilt
+		LocalBroadcastManager.getInstance(requireContext()).sendBroadcastSync(
+			new Intent(BuildConfig.APPLICATION_ID)
+				.putExtra("event", Telemetry.capture.isRunning() ? "stop-capture" : "start-capture")
+		);
+
+		lastCapture = findLastCapture();
+		buildSettings();
+	};
+
+	protected final View.OnClickListener showReplay = v -> {
+		File capture = lastCapture;
+		if (capture == null) return;
+
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.replay_capture)
+			.setItems(getResources().getStringArray(R.array.replay_speeds), (dialog, which) ->
+				LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+					new Intent(BuildConfig.APPLICATION_ID)
+						.putExtra("event", "replay")
+						.putExtra("file", capture.getAbsolutePath())
+						.putExtra("speed", REPLAY_SPEEDS[which])
+				)
+			)
+			.setNegativeButton(R.string.cancel, null)
+			.show();
+	};
+
+	protected final View.OnClickListener showAbout = v ->
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.about_title)
+			.setMessage(R.string.credits)
+			.setNegativeButton(R.string.got_it, null)
+			.setPositiveButton(R.string.visit_sub, (dialog, whichButton) -> {
+				dialog.dismiss();
+				Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("https://www.reddit.com/r/cowboybikes/"));
+				startActivity(browserIntent);
+			})
+			.show();
+
+	protected void showBikes() {
+		String[] items = new String[bikes.length + 1];
+
+		for (int i = 0; i < bikes.length; i++) {
+			items[i] = bikes[i].equals(activeBike) ? bikes[i] + " ✓" : bikes[i];
+		}
+
+		items[bikes.length] = getString(R.string.connect_another_bike);
+
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.bikes)
+			.setItems(items, (dialog, which) -> {
+				if (which == bikes.length) {
+					NavHostFragment.findNavController(Settings.this).navigate(R.id.CbyDiscovery);
+					return;
+				}
+
+				if (bikes[which].equals(activeBike)) return;
+
+				LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(requireContext());
+
+				lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID)
+					.putExtra("event", "switch-bike")
+					.putExtra("mac", bikes[which]));
+
+				// everything on this screen was the other bike's
+				isUnlocked = false;
+				lockKnown = false;
+				autoLockTimer = -1;
+				buildSettings();
+
+				lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "read-lock"));
+				lbm.sendBroadcast(new Intent(BuildConfig.APPLICATION_ID).putExtra("event", "read-auto-lock"));
+			})
+			.setNegativeButton(R.string.cancel, null)
+			.show();
+	}
+
+	protected void showProfiles() {
+		List<ConfigProfileBean> profiles = ProfileStore.load(requireContext());
+		String[] items = new String[profiles.size() + 1];
+
+		for (int i = 0; i < profiles.size(); i++) {
+			items[i] = profiles.get(i).getName();
+		}
+
+		items[profiles.size()] = getString(R.string.save_current_settings);
+
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.ride_profiles)
+			.setItems(items, (dialog, which) -> {
+				if (which == profiles.size()) {
+					saveProfile();
+					return;
+				}
+
+				LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+					new Intent(BuildConfig.APPLICATION_ID)
+						.putExtra("event", "apply-profile")
+						.putExtra("name", items[which])
+				);
+			})
+			.setNegativeButton(R.string.cancel, null)
+			.show();
+	}
+
+	protected void saveProfile() {
+		EditText name = new EditText(requireContext());
+		name.setHint(R.string.profile_name);
+		name.setSingleLine();
+
+		new AlertDialog.Builder(requireContext(), R.style.Theme_Bronco_AlertDialog)
+			.setTitle(R.string.save_current_settings)
+			.setView(name)
+			.setPositiveButton(R.string.save, (dialog, whichButton) -> {
+				String profileName = name.getText().toString().trim();
+				if (profileName.isEmpty()) return;
+
+				// same name replaces the stored one
+				LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(
+					new Intent(BuildConfig.APPLICATION_ID)
+						.putExtra("event", "save-profile")
+						.putExtra("name", profileName)
+				);
+			})
+			.setNegativeButton(R.string.cancel, null)
+			.show();
+	}
+
+	protected File findLastCapture() {
+		File directory = requireContext().getExternalFilesDir("captures");
+		File[] captures = directory != null ? directory.listFiles((dir, name) -> name.endsWith(".bin")) : null;
+		if (captures == null) return null;
+
+		File last = null;
+		for (File capture : captures) {
+			if (last == null || capture.lastModified() > last.lastModified()) last = capture;
+		}
+
+		return last;
 	}
 
 	protected void setAutoLockTimer(int time) {
@@ -1,9 +1,9 @@
 package bike.hackboy.bronco;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.PowerManager;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBar;
@@ -20,12 +20,17 @@ import android.widget.Toast;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.ocpsoft.prettytime.PrettyTime;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
+import bike.hackboy.bronco.api.BikeCache;
+import bike.hackboy.bronco.api.BikeParser;
+import bike.hackboy.bronco.api.BikePoller;
 import bike.hackboy.bronco.api.Client;
 import bike.hackboy.bronco.bean.CbyBikeResponseBean;
 import bike.hackboy.bronco.bean.BikePropertyBean;
@@ -50,11 +55,19 @@ public class User extends Fragment {
 	protected final List<BikePropertyBean> bikePropertiesList = new ArrayList<>();
 	protected RecyclerView recyclerViewBikeDetails;
 	protected DetailsViewAdapter detailsViewAdapter;
+	protected BikePoller poller = null;
 
 	@Override
 	public void onResume() {
 		super.onResume();
 		if(loading) ensureUserData();
+		else if(loggedIn) startPolling();
+	}
+
+	@Override
+	public void onPause() {
+		stopPolling();
+		super.onPause();
 	}
 
 	@Override
@@ -101,14 +114,35 @@ public class User extends Fragment {
 		editor.apply();
 	}
 
-	protected void storeBike(CbyBikeResponseBean bike) {
+	protected void storeBike(CbyBikeResponseBean bike, long savedAt) {
 		this.bike = bike;
 		//Log.d("bike", bike.toString());
 
-		bikePropertiesList.clear();
-		bikePropertiesList.addAll(BikePropertyFactory.fromBikeBean(bike));
+		PrettyTime pt = new PrettyTime();
+		pt.setLocale(Locale.US);
 
-		detailsViewAdapter.notifyDataSetChanged();
+		BikePropertyBean age = new BikePropertyBean();
+		age.setName(R.string.details_updated);
+		age.setValue(pt.format(new Date(savedAt)));
+
+		List<BikePropertyBean> properties = BikePropertyFactory.fromBikeBean(bike);
+		properties.add(0, age);
+
+		if (properties.size() != bikePropertiesList.size()) {
+			bikePropertiesList.clear();
+			bikePropertiesList.addAll(properties);
+
+			detailsViewAdapter.notifyDataSetChanged();
+			return;
+		}
+
+		// revalidation usually changes a row or two, leave the rest alone
+		for (int i = 0; i < properties.size(); i++) {
+			if (properties.get(i).hasSameContent(bikePropertiesList.get(i))) continue;
+
+			bikePropertiesList.set(i, properties.get(i));
+			detailsViewAdapter.notifyItemChanged(i);
+		}
 	}
 
 	protected void ensureUserData() {
@@ -122,11 +156,68 @@ public class User extends Fragment {
 		loggedIn = uid != null && clientId != null && token != null && bikeId > 0;
 		if(!loggedIn) loading = false;
 
+		BikeCache.Entry cached = loggedIn ? BikeCache.load(requireContext(), bikeId) : null;
+
+		if (cached != null) {
+			// show what we have right away, refresh behind it if it's getting old
+			loading = false;
+
+			storeBike(cached.getBike(), cached.getSavedAt());
+			setupUi(loggedIn, loading);
+
+			if (!cached.isFresh()) getBike(true);
+			startPolling();
+			return;
+		}
+
 		setupUi(loggedIn, loading);
-		if(loggedIn) getBike();
+		if(loggedIn) {
+			getBike(false);
+			startPolling();
+		}
+	}
+
+	protected void startPolling() {
+		if (poller != null) return;
+
+		Context appContext = requireContext().getApplicationContext();
+		PowerManager powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+
+		poller = new BikePoller(uid, clientId, token, bikeId, new BikePoller.OnUpdateListener() {
+			@Override
+			public void onBike(CbyBikeResponseBean bike) {
+				BikeCache.save(appContext, bikeId, bike);
+				long savedAt = System.currentTimeMillis();
+
+				if (!isAdded()) return;
+				requireActivity().runOnUiThread(() -> storeBike(bike, savedAt));
+			}
+		});
+
+		poller.setIdleCheck(new BikePoller.IdleCheck() {
+			@Override
+			public boolean isDeviceIdle() {
+				return powerManager != null && powerManager.isDeviceIdleMode();
+			}
+		});
+
+		// the first load (or the cache) already covers now
+		poller.start(BikePoller.MIN_INTERVAL_MILLIS);
+	}
+
+	protected void stopPolling() {
+		if (poller == null) return;
+
+		poller.stop();
+		poller = null;
 	}
 
 	protected void logout() {
+		stopPolling();
+		BikeCache.clear(requireContext());
+		bikePropertiesList.clear();
+		detailsViewAdapter.notifyDataSetChanged();
+
 		storeCredentials(null, null, null, 0);
 		ensureUserData();
 	}
@@ -198,9 +289,13 @@ public class User extends Fragment {
 		client.login(username, password);
 	}
 
-	protected void getBike() {
-		loading = true;
-		setupUi(loggedIn, true);
+	protected void getBike(boolean revalidate) {
+		if (!revalidate) {
+			loading = true;
+			setupUi(loggedIn, true);
+		}
+
+		Context appContext = requireContext().getApplicationContext();
 
 		Client client = new Client(new Client.OnDoneCallback() {
 			@Override
@@ -209,52 +304,22 @@ public class User extends Fragment {
 					if (response.code() == 200) {
 						//Log.d("http", response.toString());
 
-						CbyBikeResponseBean bike = new CbyBikeResponseBean();
+						CbyBikeResponseBean bike;
 
+						// decoded here on the client thread, only the finished bean goes to the ui
 						try {
-							JSONObject bikeJson = new JSONObject(response.body().string());
-
-							bike.setBatteryCharge((float) bikeJson.getLong("battery_state_of_charge"));
-							bike.setPcbBatteryCharge((float) bikeJson.getLong("pcb_battery_state_of_charge"));
-
-							bike.setCarbonSaved(bikeJson.getInt("total_co2_saved"));
-							bike.setTotalDistance((float) bikeJson.getDouble("total_distance"));
-							bike.setAutonomy((float) bikeJson.getDouble("autonomy"));
-
-							bike.setPositionAddress(bikeJson.getJSONObject("position").getString("address"));
-							bike.setPositionLat((float) bikeJson.getJSONObject("position").getDouble("latitude"));
-							bike.setPositionLon((float) bikeJson.getJSONObject("position").getDouble("longitude"));
-
-							bike.setColor(bikeJson.getJSONObject("sku").getString("color"));
-							bike.setMarket(bikeJson.getJSONObject("sku").getString("market"));
-
-							bike.setPasskey(bikeJson.getString("passkey"));
-							bike.setSerial(bikeJson.getString("serial_number"));
-							bike.setMac(bikeJson.getString("mac_address"));
-							bike.setName(bikeJson.getString("nickname"));
-							bike.setFirmwareVersion(bikeJson.getString("firmware_version"));
-
-							@SuppressLint("SimpleDateFormat")
-							SimpleDateFormat sourceFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-							@SuppressLint("SimpleDateFormat")
-							SimpleDateFormat targetFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-
-							String activationDate = targetFormat.format(sourceFormat.parse(bikeJson.getString("activated_at")));
-
-							try {
-								bike.setSeenAt(sourceFormat.parse(bikeJson.getString("seen_at")));
-								bike.setActivatedAt(activationDate);
-								bike.setPositionReceivedAt(sourceFormat.parse(bikeJson.getJSONObject("position").getString("received_at")));
-							} catch (ParseException ignored) { }
-
-						} catch(JSONException | NullPointerException e) {
+							bike = BikeParser.parse(response.body().charStream());
+						} catch(IOException | NullPointerException e) {
 							throw new IllegalStateException("bike id not found");
 						}
 
+						BikeCache.save(appContext, bikeId, bike);
+						long savedAt = System.currentTimeMillis();
+
 						requireActivity().runOnUiThread(() -> {
 							loading = false;
 
-							storeBike(bike);
+							storeBike(bike, savedAt);
 							setupUi(loggedIn, loading);
 						});
 					} else {
@@ -268,6 +333,12 @@ public class User extends Fragment {
 			@Override
 			public void onError(Exception e) {
 				requireActivity().runOnUiThread(() -> {
+					if (revalidate) {
+						// cached details stay on screen, they're just not getting any younger
+						if (isAdded()) Toast.makeText(requireContext(), "Showing saved details: "+e.getMessage(), Toast.LENGTH_LONG).show();
+						return;
+					}
+
 					if (isAdded()) Toast.makeText(requireContext(), "Failed: "+e.getMessage(), Toast.LENGTH_LONG).show();
 					setupUi(false, false);
 				});
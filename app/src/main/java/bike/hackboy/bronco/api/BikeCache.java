@@ -0,0 +1,155 @@
+package bike.hackboy.bronco.api;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import bike.hackboy.bronco.bean.CbyBikeResponseBean;
+
+/**
+ * Last known bike details on disk, so the details screen can render straight away
+ * (and offline) while a fresh copy is fetched.
+ */
+public class BikeCache {
+	protected static final String FILE_NAME = "bike.cache";
+	protected static final int VERSION = 1;
+
+	// younger than this is fresh enough to skip the network altogether
+	public static final long TTL_MILLIS = 5 * 60 * 1000L;
+
+	public static class Entry {
+		private final CbyBikeResponseBean bike;
+		private final long savedAt;
+
+		Entry(CbyBikeResponseBean bike, long savedAt) {
+			this.bike = bike;
+			this.savedAt = savedAt;
+		}
+
+		public CbyBikeResponseBean getBike() {
+			return bike;
+		}
+
+		public long getSavedAt() {
+			return savedAt;
+		}
+
+		public long getAgeMillis() {
+			return System.currentTimeMillis() - savedAt;
+		}
+
+		public boolean isFresh() {
+			long age = getAgeMillis();
+			return age >= 0 && age < TTL_MILLIS;
+		}
+	}
+
+	/** @return the cached bike, or null if there's none for this bike id */
+	public static Entry load(Context context, int bikeId) {
+		File file = new File(context.getFilesDir(), FILE_NAME);
+		if (!file.exists()) return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != VERSION) return null;
+			if (in.readInt() != bikeId) return null;
+
+			long savedAt = in.readLong();
+			CbyBikeResponseBean bike = new CbyBikeResponseBean();
+
+			bike.setAutonomy(in.readFloat());
+			bike.setBatteryCharge(in.readFloat());
+			bike.setPcbBatteryCharge(in.readFloat());
+			bike.setCarbonSaved(in.readFloat());
+			bike.setTotalDistance(in.readFloat());
+			bike.setPositionLat(in.readFloat());
+			bike.setPositionLon(in.readFloat());
+
+			bike.setMarket(readString(in));
+			bike.setColor(readString(in));
+			bike.setName(readString(in));
+			bike.setMac(readString(in));
+			bike.setSerial(readString(in));
+			bike.setPasskey(readString(in));
+			bike.setPositionAddress(readString(in));
+			bike.setFirmwareVersion(readString(in));
+			bike.setActivatedAt(readString(in));
+
+			bike.setSeenAt(readDate(in));
+			bike.setPositionReceivedAt(readDate(in));
+
+			return new Entry(bike, savedAt);
+		} catch (IOException e) {
+			// corrupt or from an older version, next save replaces it
+			return null;
+		}
+	}
+
+	// the cached copy and the fresh one can both finish at once, they'd share the temp file otherwise
+	public static synchronized void save(Context context, int bikeId, CbyBikeResponseBean bike) {
+		File file = new File(context.getFilesDir(), FILE_NAME);
+		File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(VERSION);
+			out.writeInt(bikeId);
+			out.writeLong(System.currentTimeMillis());
+
+			out.writeFloat(bike.getAutonomy());
+			out.writeFloat(bike.getBatteryCharge());
+			out.writeFloat(bike.getPcbBatteryCharge());
+			out.writeFloat(bike.getCarbonSaved());
+			out.writeFloat(bike.getTotalDistance());
+			out.writeFloat(bike.getPositionLat());
+			out.writeFloat(bike.getPositionLon());
+
+			writeString(out, bike.getMarket());
+			writeString(out, bike.getColor());
+			writeString(out, bike.getName());
+			writeString(out, bike.getMac());
+			writeString(out, bike.getSerial());
+			writeString(out, bike.getPasskey());
+			writeString(out, bike.getPositionAddress());
+			writeString(out, bike.getFirmwareVersion());
+			writeString(out, bike.getActivatedAt());
+
+			writeDate(out, bike.getSeenAt());
+			writeDate(out, bike.getPositionReceivedAt());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		// swap in one go so a crash mid-write never leaves a half written cache
+		if (!temp.renameTo(file)) temp.delete();
+	}
+
+	public static synchronized void clear(Context context) {
+		new File(context.getFilesDir(), FILE_NAME).delete();
+	}
+
+	protected static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) out.writeUTF(value);
+	}
+
+	protected static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	protected static void writeDate(DataOutputStream out, Date value) throws IOException {
+		out.writeLong(value != null ? value.getTime() : Long.MIN_VALUE);
+	}
+
+	protected static Date readDate(DataInputStream in) throws IOException {
+		long time = in.readLong();
+		return time != Long.MIN_VALUE ? new Date(time) : null;
+	}
+}
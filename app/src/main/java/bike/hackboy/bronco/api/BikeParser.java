@@ -0,0 +1,160 @@
+package bike.hackboy.bronco.api;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+
+import bike.hackboy.bronco.bean.CbyBikeResponseBean;
+import bike.hackboy.bronco.utils.DateParser;
+
+/**
+ * Fills a {@link CbyBikeResponseBean} straight from the token stream of a /bikes/{id}
+ * response, without building a tree of the (mostly unused) rest of it.
+ */
+public class BikeParser {
+	public static CbyBikeResponseBean parse(String body) throws IOException {
+		return parse(new StringReader(body));
+	}
+
+	public static CbyBikeResponseBean parse(Reader body) throws IOException {
+		CbyBikeResponseBean bike = new CbyBikeResponseBean();
+		boolean found = false;
+
+		try (JsonReader reader = new JsonReader(body)) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+
+				if (reader.peek() == JsonToken.NULL) {
+					reader.skipValue();
+					continue;
+				}
+
+				switch (name) {
+					case "battery_state_of_charge":
+						bike.setBatteryCharge((float) reader.nextLong());
+						break;
+					case "pcb_battery_state_of_charge":
+						bike.setPcbBatteryCharge((float) reader.nextLong());
+						break;
+					case "total_co2_saved":
+						bike.setCarbonSaved(reader.nextInt());
+						break;
+					case "total_distance":
+						bike.setTotalDistance((float) reader.nextDouble());
+						break;
+					case "autonomy":
+						bike.setAutonomy((float) reader.nextDouble());
+						break;
+					case "position":
+						readPosition(reader, bike);
+						break;
+					case "sku":
+						readSku(reader, bike);
+						break;
+					case "passkey":
+						bike.setPasskey(reader.nextString());
+						break;
+					case "serial_number":
+						bike.setSerial(reader.nextString());
+						found = true;
+						break;
+					case "mac_address":
+						bike.setMac(reader.nextString());
+						break;
+					case "nickname":
+						bike.setName(reader.nextString());
+						break;
+					case "firmware_version":
+						bike.setFirmwareVersion(reader.nextString());
+						break;
+					case "activated_at":
+						try {
+							bike.setActivatedAt(DateParser.formatDisplay(DateParser.parseIso8601(reader.nextString())));
+						} catch (ParseException ignored) { }
+						break;
+					case "seen_at":
+						try {
+							bike.setSeenAt(DateParser.parseIso8601(reader.nextString()));
+						} catch (ParseException ignored) { }
+						break;
+					default:
+						reader.skipValue();
+				}
+			}
+
+			reader.endObject();
+		} catch (IllegalStateException | NumberFormatException e) {
+			// JsonReader reports unexpected tokens as runtime exceptions
+			throw new IOException("unexpected bike response: " + e.getMessage(), e);
+		}
+
+		if (!found) throw new IOException("not a bike");
+		return bike;
+	}
+
+	protected static void readPosition(JsonReader reader, CbyBikeResponseBean bike) throws IOException {
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+
+			if (reader.peek() == JsonToken.NULL) {
+				reader.skipValue();
+				continue;
+			}
+
+			switch (name) {
+				case "address":
+					bike.setPositionAddress(reader.nextString());
+					break;
+				case "latitude":
+					bike.setPositionLat((float) reader.nextDouble());
+					break;
+				case "longitude":
+					bike.setPositionLon((float) reader.nextDouble());
+					break;
+				case "received_at":
+					try {
+						bike.setPositionReceivedAt(DateParser.parseIso8601(reader.nextString()));
+					} catch (ParseException ignored) { }
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+	}
+
+	protected static void readSku(JsonReader reader, CbyBikeResponseBean bike) throws IOException {
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+
+			if (reader.peek() == JsonToken.NULL) {
+				reader.skipValue();
+				continue;
+			}
+
+			switch (name) {
+				case "color":
+					bike.setColor(reader.nextString());
+					break;
+				case "market":
+					bike.setMarket(reader.nextString());
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+	}
+}
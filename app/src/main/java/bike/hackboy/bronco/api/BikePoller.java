@@ -0,0 +1,202 @@
+package bike.hackboy.bronco.api;
+
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import bike.hackboy.bronco.bean.CbyBikeResponseBean;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Keeps an eye on a bike through the cloud API.
+ *
+ * Requests are conditional: the ETag / Last-Modified of the previous response are sent
+ * back, and if the server ignores them a hash of the body tells whether anything changed.
+ * While seen_at doesn't move (bike parked, out of coverage) the interval doubles up to
+ * {@link #MAX_INTERVAL_MILLIS}; a new seen_at brings it back to {@link #MIN_INTERVAL_MILLIS}.
+ */
+public class BikePoller {
+	public static final long MIN_INTERVAL_MILLIS = 30 * 1000L;
+	public static final long MAX_INTERVAL_MILLIS = 15 * 60 * 1000L;
+
+	public abstract static class OnUpdateListener {
+		/** Called with a freshly parsed bike whenever the response differs from the last one. */
+		public void onBike(CbyBikeResponseBean bike) { }
+		public void onUnchanged() { }
+		public void onError(Exception e) { }
+	}
+
+	public abstract static class IdleCheck {
+		/** @return true while the device is dozing and network access should wait */
+		public abstract boolean isDeviceIdle();
+	}
+
+	protected final String baseUrl;
+	protected final String uid;
+	protected final String clientId;
+	protected final String token;
+	protected final int bikeId;
+	protected final OnUpdateListener listener;
+
+	protected IdleCheck idleCheck = null;
+	protected ScheduledExecutorService scheduler = null;
+	protected volatile boolean running = false;
+
+	protected long interval = MIN_INTERVAL_MILLIS;
+	protected String etag = null;
+	protected String lastModified = null;
+	protected long contentHash = -1;
+	protected Date seenAt = null;
+
+	public BikePoller(String uid, String clientId, String token, int bikeId, OnUpdateListener listener) {
+		this(Client.defaultBaseUrl, uid, clientId, token, bikeId, listener);
+	}
+
+	public BikePoller(String baseUrl, String uid, String clientId, String token, int bikeId, OnUpdateListener listener) {
+		this.baseUrl = baseUrl;
+		this.uid = uid;
+		this.clientId = clientId;
+		this.token = token;
+		this.bikeId = bikeId;
+		this.listener = listener;
+	}
+
+	public void setIdleCheck(IdleCheck idleCheck) {
+		this.idleCheck = idleCheck;
+	}
+
+	/**
+	 * @param initialDelayMillis how long until the first request, e.g. the age of cached data
+	 *                           subtracted from the minimum interval
+	 */
+	public synchronized void start(long initialDelayMillis) {
+		if (running) return;
+		running = true;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bike-poller");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		schedule(Math.max(0, initialDelayMillis));
+	}
+
+	public synchronized void stop() {
+		running = false;
+
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	public synchronized long getInterval() {
+		return interval;
+	}
+
+	protected synchronized void schedule(long delayMillis) {
+		if (!running || scheduler == null) return;
+		scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	protected void poll() {
+		if (!running) return;
+
+		if (idleCheck != null && idleCheck.isDeviceIdle()) {
+			// doze: don't fight it, look again once the next maintenance window is likely open
+			schedule(MAX_INTERVAL_MILLIS);
+			return;
+		}
+
+		String currentEtag;
+		String currentLastModified;
+
+		synchronized (this) {
+			currentEtag = etag;
+			currentLastModified = lastModified;
+		}
+
+		Client client = new Client(baseUrl, new Client.OnDoneCallback() {
+			@Override
+			public void onResponse(Response response) {
+				try {
+					handleResponse(response);
+				} catch (Exception e) {
+					onError(e);
+					return;
+				}
+
+				schedule(getInterval());
+			}
+
+			@Override
+			public void onError(Exception e) {
+				backOff();
+				listener.onError(e);
+				schedule(getInterval());
+			}
+		});
+
+		client.getBikeConditional(uid, clientId, token, bikeId, currentEtag, currentLastModified);
+	}
+
+	protected void handleResponse(Response response) throws Exception {
+		if (response.code() == 304) {
+			backOff();
+			listener.onUnchanged();
+			return;
+		}
+
+		if (response.code() != 200) {
+			throw new IllegalStateException("could not retrieve bike: " + response.code());
+		}
+
+		ResponseBody body = response.body();
+		if (body == null) throw new IllegalStateException("empty response");
+
+		// hashed on the way through, the body is never held in memory as a whole
+		CRC32 crc = new CRC32();
+		MediaType contentType = body.contentType();
+		Charset charset = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+
+		CbyBikeResponseBean bike = BikeParser.parse(new InputStreamReader(new CheckedInputStream(body.byteStream(), crc), charset));
+		long hash = crc.getValue();
+
+		synchronized (this) {
+			etag = response.header("ETag");
+			lastModified = response.header("Last-Modified");
+
+			if (hash == contentHash) {
+				backOff();
+				listener.onUnchanged();
+				return;
+			}
+
+			contentHash = hash;
+
+			boolean moved = bike.getSeenAt() != null && !bike.getSeenAt().equals(seenAt);
+			seenAt = bike.getSeenAt();
+
+			if (moved) {
+				interval = MIN_INTERVAL_MILLIS;
+			} else {
+				backOff();
+			}
+		}
+
+		listener.onBike(bike);
+	}
+
+	protected synchronized void backOff() {
+		interval = Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+	}
+}
@@ -1,8 +1,16 @@
 package bike.hackboy.bronco.api;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import bike.hackboy.bronco.bean.CbyUserBean;
 import bike.hackboy.bronco.utils.Converter;
@@ -12,12 +20,39 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public class Client {
 	protected static final String magic = Converter.rot13("rlWuoTpvBvWVHmV1AvVfVaE5pPV6VxcKIPW9");
-	protected static final String baseUrl = Converter.rot13("uggcf://ncc-ncv.pbjobl.ovxr");
+	protected static final String defaultBaseUrl = Converter.rot13("uggcf://ncc-ncv.pbjobl.ovxr");
+
+	protected static final String ENDPOINT_LOGIN = "/auth/sign_in";
+	protected static final String ENDPOINT_BIKE = "/bikes/{id}";
+
+	// one client for the whole process so connections (and TLS sessions) get reused
+	protected static final OkHttpClient httpClient = new OkHttpClient.Builder()
+		.connectTimeout(15, TimeUnit.SECONDS)
+		.readTimeout(30, TimeUnit.SECONDS)
+		.build();
+
+	// the app never has more than a handful of calls going, no need for more threads
+	protected static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+		2, 2,
+		30, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<>(16),
+		runnable -> new Thread(runnable, "api-client")
+	);
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	// callers waiting on an identical request that's already running
+	protected static final Map<String, List<OnDoneCallback>> inFlight = new HashMap<>();
+	protected static final Map<String, EndpointStats> stats = new LinkedHashMap<>();
 
 	protected final OnDoneCallback onDoneCallback;
+	protected final String baseUrl;
 
 	public abstract static class OnDoneCallback {
 		public void onResponse(Response response) { }
@@ -25,14 +60,17 @@ public class Client {
 	}
 
 	public Client(OnDoneCallback onDoneCallback) {
+		this(defaultBaseUrl, onDoneCallback);
+	}
+
+	public Client(String baseUrl, OnDoneCallback onDoneCallback) {
+		this.baseUrl = baseUrl;
 		this.onDoneCallback = onDoneCallback;
 	}
 
 	public void login(String username, String password) {
 		MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
-		OkHttpClient client = new OkHttpClient();
-
 		CbyUserBean userBean = new CbyUserBean();
 		userBean.setEmail(username);
 		userBean.setPassword(password);
@@ -48,21 +86,11 @@ public class Client {
 
 		//Log.d("http", request.toString());
 
-		Thread thread = new Thread(() -> {
-			try {
-				Response response = client.newCall(request).execute();
-				onDoneCallback.onResponse(response);
-				response.close();
-			} catch (IOException e) {
-				onDoneCallback.onError(e);
-			}
-		});
-
-		thread.start();
+		// never merge logins, every attempt should hit the server
+		execute(ENDPOINT_LOGIN, null, request);
 	}
 
 	public void getBike(String uid, String clientId, String token, int bikeId) {
-		OkHttpClient client = new OkHttpClient();
 		Headers headers = Headers.of(getHeaders());
 
 		Request request = new Request.Builder()
@@ -76,17 +104,140 @@ public class Client {
 
 		//Log.d("http", request.toString());
 
-		Thread thread = new Thread(() -> {
-			try {
-				Response response = client.newCall(request).execute();
-				onDoneCallback.onResponse(response);
-				response.close();
-			} catch (IOException e) {
-				onDoneCallback.onError(e);
+		execute(ENDPOINT_BIKE, "GET " + request.url() + " " + token, request);
+	}
+
+	/**
+	 * Like {@link #getBike} but sends the validators of the previous response, if any.
+	 * A 304 means nothing changed.
+	 */
+	public void getBikeConditional(String uid, String clientId, String token, int bikeId, String etag, String lastModified) {
+		Request.Builder builder = new Request.Builder()
+			.url(baseUrl + "/bikes/"+bikeId)
+			.get()
+			.headers(Headers.of(getHeaders()))
+			.header("Uid", uid)
+			.header("Client", clientId)
+			.header("Access-Token", token);
+
+		if (etag != null) builder.header("If-None-Match", etag);
+		if (lastModified != null) builder.header("If-Modified-Since", lastModified);
+
+		// validators differ per caller, so never merged
+		execute(ENDPOINT_BIKE, null, builder.build());
+	}
+
+	/**
+	 * Runs the request on the shared executor. Requests with the same non-null key that are
+	 * already running don't go out again; the caller gets a copy of the running one's response.
+	 */
+	protected void execute(String endpoint, String coalesceKey, Request request) {
+		if (coalesceKey != null) {
+			synchronized (inFlight) {
+				List<OnDoneCallback> waiting = inFlight.get(coalesceKey);
+
+				if (waiting != null) {
+					waiting.add(onDoneCallback);
+					getStats(endpoint).recordCoalesced();
+					return;
+				}
+
+				waiting = new ArrayList<>();
+				waiting.add(onDoneCallback);
+				inFlight.put(coalesceKey, waiting);
 			}
-		});
+		}
+
+		try {
+			executor.execute(() -> call(endpoint, coalesceKey, request));
+		} catch (RejectedExecutionException e) {
+			dispatchError(coalesceKey, new IOException("too many requests in flight", e));
+		}
+	}
+
+	protected void call(String endpoint, String coalesceKey, Request request) {
+		long start = System.nanoTime();
+		// taken once, whatever happens next goes to these and only these
+		List<OnDoneCallback> callbacks = null;
+
+		try (Response response = httpClient.newCall(request).execute()) {
+			callbacks = takeCallbacks(coalesceKey);
+
+			if (callbacks.size() == 1) {
+				// the usual case, the body is read straight off the socket
+				getStats(endpoint).record((System.nanoTime() - start) / 1_000_000, response.isSuccessful());
+
+				try {
+					callbacks.get(0).onResponse(response);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				return;
+			}
+
+			ResponseBody body = response.body();
+			byte[] content = body != null ? body.bytes() : new byte[0];
+			MediaType contentType = body != null ? body.contentType() : null;
+
+			getStats(endpoint).record((System.nanoTime() - start) / 1_000_000, response.isSuccessful());
+
+			for (OnDoneCallback callback : callbacks) {
+				// each caller gets its own readable body
+				Response copy = response.newBuilder()
+					.body(ResponseBody.create(content, contentType))
+					.build();
+
+				try {
+					callback.onResponse(copy);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		} catch (IOException e) {
+			getStats(endpoint).record((System.nanoTime() - start) / 1_000_000, false);
+
+			if (callbacks == null) callbacks = takeCallbacks(coalesceKey);
+			for (OnDoneCallback callback : callbacks) callback.onError(e);
+		}
+	}
+
+	protected void dispatchError(String coalesceKey, Exception e) {
+		for (OnDoneCallback callback : takeCallbacks(coalesceKey)) {
+			callback.onError(e);
+		}
+	}
+
+	protected List<OnDoneCallback> takeCallbacks(String coalesceKey) {
+		if (coalesceKey == null) {
+			List<OnDoneCallback> single = new ArrayList<>();
+			single.add(onDoneCallback);
+			return single;
+		}
+
+		synchronized (inFlight) {
+			List<OnDoneCallback> waiting = inFlight.remove(coalesceKey);
+			return waiting != null ? waiting : new ArrayList<>();
+		}
+	}
+
+	protected static EndpointStats getStats(String endpoint) {
+		synchronized (stats) {
+			EndpointStats endpointStats = stats.get(endpoint);
+
+			if (endpointStats == null) {
+				endpointStats = new EndpointStats(endpoint);
+				stats.put(endpoint, endpointStats);
+			}
+
+			return endpointStats;
+		}
+	}
 
-		thread.start();
+	/** @return latency stats of every endpoint called so far */
+	public static List<EndpointStats> getEndpointStats() {
+		synchronized (stats) {
+			return new ArrayList<>(stats.values());
+		}
 	}
 
 	protected static HashMap<String, String> getHeaders() {
@@ -0,0 +1,76 @@
+package bike.hackboy.bronco.api;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Latency bookkeeping for one API endpoint.
+ */
+public class EndpointStats {
+	private final String endpoint;
+
+	private long calls = 0;
+	private long failures = 0;
+	private long coalesced = 0;
+	private long totalMillis = 0;
+	private long maxMillis = 0;
+	private long lastMillis = 0;
+
+	public EndpointStats(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public synchronized void record(long millis, boolean success) {
+		calls++;
+		if (!success) failures++;
+
+		totalMillis += millis;
+		lastMillis = millis;
+		if (millis > maxMillis) maxMillis = millis;
+	}
+
+	public synchronized void recordCoalesced() {
+		coalesced++;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public synchronized long getCalls() {
+		return calls;
+	}
+
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	public synchronized long getAverageMillis() {
+		return calls > 0 ? totalMillis / calls : 0;
+	}
+
+	public synchronized long getMaxMillis() {
+		return maxMillis;
+	}
+
+	public synchronized long getLastMillis() {
+		return lastMillis;
+	}
+
+	@NotNull
+	@Override
+	public synchronized String toString() {
+		return "EndpointStats{" +
+			"endpoint='" + endpoint + '\'' +
+			", calls=" + calls +
+			", failures=" + failures +
+			", coalesced=" + coalesced +
+			", avgMillis=" + getAverageMillis() +
+			", maxMillis=" + maxMillis +
+			", lastMillis=" + lastMillis +
+			'}';
+	}
+}
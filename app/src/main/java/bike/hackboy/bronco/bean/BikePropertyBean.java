@@ -2,6 +2,8 @@ package bike.hackboy.bronco.bean;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Objects;
+
 public class BikePropertyBean {
 	private int name;
 	private String value;
@@ -44,6 +46,13 @@ public class BikePropertyBean {
 		this.link = link;
 	}
 
+	public boolean hasSameContent(BikePropertyBean other) {
+		return name == other.name
+			&& last == other.last
+			&& Objects.equals(value, other.value)
+			&& Objects.equals(link, other.link);
+	}
+
 	@NotNull
 	@Override
 	public String toString() {
@@ -0,0 +1,120 @@
+package bike.hackboy.bronco.bean;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serializable;
+
+/**
+ * What the fleet screen shows for one connected bike, taken in one go so it can be diffed.
+ *
+ * Values are kept coarse on purpose (health is a bucket, not a timestamp) so a bike that
+ * didn't change doesn't look changed.
+ */
+@SuppressWarnings("unused")
+public class BikeStateBean implements Serializable {
+	public static final int LOCK_UNKNOWN = -1;
+	public static final int LOCK_LOCKED = 0;
+	public static final int LOCK_UNLOCKED = 1;
+
+	public static final int HEALTH_DISCONNECTED = 0;
+	public static final int HEALTH_CONNECTING = 1;
+	public static final int HEALTH_GOOD = 2;
+	// connected but quiet for a while, or commands are failing
+	public static final int HEALTH_STALE = 3;
+
+	private String mac;
+	private boolean active;
+	private int lock = LOCK_UNKNOWN;
+	private int battery = -1;
+	private int speed;
+	private int health;
+	private int queueLength;
+	private int failures;
+
+	public String getMac() {
+		return mac;
+	}
+
+	public BikeStateBean setMac(String mac) {
+		this.mac = mac;
+		return this;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public BikeStateBean setActive(boolean active) {
+		this.active = active;
+		return this;
+	}
+
+	public int getLock() {
+		return lock;
+	}
+
+	public BikeStateBean setLock(int lock) {
+		this.lock = lock;
+		return this;
+	}
+
+	public int getBattery() {
+		return battery;
+	}
+
+	public BikeStateBean setBattery(int battery) {
+		this.battery = battery;
+		return this;
+	}
+
+	public int getSpeed() {
+		return speed;
+	}
+
+	public BikeStateBean setSpeed(int speed) {
+		this.speed = speed;
+		return this;
+	}
+
+	public int getHealth() {
+		return health;
+	}
+
+	public BikeStateBean setHealth(int health) {
+		this.health = health;
+		return this;
+	}
+
+	public int getQueueLength() {
+		return queueLength;
+	}
+
+	public BikeStateBean setQueueLength(int queueLength) {
+		this.queueLength = queueLength;
+		return this;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public BikeStateBean setFailures(int failures) {
+		this.failures = failures;
+		return this;
+	}
+
+	@NotNull
+	@Override
+	public String toString() {
+		return "BikeStateBean{" +
+			"mac='" + mac + '\'' +
+			", active=" + active +
+			", lock=" + lock +
+			", battery=" + battery +
+			", speed=" + speed +
+			", health=" + health +
+			", queueLength=" + queueLength +
+			", failures=" + failures +
+			'}';
+	}
+}
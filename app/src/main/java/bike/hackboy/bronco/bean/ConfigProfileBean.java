@@ -0,0 +1,109 @@
+package bike.hackboy.bronco.bean;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Register values to put on a bike. Anything left at {@link #KEEP} isn't touched.
+ */
+@SuppressWarnings("unused")
+public class ConfigProfileBean {
+	public static final int KEEP = -1;
+
+	public static final int MOTOR_MODE_TORQUE = 1;
+	public static final int MOTOR_MODE_TORQUE_WITH_LIMIT = 2;
+
+	// ASI's field weakening register is 4096 for 100%
+	public static final double ASI_FIELD_WEAKENING_MULTIPLIER = 40.96;
+
+	private String name = "";
+	private int speed = KEEP; // km/h
+	private int motorMode = KEEP; // MOTOR_MODE_*
+	private int fieldWeakening = KEEP; // ASI value, not amps
+	private int autoLock = KEEP; // minutes, 0 is off
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getSpeed() {
+		return speed;
+	}
+
+	public void setSpeed(int speed) {
+		this.speed = speed;
+	}
+
+	public int getMotorMode() {
+		return motorMode;
+	}
+
+	public void setMotorMode(int motorMode) {
+		this.motorMode = motorMode;
+	}
+
+	public int getFieldWeakening() {
+		return fieldWeakening;
+	}
+
+	public void setFieldWeakening(int fieldWeakening) {
+		this.fieldWeakening = fieldWeakening;
+	}
+
+	public int getAutoLock() {
+		return autoLock;
+	}
+
+	public void setAutoLock(int autoLock) {
+		this.autoLock = autoLock;
+	}
+
+	public static int percentToAsi(int percent) {
+		return (int) Math.floor(ASI_FIELD_WEAKENING_MULTIPLIER * percent);
+	}
+
+	public boolean isEmpty() {
+		return speed == KEEP && motorMode == KEEP && fieldWeakening == KEEP && autoLock == KEEP;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+
+		json.put("name", name);
+		json.put("speed", speed);
+		json.put("motor_mode", motorMode);
+		json.put("field_weakening", fieldWeakening);
+		json.put("auto_lock", autoLock);
+
+		return json;
+	}
+
+	public static ConfigProfileBean fromJSON(JSONObject json) throws JSONException {
+		ConfigProfileBean bean = new ConfigProfileBean();
+
+		bean.setName(json.optString("name", ""));
+		bean.setSpeed(json.optInt("speed", KEEP));
+		bean.setMotorMode(json.optInt("motor_mode", KEEP));
+		bean.setFieldWeakening(json.optInt("field_weakening", KEEP));
+		bean.setAutoLock(json.optInt("auto_lock", KEEP));
+
+		return bean;
+	}
+
+	@NotNull
+	@Override
+	public String toString() {
+		return "ConfigProfileBean{" +
+			"name='" + name + '\'' +
+			", speed=" + speed +
+			", motorMode=" + motorMode +
+			", fieldWeakening=" + fieldWeakening +
+			", autoLock=" + autoLock +
+			'}';
+	}
+}
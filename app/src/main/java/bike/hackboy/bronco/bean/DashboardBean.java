@@ -20,6 +20,7 @@ public class DashboardBean implements Serializable {
 	private int rawDistance;
 	private int rawBattery;
 	private int rawPower;
+	private int rawSpeed;
 	private int[] uptime;
 	private String speed;
 	private String distance;
@@ -27,6 +28,17 @@ public class DashboardBean implements Serializable {
 	private String battery;
 	private String duration;
 
+	// DecimalFormat isn't thread safe and too heavy to build for every frame
+	private static final ThreadLocal<DecimalFormat> kilometerFormat = new ThreadLocal<DecimalFormat>() {
+		@Override
+		protected DecimalFormat initialValue() {
+			DecimalFormat formatter = new DecimalFormat("#.0", new DecimalFormatSymbols(Locale.US));
+			formatter.setRoundingMode(RoundingMode.CEILING);
+
+			return formatter;
+		}
+	};
+
 	@SuppressLint("DefaultLocale")
 	public DashboardBean fromProtobuf(DashboardProto.Dashboard d) {
 		setLightOn(d.getLights() == 1);
@@ -34,44 +46,56 @@ public class DashboardBean implements Serializable {
 		setRawDistance(d.getDistance());
 		setRawBattery(d.getBattery());
 		setRawPower(d.getPower());
+		setRawSpeed(d.getSpeed());
 
 		setUptime(Converter.secondsToTime(d.getDuration()));
 		setSpeed(String.format("%s", d.getSpeed()));
-		setBattery(String.format("%d%%", rawBattery));
+		setBattery(formatBattery(rawBattery));
 
 		setAssistance((d.getAssistance() == 0 || d.getAssistance() == 3) ? "S" : "D");
 
-		if (rawDistance < 1000) {
-			setDistance(String.format("%s m", d.getDistance()));
-		} else {
-			DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);
-			DecimalFormat formatter = new DecimalFormat("#.0", symbols);
-			formatter.setRoundingMode(RoundingMode.CEILING);
+		setDistance(formatDistance(rawDistance));
+		setDuration(formatDuration(uptime));
 
-			setDistance(
-				String.format(
-					"%s km",
-					formatter.format((float) rawDistance / 1000)
-				)
-			);
-		}
+		return this;
+	}
+
+	// --------------------------------------------------
+
+	@SuppressLint("DefaultLocale")
+	public static String formatBattery(int battery) {
+		return String.format("%d%%", battery);
+	}
+
+	public static String formatDistance(int meters) {
+		if (meters < 1000) return String.format("%s m", meters);
 
+		return String.format(
+			"%s km",
+			kilometerFormat.get().format((float) meters / 1000)
+		);
+	}
+
+	public static String formatDuration(int seconds) {
+		return formatDuration(Converter.secondsToTime(seconds));
+	}
+
+	@SuppressLint("DefaultLocale")
+	protected static String formatDuration(int[] uptime) {
 		if (uptime[0] > 0) {
-			setDuration(String.format(
+			return String.format(
 				"%02d:%02d:%02d",
 				uptime[0],
 				uptime[1],
 				uptime[2]
-			));
-		} else {
-			setDuration(String.format(
-				"%02d:%02d",
-				uptime[1],
-				uptime[2]
-			));
+			);
 		}
 
-		return this;
+		return String.format(
+			"%02d:%02d",
+			uptime[1],
+			uptime[2]
+		);
 	}
 
 	public int getRawPower() {
@@ -82,6 +106,14 @@ public class DashboardBean implements Serializable {
 		this.rawPower = rawPower;
 	}
 
+	public int getRawSpeed() {
+		return rawSpeed;
+	}
+
+	public void setRawSpeed(int rawSpeed) {
+		this.rawSpeed = rawSpeed;
+	}
+
 	public int getRawBattery() {
 		return rawBattery;
 	}
@@ -162,6 +194,7 @@ public class DashboardBean implements Serializable {
 			", rawDistance=" + rawDistance +
 			", rawBattery=" + rawBattery +
 			", rawPower=" + rawPower +
+			", rawSpeed=" + rawSpeed +
 			", uptime=" + Arrays.toString(uptime) +
 			", speed='" + speed + '\'' +
 			", distance='" + distance + '\'' +
@@ -0,0 +1,72 @@
+package bike.hackboy.bronco.bean;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A bike as the scanner last saw it. A new one per update, so lists of them can be diffed.
+ */
+@SuppressWarnings("unused")
+public class ScannedBikeBean {
+	private String mac;
+	private String name;
+	private int rssi; // dBm, smoothed
+	private long lastSeen; // elapsed realtime millis
+	private boolean bonded;
+
+	public String getMac() {
+		return mac;
+	}
+
+	public ScannedBikeBean setMac(String mac) {
+		this.mac = mac;
+		return this;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ScannedBikeBean setName(String name) {
+		this.name = name;
+		return this;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	public ScannedBikeBean setRssi(int rssi) {
+		this.rssi = rssi;
+		return this;
+	}
+
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	public ScannedBikeBean setLastSeen(long lastSeen) {
+		this.lastSeen = lastSeen;
+		return this;
+	}
+
+	public boolean isBonded() {
+		return bonded;
+	}
+
+	public ScannedBikeBean setBonded(boolean bonded) {
+		this.bonded = bonded;
+		return this;
+	}
+
+	@NotNull
+	@Override
+	public String toString() {
+		return "ScannedBikeBean{" +
+			"mac='" + mac + '\'' +
+			", name='" + name + '\'' +
+			", rssi=" + rssi +
+			", lastSeen=" + lastSeen +
+			", bonded=" + bonded +
+			'}';
+	}
+}
@@ -5,12 +5,23 @@ import android.view.View;
 import org.jetbrains.annotations.NotNull;
 
 public class SettingBean {
+	private long id;
 	private String name;
 	private String description;
 	private View.OnClickListener onClickListener;
 	private boolean hasArrow;
 	private String value;
 
+	// stays the same across rebuilds, the list is diffed by it
+	public long getId() {
+		return id;
+	}
+
+	public SettingBean setId(long id) {
+		this.id = id;
+		return this;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -60,7 +71,8 @@ public class SettingBean {
 	@Override
 	public String toString() {
 		return "SettingBean{" +
-			"name='" + name + '\'' +
+			"id=" + id +
+			", name='" + name + '\'' +
 			", description='" + description + '\'' +
 			", onClickListener=" + onClickListener +
 			", hasArrow=" + hasArrow +
@@ -0,0 +1,131 @@
+package bike.hackboy.bronco.bean;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+@SuppressWarnings("unused")
+public class TripSummaryBean {
+	private int tripId;
+	private long endedAt; // wall clock millis
+	private int duration; // seconds, as reported by the bike
+	private int distance; // meters
+	private double energy; // Wh
+	private int speedCap; // km/h, 0 if unknown
+	private int fieldWeakening; // ASI value, -1 if unknown
+	private int gaps;
+
+	public int getTripId() {
+		return tripId;
+	}
+
+	public void setTripId(int tripId) {
+		this.tripId = tripId;
+	}
+
+	public long getEndedAt() {
+		return endedAt;
+	}
+
+	public void setEndedAt(long endedAt) {
+		this.endedAt = endedAt;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	public void setDuration(int duration) {
+		this.duration = duration;
+	}
+
+	public int getDistance() {
+		return distance;
+	}
+
+	public void setDistance(int distance) {
+		this.distance = distance;
+	}
+
+	public double getEnergy() {
+		return energy;
+	}
+
+	public void setEnergy(double energy) {
+		this.energy = energy;
+	}
+
+	public double getWhPerKm() {
+		return distance > 0 ? energy / (distance / 1000.0) : 0;
+	}
+
+	public int getSpeedCap() {
+		return speedCap;
+	}
+
+	public void setSpeedCap(int speedCap) {
+		this.speedCap = speedCap;
+	}
+
+	public int getFieldWeakening() {
+		return fieldWeakening;
+	}
+
+	public void setFieldWeakening(int fieldWeakening) {
+		this.fieldWeakening = fieldWeakening;
+	}
+
+	public int getGaps() {
+		return gaps;
+	}
+
+	public void setGaps(int gaps) {
+		this.gaps = gaps;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+
+		json.put("trip_id", tripId);
+		json.put("ended_at", endedAt);
+		json.put("duration", duration);
+		json.put("distance", distance);
+		json.put("energy", energy);
+		json.put("wh_per_km", getWhPerKm());
+		json.put("speed_cap", speedCap);
+		json.put("field_weakening", fieldWeakening);
+		json.put("gaps", gaps);
+
+		return json;
+	}
+
+	public static TripSummaryBean fromJSON(JSONObject json) throws JSONException {
+		TripSummaryBean bean = new TripSummaryBean();
+
+		bean.setTripId(json.getInt("trip_id"));
+		bean.setEndedAt(json.getLong("ended_at"));
+		bean.setDuration(json.getInt("duration"));
+		bean.setDistance(json.getInt("distance"));
+		bean.setEnergy(json.getDouble("energy"));
+		bean.setSpeedCap(json.getInt("speed_cap"));
+		bean.setFieldWeakening(json.getInt("field_weakening"));
+		bean.setGaps(json.getInt("gaps"));
+
+		return bean;
+	}
+
+	@NotNull
+	@Override
+	public String toString() {
+		return "TripSummaryBean{" +
+			"tripId=" + tripId +
+			", endedAt=" + endedAt +
+			", duration=" + duration +
+			", distance=" + distance +
+			", energy=" + energy +
+			", speedCap=" + speedCap +
+			", fieldWeakening=" + fieldWeakening +
+			", gaps=" + gaps +
+			'}';
+	}
+}
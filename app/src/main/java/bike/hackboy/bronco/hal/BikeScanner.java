@@ -0,0 +1,252 @@
+package bike.hackboy.bronco.hal;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bike.hackboy.bronco.bean.ScannedBikeBean;
+import bike.hackboy.bronco.data.Uuid;
+
+/**
+ * Finds bikes around by their advertised Cowboy service, nearest first.
+ *
+ * The filtering happens in the controller ({@link ScanFilter}), so the app only wakes up for
+ * bikes, and results come in batches where the chip can hold them. Signal strength is smoothed
+ * per bike so the order doesn't shuffle with every packet, bikes not heard from in a while drop
+ * off, and the list goes out at most every {@link #PUBLISH_INTERVAL}.
+ *
+ * Names come from the advertisement and are remembered per address for as long as the app
+ * runs, nothing asks the bluetooth service for them. Callbacks arrive on the main thread.
+ */
+public class BikeScanner {
+	public static final String DEFAULT_NAME = "COWBOY";
+
+	protected static final long REPORT_DELAY = 500;
+	protected static final long PUBLISH_INTERVAL = 500;
+	protected static final long EXPIRY = 10000;
+	protected static final long SCAN_DURATION = 30000;
+	// weight of a new reading, low enough that one bad packet doesn't reorder the list
+	protected static final float RSSI_SMOOTHING = 0.25f;
+
+	public abstract static class OnResultsListener {
+		public void onResults(List<ScannedBikeBean> bikes) { }
+		public void onScanStopped() { }
+		public void onScanFailed(int errorCode) { }
+	}
+
+	protected static class Entry {
+		final String mac;
+		float rssi;
+		long lastSeen;
+
+		Entry(String mac, int rssi) {
+			this.mac = mac;
+			this.rssi = rssi;
+		}
+	}
+
+	// survives scans and screens, a bike doesn't get renamed in the middle of a session
+	protected static final Map<String, String> names = new ConcurrentHashMap<>();
+
+	protected final BluetoothAdapter adapter;
+	protected final Handler handler = new Handler(Looper.getMainLooper());
+	protected final Map<String, Entry> entries = new HashMap<>();
+
+	protected OnResultsListener listener = null;
+	protected BluetoothLeScanner scanner = null;
+	protected boolean publishPending = false;
+
+	public BikeScanner(BluetoothAdapter adapter) {
+		this.adapter = adapter;
+	}
+
+	public void setOnResultsListener(OnResultsListener listener) {
+		this.listener = listener;
+	}
+
+	public boolean isScanning() {
+		return scanner != null;
+	}
+
+	/** @return false if there's no scanning right now (bluetooth off, no scanner) */
+	public boolean start() {
+		if (scanner != null) return true;
+		if (!adapter.isEnabled()) return false;
+
+		BluetoothLeScanner leScanner = adapter.getBluetoothLeScanner();
+		if (leScanner == null) return false;
+
+		List<ScanFilter> filters = Collections.singletonList(
+			new ScanFilter.Builder().setServiceUuid(new ParcelUuid(Uuid.serviceCby)).build()
+		);
+
+		ScanSettings.Builder settings = new ScanSettings.Builder()
+			.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
+
+		if (adapter.isOffloadedScanBatchingSupported()) settings.setReportDelay(REPORT_DELAY);
+
+		entries.clear();
+		leScanner.startScan(filters, settings.build(), scanCallback);
+		scanner = leScanner;
+
+		// low latency scanning is expensive, nobody looks at the list for long
+		handler.postDelayed(timeout, SCAN_DURATION);
+		handler.postDelayed(expire, EXPIRY);
+
+		return true;
+	}
+
+	public void stop() {
+		handler.removeCallbacks(timeout);
+		handler.removeCallbacks(expire);
+		handler.removeCallbacks(publish);
+		publishPending = false;
+
+		if (scanner == null) return;
+
+		// throws if bluetooth went off in the meantime, the scan is gone with it anyway
+		try {
+			scanner.stopScan(scanCallback);
+		} catch (IllegalStateException ignored) { }
+
+		scanner = null;
+	}
+
+	/** Bonded bikes, for when there's no scanning. No signal strength to rank them by. */
+	public List<ScannedBikeBean> listBonded() {
+		List<ScannedBikeBean> bikes = new ArrayList<>();
+
+		for (BluetoothDevice device : adapter.getBondedDevices()) {
+			String mac = device.getAddress();
+			String name = names.get(mac);
+
+			if (name == null) {
+				// once per device, it's a call into the bluetooth service
+				name = device.getName();
+				if (name == null) continue;
+
+				names.put(mac, name);
+			}
+
+			if (!DEFAULT_NAME.equals(name)) continue;
+
+			bikes.add(new ScannedBikeBean()
+				.setMac(mac)
+				.setName(name)
+				.setBonded(true));
+		}
+
+		return bikes;
+	}
+
+	protected void onResult(ScanResult result) {
+		BluetoothDevice device = result.getDevice();
+		String mac = device.getAddress();
+		long now = SystemClock.elapsedRealtime();
+
+		// not every packet carries the name, the scan response does
+		ScanRecord record = result.getScanRecord();
+		String name = record != null ? record.getDeviceName() : null;
+		if (name != null) names.put(mac, name);
+
+		Entry entry = entries.get(mac);
+
+		if (entry == null) {
+			entry = new Entry(mac, result.getRssi());
+			entries.put(mac, entry);
+		} else {
+			entry.rssi += RSSI_SMOOTHING * (result.getRssi() - entry.rssi);
+		}
+
+		entry.lastSeen = now;
+	}
+
+	protected void schedulePublish() {
+		if (publishPending) return;
+
+		publishPending = true;
+		handler.postDelayed(publish, PUBLISH_INTERVAL);
+	}
+
+	protected List<ScannedBikeBean> snapshot() {
+		long now = SystemClock.elapsedRealtime();
+		List<Entry> sorted = new ArrayList<>(entries.size());
+
+		for (Entry entry : entries.values()) {
+			if (now - entry.lastSeen <= EXPIRY) sorted.add(entry);
+		}
+
+		entries.values().retainAll(sorted);
+		Collections.sort(sorted, (a, b) -> Float.compare(b.rssi, a.rssi));
+
+		List<ScannedBikeBean> bikes = new ArrayList<>(sorted.size());
+
+		for (Entry entry : sorted) {
+			String name = names.get(entry.mac);
+
+			bikes.add(new ScannedBikeBean()
+				.setMac(entry.mac)
+				.setName(name != null ? name : DEFAULT_NAME)
+				.setRssi(Math.round(entry.rssi))
+				.setLastSeen(entry.lastSeen));
+		}
+
+		return bikes;
+	}
+
+	// --------------------------------------------------
+
+	protected final Runnable publish = () -> {
+		publishPending = false;
+		if (listener != null) listener.onResults(snapshot());
+	};
+
+	protected final Runnable expire = new Runnable() {
+		@Override
+		public void run() {
+			schedulePublish();
+			handler.postDelayed(this, EXPIRY);
+		}
+	};
+
+	protected final Runnable timeout = () -> {
+		stop();
+		if (listener != null) listener.onScanStopped();
+	};
+
+	protected final ScanCallback scanCallback = new ScanCallback() {
+		@Override
+		public void onScanResult(int callbackType, ScanResult result) {
+			onResult(result);
+			schedulePublish();
+		}
+
+		@Override
+		public void onBatchScanResults(List<ScanResult> results) {
+			for (ScanResult result : results) onResult(result);
+			schedulePublish();
+		}
+
+		@Override
+		public void onScanFailed(int errorCode) {
+			stop();
+			if (listener != null) listener.onScanFailed(errorCode);
+		}
+	};
+}
@@ -1,55 +1,111 @@
 package bike.hackboy.bronco.hal;
 
+import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.PowerManager;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
-import com.google.protobuf.InvalidProtocolBufferException;
-
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
+import org.json.JSONObject;
+
 import bike.hackboy.bronco.BuildConfig;
-import bike.hackboy.bronco.DashboardProto;
 import bike.hackboy.bronco.MainActivity;
 import bike.hackboy.bronco.R;
-import bike.hackboy.bronco.bean.DashboardBean;
+import bike.hackboy.bronco.bean.BikeStateBean;
+import bike.hackboy.bronco.bean.ConfigProfileBean;
+import bike.hackboy.bronco.bean.TripSummaryBean;
 import bike.hackboy.bronco.data.Command;
 import bike.hackboy.bronco.data.Uuid;
 import bike.hackboy.bronco.gatt.Gatt;
+import bike.hackboy.bronco.hal.transport.AndroidBikeTransport;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.hal.transport.InstrumentedTransport;
+import bike.hackboy.bronco.telemetry.DashboardFrame;
+import bike.hackboy.bronco.telemetry.DashboardPipeline;
+import bike.hackboy.bronco.telemetry.EnergyIntegrator;
+import bike.hackboy.bronco.telemetry.Latency;
+import bike.hackboy.bronco.telemetry.Replay;
+import bike.hackboy.bronco.telemetry.Telemetry;
 import bike.hackboy.bronco.utils.NotificationEnabler;
+import bike.hackboy.bronco.utils.ProfileStore;
 import bike.hackboy.bronco.utils.SequencedWriter;
+import bike.hackboy.bronco.utils.StatusFormatter;
+import bike.hackboy.bronco.utils.SystemTrace;
+import bike.hackboy.bronco.utils.Tracer;
+import bike.hackboy.bronco.utils.TripStore;
 
 public class BikeService extends Service {
 	private final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
-	private BluetoothGatt connection = null;
+	private BikeTransport connection = null;
 	private NotificationCompat.Builder notification = null;
-	private PowerManager.WakeLock wakeLock = null;
-
+	private StatusFormatter statusFormatter = null;
+	private WakeLockPolicy wakeLockPolicy = null;
+	private boolean foreground = false;
+	// disk writes that shouldn't hold up the bluetooth thread
+	private Handler background = null;
+	private String lastMac = null;
+
+	private static final int NOTIFICATION_ID = 666;
+	private static final String NOTIFICATION_CHANNEL = "default";
 	private static final int NOTIFICATION_THROTTLE = 3000;
-	private long lastNotification = 0;
+
+	// enough for a callback to be broadcast and handled
+	private static final long CALLBACK_WAKE_LOCK = 250;
+	// enough for a command, its reply and a SequencedWriter follow up
+	private static final long COMMAND_WAKE_LOCK = 3000;
+	// the events that go out to the bike, the rest are bookkeeping and don't need it
+	private static final Set<String> GATT_COMMANDS = new HashSet<>(Arrays.asList(
+		"lights-off", "lights-on", "read-lock", "lock", "unlock",
+		"set-speed", "reset-speed", "read-speed", "set-field-weakening", "read-field-weakening",
+		"read-motor-mode", "set-motor-mode-torque", "set-motor-mode-torque-with-limit", "read-speed-and-motor-mode",
+		"write-flash", "close-flash", "read-auto-lock", "set-auto-lock", "enable-notify"
+	));
+	// renewed on every step, a fleet job shouldn't stall because the screen went off
+	private static final long FLEET_WAKE_LOCK = 30000;
+	private final DashboardPipeline pipeline = new DashboardPipeline();
+	private int dashboardClients = 0;
+
+	// every bike we're connected to, connection is the active one
+	private ConnectionManager connections = null;
+	private FleetJob fleetJob = null;
+	private Replay replay = null;
+
+	// the fleet screen polls every bike's snapshot, the background ones send dashboards meanwhile
+	private static final long FLEET_REFRESH = 500;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Set<BikeSession> fleetSessions = new HashSet<>();
+	private int fleetClients = 0;
 
 	// --------------------------------------------------
 
@@ -61,14 +117,27 @@ public class BikeService extends Service {
 			//Log.d("event", event);
 
 			try {
+				if (event == null) return;
+
+				// stay up until the bike has answered
+				if (connection != null && GATT_COMMANDS.contains(event)) wakeLockPolicy.hold(COMMAND_WAKE_LOCK);
+
 				switch (event) {
 					//<editor-fold desc="connection">
 					case "disconnect":
 						if (connection != null) {
 							connection.close();
 							connection.disconnect();
+							connection = null;
 						}
 
+						Telemetry.energy.endTrip();
+
+						pipeline.setActive(notificationConsumer, false);
+						pipeline.setActive(analyticsConsumer, false);
+
+						// the other bikes are still there
+						if (connections.getSessions().isEmpty()) stopForegroundNotification();
 						removeNotification();
 						releaseWakeLock();
 						BikeService.this.notify("disconnected");
@@ -76,12 +145,107 @@ public class BikeService extends Service {
 
 					case "connect":
 						String mac = intent.getStringExtra("mac");
+						BikeSession session = connections.get(mac);
+
+						if (session == null) {
+							BikeService.this.toast("Connecting...");
 
-						BikeService.this.toast("Connecting...");
-						BluetoothDevice device = bluetoothAdapter.getRemoteDevice(mac);
+							Telemetry.metrics.connects.increment();
+							if (mac.equals(lastMac)) Telemetry.metrics.reconnects.increment();
+							lastMac = mac;
+
+							session = connections.open(mac);
+						}
 
-						Handler handler = new Handler(Looper.getMainLooper());
-						handler.post(() -> connection = device.connectGatt(getApplicationContext(), false, mGattCallback));
+						selectSession(session);
+					break;
+
+					case "switch-bike":
+						BikeSession switchTo = connections.get(intent.getStringExtra("mac"));
+
+						if (switchTo == null) {
+							throw new Exception("not connected to " + intent.getStringExtra("mac"));
+						}
+
+						selectSession(switchTo);
+					break;
+
+					case "start-fleet-job":
+						if (fleetJob != null && fleetJob.isRunning()) {
+							throw new Exception("a fleet job is already running");
+						}
+
+						ConfigProfileBean profile = ConfigProfileBean.fromJSON(new JSONObject(intent.getStringExtra("profile")));
+						String[] fleetMacs = intent.getStringArrayExtra("macs");
+
+						fleetJob = new FleetJob(connections, profile, Arrays.asList(fleetMacs), intent.getIntExtra("parallelism", 2));
+						fleetJob.setListener(fleetListener);
+
+						wakeLockPolicy.hold(FLEET_WAKE_LOCK);
+						startForegroundNotification();
+						fleetJob.start();
+					break;
+
+					case "apply-profile":
+						ConfigProfileBean rideProfile = ProfileStore.find(getApplicationContext(), intent.getStringExtra("name"));
+						BikeSession rideSession = connections.getActive();
+
+						if (rideProfile == null) {
+							throw new Exception("no profile named " + intent.getStringExtra("name"));
+						}
+
+						if (rideSession == null) {
+							BikeService.this.toast("Not connected");
+							break;
+						}
+
+						if (fleetJob != null && fleetJob.isRunning()) {
+							BikeService.this.toast("Busy configuring other bikes");
+							break;
+						}
+
+						applyProfile(rideProfile, rideSession);
+					break;
+
+					case "save-profile":
+						BikeSession captureSession = connections.getActive();
+						String profileName = intent.getStringExtra("name");
+
+						if (captureSession == null) {
+							BikeService.this.toast("Not connected");
+							break;
+						}
+
+						// blocks on the bike's replies
+						new Thread(() -> saveProfile(profileName, captureSession), "profile").start();
+					break;
+
+					case "cancel-fleet-job":
+						if (fleetJob != null) fleetJob.cancel();
+					break;
+
+					case "list-bikes":
+						notifyBikes();
+					break;
+
+					case "watch-fleet":
+						if (fleetClients++ == 0) handler.post(publishFleet);
+					break;
+
+					case "unwatch-fleet":
+						fleetClients = Math.max(0, fleetClients - 1);
+						if (fleetClients == 0) stopFleetUpdates();
+					break;
+
+					case "set-max-bikes":
+						int maxBikes = intent.getIntExtra("value", ConnectionManager.DEFAULT_MAX_SESSIONS);
+
+						getSharedPreferences(ConnectionManager.PREFERENCES, MODE_PRIVATE).edit()
+							.putInt(ConnectionManager.PREFERENCE_MAX_SESSIONS, maxBikes)
+							.apply();
+
+						connections.setMaxSessions(maxBikes);
+						notifyBikes();
 					break;
 
 					case "check-connected":
@@ -141,6 +305,7 @@ public class BikeService extends Service {
 
 						Gatt.ensureHasCharacteristic(connection, Uuid.serviceSettings, Uuid.characteristicSettingsWrite);
 						Gatt.writeCharacteristic(connection, Uuid.serviceSettings, Uuid.characteristicSettingsWrite, setSpeedCommandWithChecksum);
+						onSpeedCap(newSpeedValue);
 					break;
 
 					case "reset-speed":
@@ -154,6 +319,7 @@ public class BikeService extends Service {
 
 						Gatt.ensureHasCharacteristic(connection, Uuid.serviceSettings, Uuid.characteristicSettingsWrite);
 						Gatt.writeCharacteristic(connection, Uuid.serviceSettings, Uuid.characteristicSettingsWrite, resetSpeedCommandWithChecksum);
+						onSpeedCap(25);
 						BikeService.this.toast("Success");
 					break;
 
@@ -176,6 +342,7 @@ public class BikeService extends Service {
 
 						Gatt.ensureHasCharacteristic(connection, Uuid.serviceSettings, Uuid.characteristicSettingsWrite);
 						Gatt.writeCharacteristic(connection, Uuid.serviceSettings, Uuid.characteristicSettingsWrite, setFieldWeakeningCommandWithChecksum);
+						Telemetry.energy.setFieldWeakening(newWeakeningValue);
 					break;
 
 					case "read-field-weakening":
@@ -275,8 +442,8 @@ public class BikeService extends Service {
 						NotificationEnabler ne = new NotificationEnabler();
 						ne.setConnection(connection);
 
+						// dashboard is up to dashboardSubscription
 						ne.add(Uuid.serviceCby, Uuid.characteristicUnlock);
-						ne.add(Uuid.serviceCby, Uuid.characteristicDashboard);
 						ne.add(Uuid.serviceSettings, Uuid.characteristicSettingsRead);
 
 						ne.run();
@@ -285,93 +452,185 @@ public class BikeService extends Service {
 					case "on-characteristic-read":
 						String uuid = intent.getStringExtra("uuid");
 						byte[] value = (intent.getByteArrayExtra("value"));
+						Tracer.endAsync("dispatch", intent.getIntExtra("trace", 0));
 
 						switch (uuid.toUpperCase()) {
-							case Uuid.characteristicDashboardString:
-								//Log.d("uuid_check", "is a dashboard uuid");
-								try {
-									DashboardBean db = (new DashboardBean()).fromProtobuf(DashboardProto.Dashboard.parseFrom(value));
-									updateNotification(db);
-
-									if(wakeLock == null) acquireWakeLock();
-								} catch (InvalidProtocolBufferException ignored) { }
-							break;
 							case Uuid.characteristicUnlockString:
 								//Log.d("uuid_check", "is a lock service uuid");
+								// locked bikes send junk frames, nothing to show or integrate
+								pipeline.setActive(notificationConsumer, value[0] == 0x1);
+								pipeline.setActive(analyticsConsumer, value[0] == 0x1);
+
 								if(value[0] != 0x1) {
 									removeNotification();
 									releaseWakeLock();
+									Telemetry.energy.endTrip();
+								}
+							break;
+							case Uuid.characteristicSettingsReadString:
+								// whoever asked, the applier included, the register says what it is
+								int register = intent.getIntExtra("register", -1);
+
+								if (value[0] == 0xa && value[1] == 0x3 && register == ProfileApplier.REGISTER_SPEED) {
+									onSpeedCap(value[4] & 0xff);
+								}
+
+								if (value[0] == 0x1 && value[1] == 0x3 && register == ProfileApplier.REGISTER_FIELD_WEAKENING) {
+									Telemetry.energy.setFieldWeakening(((value[3] & 0xff) << 8) + (value[4] & 0xff));
 								}
 							break;
 						}
 					break;
 					//</editor-fold>
 
+					//<editor-fold desc="capture">
+					case "start-capture":
+						File log = Telemetry.capture.start(getExternalFilesDir("captures"), now());
+						pipeline.setActive(recorderConsumer, true);
+						BikeService.this.toast("Capturing to " + log.getName());
+					break;
+
+					case "stop-capture":
+						pipeline.setActive(recorderConsumer, false);
+						File captured = Telemetry.capture.stop();
+						if (captured != null) BikeService.this.toast("Capture saved to " + captured.getParent());
+					break;
+
+					case "replay":
+						File replayFile = new File(intent.getStringExtra("file"));
+						double replaySpeed = intent.getDoubleExtra("speed", 1);
+
+						if (replay != null) replay.stop();
+
+						BikeService.this.toast("Replaying " + replayFile.getName());
+
+						// plays next to the bikes, through its own pipeline
+						replay = new Replay(replayFile, replaySpeed);
+						replay.setOnFinishedListener(replayListener);
+						startForegroundNotification();
+						replay.start();
+					break;
+					//</editor-fold>
+
+					case "attach-dashboard":
+						pipeline.setActive(uiConsumer, ++dashboardClients > 0);
+					break;
+
+					case "detach-dashboard":
+						dashboardClients = Math.max(0, dashboardClients - 1);
+						pipeline.setActive(uiConsumer, dashboardClients > 0);
+					break;
+
 					case "clear-status":
 						removeNotification();
 						releaseWakeLock();
 					break;
 				}
 			} catch (Exception e) {
+				Telemetry.metrics.commandsFailed.increment();
 				Log.e("cmd_fail", e.getMessage(), e);
 				e.printStackTrace();
 			}
 		}
 	};
 
-	protected void updateNotification(DashboardBean db) {
-		// edge case: first value after unlocking is incomplete
-		if(db.getRawBattery() < 1) return;
-
-		if(lastNotification + NOTIFICATION_THROTTLE > System.currentTimeMillis()) {
-			return;
-		}
-
-		lastNotification = System.currentTimeMillis();
+	// frames are stamped with the transport's clock
+	protected long now() {
+		BikeTransport c = connection;
+		return c != null ? c.nanoTime() : SystemClock.elapsedRealtimeNanos();
+	}
 
-		String status = String.format(
-			"%s • %s %s",
-			getText(R.string.unlocked),
-			db.getBattery(),
-			getText(R.string.battery)
-		);
+	protected void onSpeedCap(int speedCap) {
+		Telemetry.range.setSpeedCap(speedCap);
+		Telemetry.energy.setSpeedCap(speedCap);
+	}
 
-		String subStatus = String.format("%s %s • %s %s",
-			getText(R.string.uptime),
-			db.getDuration(),
-			db.getDistance(),
-			getText(R.string.cycled)
-		);
+	protected void updateNotification(DashboardFrame frame) {
+		String status = statusFormatter.formatStatus(frame.getBattery());
+		String subStatus = statusFormatter.formatSubStatus(frame.getDuration(), frame.getDistance());
 
 		NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 		notification.setContentTitle(status);
 		notification.setContentText(subStatus);
-		nm.notify(666, notification.build());
+		nm.notify(NOTIFICATION_ID, notification.build());
 	}
 
-	protected void acquireWakeLock() {
-		PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-		wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
-			String.format("%s::BikeService", getText(R.string.app_name)));
+	protected void onDashboardFrame(byte[] value, long timestamp, long received) {
+		Telemetry.metrics.frames.increment();
+		Telemetry.metrics.framesPerSecond.mark(received);
 
-		/* yes, it's 6 hours. Fight me. */
-		wakeLock.acquire(6*60*60*1000L);
+		boolean traced = Tracer.begin("dashboard pipeline");
+		if (!pipeline.onFrame(value, timestamp, received)) Telemetry.metrics.framesInvalid.increment();
+		Tracer.end(traced);
 	}
 
 	protected void releaseWakeLock() {
-		// this WL is released when the service is killed, too
-		if(wakeLock != null) {
-			wakeLock.release();
-			wakeLock = null;
+		wakeLockPolicy.release();
+	}
+
+	// the UI talks to one bike at a time, the others carry on in the background
+	protected void selectSession(BikeSession session) {
+		// not asking the manager, opening this one may just have dropped the previous bike
+		BikeTransport previous = connection;
+
+		if (previous != null && previous != session) {
+			if (previous instanceof BikeSession) {
+				((BikeSession) previous).setCallback(null);
+				((BikeSession) previous).setDashboardWanted(fleetClients > 0);
+			}
+
+			// the trip, the range model, the chart and the notification were the other bike's
+			Telemetry.energy.endTrip();
+			Telemetry.range.reset();
+			Telemetry.history.clear();
+			pipeline.setActive(notificationConsumer, false);
+			pipeline.setActive(analyticsConsumer, false);
+			removeNotification();
 		}
+
+		connections.setActive(session);
+		connection = session;
+		session.connect(transportCallback);
+		session.setDashboardWanted(pipeline.getActiveCount() > 0 || fleetClients > 0);
+		startForegroundNotification();
+
+		// already up, nothing else is going to say so
+		if (session.isReady()) notifyDiscovery();
+		notifyBikes();
+	}
+
+	// keeps the service alive for as long as there's a bike on the line
+	protected void startForegroundNotification() {
+		if (foreground) return;
+
+		notification.setContentTitle(getText(R.string.connected));
+		notification.setContentText(getText(R.string.service_is_running));
+
+		startForeground(NOTIFICATION_ID, notification.build());
+		foreground = true;
+	}
+
+	protected void stopForegroundNotification() {
+		if (!foreground) return;
+
+		stopForeground(true);
+		foreground = false;
 	}
 
 	protected void removeNotification() {
 		NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-		nm.cancel(666);
 
-		// clear this so the next notification can show up instantly
-		lastNotification = 0;
+		if (foreground) {
+			// can't take a foreground notification away, park it instead
+			notification.setContentTitle(getText(R.string.bike_is_locked));
+			notification.setContentText(getText(R.string.service_is_running));
+			nm.notify(NOTIFICATION_ID, notification.build());
+		} else {
+			nm.cancel(NOTIFICATION_ID);
+		}
+
+		// so the next notification can show up instantly
+		notificationConsumer.rearm();
 	}
 
 	protected void toast(String message) {
@@ -395,28 +654,200 @@ public class BikeService extends Service {
 		LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
 	}
 
-	protected void notifyCharacteristicRead(UUID uuid, byte[] value) {
+	protected void notifyCharacteristicRead(UUID uuid, byte[] value, long timestamp, long received) {
 		Intent intent = new Intent(BuildConfig.APPLICATION_ID);
 		intent.putExtra("event", "on-characteristic-read");
 		intent.putExtra("uuid", uuid.toString().toUpperCase());
 		intent.putExtra("value", value);
+		intent.putExtra("timestamp", timestamp);
+		intent.putExtra("received", received);
+		if (Uuid.characteristicSettingsRead.equals(uuid)) intent.putExtra("register", repliedRegister(value));
+		// ends when the service's own receiver gets it, the first in line
+		intent.putExtra("trace", Tracer.beginAsync("dispatch"));
 		LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
 	}
 
+	// read replies don't carry the register address, the session matched it to what was asked
+	protected int repliedRegister(byte[] value) {
+		if (!(connection instanceof BikeSession) || value == null || value.length < 1) return -1;
+		return ((BikeSession) connection).getRegisters().getLastReplied(value[0] & 0xff);
+	}
+
 	protected void notifyDiscovery() {
 		notify("on-discovered");
 	}
 
+	protected void notifyBikes() {
+		List<BikeSession> sessions = connections.getSessions();
+		BikeSession active = connections.getActive();
+
+		String[] macs = new String[sessions.size()];
+		for (int i = 0; i < macs.length; i++) macs[i] = sessions.get(i).getMac();
+
+		Intent intent = new Intent(BuildConfig.APPLICATION_ID);
+		intent.putExtra("event", "on-bikes");
+		intent.putExtra("macs", macs);
+		intent.putExtra("active", active != null ? active.getMac() : null);
+		intent.putExtra("max", connections.getMaxSessions());
+		LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+	}
+
+	// a fleet job of one, the active bike: one read, one batch of writes for what differs, one flash commit
+	protected void applyProfile(ConfigProfileBean profile, BikeSession session) {
+		fleetJob = new FleetJob(connections, profile, Collections.singletonList(session.getMac()), 1);
+
+		fleetJob.setListener(new FleetJob.Listener() {
+			@Override
+			public void onProgress(String mac, int state, String message) {
+				wakeLockPolicy.hold(FLEET_WAKE_LOCK);
+
+				switch (state) {
+					case FleetJob.STATE_DONE:
+						BikeService.this.toast(profile.getName() + " applied");
+
+						// range and trip stats follow the bike's limits
+						if (profile.getSpeed() != ConfigProfileBean.KEEP) onSpeedCap(profile.getSpeed());
+						if (profile.getFieldWeakening() != ConfigProfileBean.KEEP) Telemetry.energy.setFieldWeakening(profile.getFieldWeakening());
+					break;
+					case FleetJob.STATE_UNCHANGED:
+						BikeService.this.toast(profile.getName() + " is already set");
+					break;
+					case FleetJob.STATE_FAILED:
+						BikeService.this.toast("Couldn't apply " + profile.getName() + ": " + message);
+					break;
+				}
+			}
+		});
+
+		wakeLockPolicy.hold(FLEET_WAKE_LOCK);
+		fleetJob.start();
+	}
+
+	protected void saveProfile(String name, BikeSession session) {
+		try {
+			ProfileStore.save(getApplicationContext(), new ProfileApplier(session).capture(name));
+			MainActivity.updateProfileShortcuts(getApplicationContext());
+
+			BikeService.this.toast("Saved " + name);
+		} catch (Exception e) {
+			BikeService.this.toast("Couldn't save " + name + ": " + e.getMessage());
+		}
+	}
+
+	protected void stopFleetUpdates() {
+		handler.removeCallbacks(publishFleet);
+
+		BikeSession active = connections.getActive();
+
+		// the active bike goes back to whatever the pipeline wants
+		for (BikeSession session : fleetSessions) {
+			session.setDashboardWanted(session == active && pipeline.getActiveCount() > 0);
+		}
+
+		fleetSessions.clear();
+	}
+
+	protected final Runnable publishFleet = new Runnable() {
+		@Override
+		public void run() {
+			List<BikeSession> sessions = connections.getSessions();
+			BikeSession active = connections.getActive();
+			ArrayList<BikeStateBean> bikes = new ArrayList<>(sessions.size());
+
+			fleetSessions.retainAll(sessions);
+
+			for (BikeSession session : sessions) {
+				// once per bike, not on every refresh
+				if (fleetSessions.add(session)) session.setDashboardWanted(true);
+				bikes.add(session.snapshot(session == active));
+			}
+
+			Intent intent = new Intent(BuildConfig.APPLICATION_ID);
+			intent.putExtra("event", "on-fleet");
+			intent.putExtra("bikes", bikes);
+			LocalBroadcastManager.getInstance(BikeService.this).sendBroadcast(intent);
+
+			handler.postDelayed(this, FLEET_REFRESH);
+		}
+	};
+
 	// --------------------------------------------------
 
 	@Override
 	public void onCreate() {
 		HandlerThread thread = new HandlerThread("ServiceStartArguments", Process.THREAD_PRIORITY_BACKGROUND);
 		thread.start();
+		background = new Handler(thread.getLooper());
 
 		LocalBroadcastManager.getInstance(this)
 			.registerReceiver(messageReceiver, new IntentFilter(BuildConfig.APPLICATION_ID));
 
+		Tracer.setSink(new SystemTrace());
+		Tracer.setEnabled(getSharedPreferences(Tracer.PREFERENCES, MODE_PRIVATE)
+			.getBoolean(Tracer.PREFERENCE_ENABLED, false));
+
+		pipeline.add(notificationConsumer);
+		pipeline.add(analyticsConsumer);
+		pipeline.add(uiConsumer);
+		pipeline.add(recorderConsumer);
+
+		pipeline.setOnActiveChangeListener(new DashboardPipeline.OnActiveChangeListener() {
+			@Override
+			public void onActiveChange(int activeConsumers) {
+				BikeTransport c = connection;
+				if (c instanceof BikeSession) ((BikeSession) c).setDashboardWanted(activeConsumers > 0 || fleetClients > 0);
+			}
+		});
+
+		connections = new ConnectionManager(new ConnectionManager.TransportFactory() {
+			@Override
+			public BikeTransport create(String mac) {
+				BluetoothDevice device = bluetoothAdapter.getRemoteDevice(mac);
+				return new InstrumentedTransport(new AndroidBikeTransport(getApplicationContext(), device));
+			}
+		});
+
+		connections.setMaxSessions(getSharedPreferences(ConnectionManager.PREFERENCES, MODE_PRIVATE)
+			.getInt(ConnectionManager.PREFERENCE_MAX_SESSIONS, ConnectionManager.DEFAULT_MAX_SESSIONS));
+
+		connections.setOnSessionListener(new ConnectionManager.OnSessionListener() {
+			@Override
+			public void onSessionLost(BikeSession session) {
+				connections.close(session);
+				BikeService.this.toast(session.getMac() + " disconnected");
+				notifyBikes();
+			}
+
+			@Override
+			public void onSessionEvicted(BikeSession session) {
+				BikeService.this.toast(session.getMac() + " disconnected to make room");
+				notifyBikes();
+			}
+		});
+
+		wakeLockPolicy = new WakeLockPolicy(
+			(PowerManager) getSystemService(POWER_SERVICE),
+			String.format("%s::BikeService", getText(R.string.app_name))
+		);
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			NotificationChannel channel = new NotificationChannel(
+				NOTIFICATION_CHANNEL,
+				getText(R.string.notification_channel),
+				NotificationManager.IMPORTANCE_LOW
+			);
+
+			((NotificationManager) getSystemService(NOTIFICATION_SERVICE)).createNotificationChannel(channel);
+		}
+
+		Telemetry.energy.setOnTripEndListener(new EnergyIntegrator.OnTripEndListener() {
+			@Override
+			public void onTripEnd(TripSummaryBean summary) {
+				// comes in on the bluetooth thread, the store does disk I/O
+				background.post(() -> TripStore.save(getApplicationContext(), summary));
+			}
+		});
+
 		Intent notificationIntent = new Intent(this, MainActivity.class);
 		notificationIntent.setAction(Intent.ACTION_MAIN);
 		notificationIntent.addCategory(Intent.CATEGORY_LAUNCHER);
@@ -425,13 +856,18 @@ public class BikeService extends Service {
 		PendingIntent bringAppToFrontPendingIntent =
 			PendingIntent.getActivity(this, 0, notificationIntent, 0);
 
-		notification = new NotificationCompat.Builder(this, "default")
+		statusFormatter = new StatusFormatter(
+			getText(R.string.unlocked),
+			getText(R.string.battery),
+			getText(R.string.uptime),
+			getText(R.string.cycled)
+		);
+
+		notification = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL)
 			.setContentText(getText(R.string.service_is_running))
 			.setContentTitle(getText(R.string.not_connected))
 			.setSmallIcon(R.drawable.ic_unleashed_nogear)
 			.setContentIntent(bringAppToFrontPendingIntent);
-
-		//startForeground(666, notification.build());
 	}
 
 	@Override
@@ -439,63 +875,238 @@ public class BikeService extends Service {
 		return null;
 	}
 
+	// adb shell dumpsys activity service bike.hackboy.bronco/.hal.BikeService
+	@Override
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+		writer.println("connection: " + (connection != null ? connection.getClass().getSimpleName() : "none"));
+		writer.println("foreground: " + foreground);
+		writer.println("wake lock: " + (wakeLockPolicy.isHeld() ? "held" : "released"));
+		writer.println("dashboard: " + pipeline.getActiveCount() + " consumers");
+		writer.println("fleet job: " + (fleetJob != null && fleetJob.isRunning() ? "running" : "idle"));
+		writer.println("fleet screen: " + fleetClients + " watching");
+		writer.println("replay: " + (replay != null && replay.isRunning() ? replay.getFile().getName() + ", " + replay.getFrames() + " frames" : "none"));
+		connections.report(writer);
+		writer.println();
+
+		Telemetry.metrics.report(writer);
+		writer.println();
+		Telemetry.latency.report(writer);
+	}
+
 	@Override
 	public void onDestroy() {
+		stopForegroundNotification();
 		removeNotification();
+		releaseWakeLock();
+		if (fleetJob != null) fleetJob.cancel();
+		if (replay != null) replay.stop();
+		handler.removeCallbacks(publishFleet);
+		connections.shutdown();
+		background.getLooper().quitSafely();
 		super.onDestroy();
 	}
 
 	// --------------------------------------------------
 
-	protected final BluetoothGattCallback mGattCallback = new BluetoothGattCallback() {
+	protected final DashboardPipeline.Consumer notificationConsumer = new DashboardPipeline.Consumer(
+		"notification",
+		DashboardFrame.BATTERY | DashboardFrame.DURATION | DashboardFrame.DISTANCE,
+		NOTIFICATION_THROTTLE * 1_000_000L
+	) {
+		@Override
+		public boolean onFrame(DashboardFrame frame) {
+			// edge case: first value after unlocking is incomplete
+			if (frame.getBattery() < 1) return false;
+
+			boolean traced = Tracer.begin("notification");
+			updateNotification(frame);
+			Tracer.end(traced);
+
+			return true;
+		}
+	};
+
+	protected final DashboardPipeline.Consumer analyticsConsumer = new DashboardPipeline.Consumer(
+		"analytics",
+		DashboardFrame.TRIP_ID | DashboardFrame.DURATION | DashboardFrame.POWER | DashboardFrame.SPEED
+			| DashboardFrame.DISTANCE | DashboardFrame.BATTERY | DashboardFrame.ASSISTANCE,
+		0
+	) {
+		@Override
+		public boolean onFrame(DashboardFrame frame) {
+			boolean traced = Tracer.begin("telemetry");
+
+			Telemetry.range.onSample(
+				frame.getTimestamp(),
+				frame.getDistance(),
+				frame.getPower(),
+				frame.getBattery(),
+				frame.getAssistance()
+			);
+
+			// edge case: first value after unlocking is incomplete
+			if (frame.getBattery() > 0) {
+				Telemetry.energy.onSample(
+					frame.getTimestamp(),
+					frame.getTripId(),
+					frame.getDuration(),
+					frame.getDistance(),
+					frame.getPower()
+				);
+
+				// fed here rather than by the dashboard screen, so other screens don't leave gaps
+				Telemetry.history.push(SystemClock.elapsedRealtime(), frame.getSpeed(), frame.getPower(), frame.getBattery());
+			} else {
+				Telemetry.metrics.framesIncomplete.increment();
+			}
+
+			Tracer.end(traced);
+			return true;
+		}
+	};
+
+	// the dashboard screen decodes for itself, it only needs the bytes
+	protected final DashboardPipeline.Consumer uiConsumer = new DashboardPipeline.Consumer("ui", DashboardFrame.NONE, 0) {
+		@Override
+		public boolean onFrame(DashboardFrame frame) {
+			notifyCharacteristicRead(Uuid.characteristicDashboard, frame.getRaw(), frame.getTimestamp(), frame.getReceived());
+			return true;
+		}
+	};
+
+	protected final DashboardPipeline.Consumer recorderConsumer = new DashboardPipeline.Consumer("recorder", DashboardFrame.NONE, 0) {
+		@Override
+		public boolean onFrame(DashboardFrame frame) {
+			Telemetry.capture.onNotification(Uuid.characteristicDashboard, frame.getTimestamp(), frame.getRaw());
+			return true;
+		}
+	};
+
+	// --------------------------------------------------
+
+	protected final FleetJob.Listener fleetListener = new FleetJob.Listener() {
+		@Override
+		public void onProgress(String mac, int state, String message) {
+			wakeLockPolicy.hold(FLEET_WAKE_LOCK);
+
+			Intent intent = new Intent(BuildConfig.APPLICATION_ID);
+			intent.putExtra("event", "on-fleet-progress");
+			intent.putExtra("mac", mac);
+			intent.putExtra("state", state);
+			intent.putExtra("message", message);
+			LocalBroadcastManager.getInstance(BikeService.this).sendBroadcast(intent);
+		}
+
+		@Override
+		public void onFinished(int succeeded, int failed) {
+			Intent intent = new Intent(BuildConfig.APPLICATION_ID);
+			intent.putExtra("event", "on-fleet-finished");
+			intent.putExtra("succeeded", succeeded);
+			intent.putExtra("failed", failed);
+			LocalBroadcastManager.getInstance(BikeService.this).sendBroadcast(intent);
+
+			BikeService.this.toast(String.format("Fleet job done: %d configured, %d failed", succeeded, failed));
+			notifyBikes();
+
+			if (connection == null && connections.getSessions().isEmpty()) stopForegroundNotification();
+		}
+	};
+
+	// --------------------------------------------------
+
+	protected final Replay.OnFinishedListener replayListener = new Replay.OnFinishedListener() {
 		@Override
-		public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+		public void onFinished(Replay finished) {
+			BikeService.this.toast(String.format(
+				"Replay done: %d frames in %d ms, %d trips, %.1f Wh",
+				finished.getFrames(),
+				finished.getElapsedNanos() / 1_000_000,
+				finished.getTrips().size(),
+				finished.getTotalEnergy()
+			));
+
+			handler.post(() -> {
+				if (replay == finished) replay = null;
+				if (connection == null && connections.getSessions().isEmpty()) stopForegroundNotification();
+			});
+		}
+	};
+
+	// --------------------------------------------------
+
+	protected final BikeTransport.Callback transportCallback = new BikeTransport.Callback() {
+		@Override
+		public void onConnectionStateChange(int newState) {
 			switch(newState) {
-				case BluetoothProfile.STATE_CONNECTED:
-					gatt.discoverServices();
+				case BikeTransport.STATE_CONNECTED:
+					connection.discoverServices();
 				break;
-				case BluetoothProfile.STATE_DISCONNECTED:
+				case BikeTransport.STATE_DISCONNECTED:
+					Telemetry.metrics.disconnects.increment();
 					BikeService.this.notify("disconnect");
 				break;
 			}
 		}
 
-		public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
+		@Override
+		public void onServicesDiscovered(boolean success) {
+			if (success) {
 				//Log.d("onServicesDiscovered", String.valueOf(status));
 				notifyDiscovery();
 			}
 		}
 
 		@Override
-		public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				//Log.d("onCharacteristicRead", String.valueOf(status));
-				byte[] value = characteristic.getValue();
-				notifyCharacteristicRead(characteristic.getUuid(), value);
+		public void onCharacteristicRead(UUID characteristic, byte[] value, boolean success) {
+			wakeLockPolicy.hold(CALLBACK_WAKE_LOCK);
 
-				//Log.d("gatt", "onCharacteristicRead: " + Converter.byteArrayToHexString(value) + " UUID " + characteristic.getUuid().toString() );
+			if (success) {
+				long received = Latency.now();
+				long timestamp = now();
+				boolean traced = Tracer.begin("gatt read");
+
+				Telemetry.capture.onRead(characteristic, timestamp, value);
+				notifyCharacteristicRead(characteristic, value, timestamp, received);
+				Tracer.end(traced);
+
+				//Log.d("gatt", "onCharacteristicRead: " + Converter.byteArrayToHexString(value) + " UUID " + characteristic.toString() );
 			}
 		}
 
 		@Override
-		public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				//Log.d("onCharacteristicWrite", String.valueOf(status));
-				byte[] value = characteristic.getValue();
-				notifyCharacteristicWrite(characteristic.getUuid(), value);
+		public void onCharacteristicWrite(UUID characteristic, byte[] value, boolean success) {
+			wakeLockPolicy.hold(CALLBACK_WAKE_LOCK);
+
+			if (success) {
+				boolean traced = Tracer.begin("gatt write");
 
-				//Log.d("gatt", "onCharacteristicWrite: " + Converter.byteArrayToHexString(value) + " UUID " + characteristic.getUuid().toString() );
+				Telemetry.capture.onWrite(characteristic, now(), value);
+				notifyCharacteristicWrite(characteristic, value);
+				Tracer.end(traced);
+
+				//Log.d("gatt", "onCharacteristicWrite: " + Converter.byteArrayToHexString(value) + " UUID " + characteristic.toString() );
 			}
 		}
 
 		@Override
-		public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-			//Log.d("onCharacteristicChanged", characteristic.getUuid().toString());
-			byte[] value = characteristic.getValue();
-			notifyCharacteristicRead(characteristic.getUuid(), value);
+		public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+			wakeLockPolicy.hold(CALLBACK_WAKE_LOCK);
+
+			long received = Latency.now();
+			long timestamp = now();
+			boolean traced = Tracer.begin("gatt notify");
+
+			// dashboard frames go only where they're wanted, the recorder included
+			if (Uuid.characteristicDashboard.equals(characteristic)) {
+				onDashboardFrame(value, timestamp, received);
+			} else {
+				Telemetry.capture.onNotification(characteristic, timestamp, value);
+				notifyCharacteristicRead(characteristic, value, timestamp, received);
+			}
+
+			Tracer.end(traced);
 
-			//Log.d("gatt", "onCharacteristicChanged: " + " UUID " + characteristic.getUuid().toString() );
+			//Log.d("gatt", "onCharacteristicChanged: " + " UUID " + characteristic.toString() );
 		}
 	};
 }
\ No newline at end of file
@@ -0,0 +1,429 @@
+package bike.hackboy.bronco.hal;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+import bike.hackboy.bronco.bean.BikeStateBean;
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.DashboardFrame;
+import bike.hackboy.bronco.telemetry.TelemetryBuffer;
+
+/**
+ * One connected bike, as far as the {@link ConnectionManager} is concerned.
+ *
+ * It is a {@link BikeTransport} itself, so the service's commands, SequencedWriter and
+ * friends run on it unchanged. Operations are queued here and sent when the manager says
+ * it's this bike's turn; the return value only says whether the bike is there to queue to.
+ *
+ * Whatever the UI is doing, the session keeps its own picture of the bike: lock state,
+ * the registers seen go by ({@link RegisterCache}) and a short speed/power/battery history.
+ * Callbacks are only handed on while the session has a callback set, i.e. it's the active one.
+ */
+public class BikeSession implements BikeTransport {
+	public static final int LOCK_UNKNOWN = -1;
+	public static final int LOCK_LOCKED = 0;
+	public static final int LOCK_UNLOCKED = 1;
+
+	// about 10 minutes at one frame a second
+	protected static final int HISTORY = 600;
+	// an unlocked bike sends a dashboard frame a second when asked to
+	protected static final long QUIET_AFTER = 5000;
+	// more than that waiting and the link can't keep up
+	protected static final int BACKLOG = 8;
+
+	protected static final int OPERATION_READ = 0;
+	protected static final int OPERATION_WRITE = 1;
+	protected static final int OPERATION_SUBSCRIBE = 2;
+
+	static class Operation {
+		final int type;
+		final UUID service;
+		final UUID characteristic;
+		final byte[] value;
+		final boolean enabled;
+		final boolean expectsReply;
+
+		int attempts = 0;
+		long deadline = 0;
+		boolean awaitingReply = false;
+
+		Operation(int type, UUID service, UUID characteristic, byte[] value, boolean enabled) {
+			this.type = type;
+			this.service = service;
+			this.characteristic = characteristic;
+			this.value = value;
+			this.enabled = enabled;
+
+			// modbus: one request per unit at a time, or replies can't be told apart
+			expectsReply = type == OPERATION_WRITE && Uuid.characteristicSettingsWrite.equals(characteristic);
+		}
+	}
+
+	protected final ConnectionManager manager;
+	protected final String mac;
+	protected final BikeTransport transport;
+
+	protected final RegisterCache registers = new RegisterCache();
+	protected final TelemetryBuffer history = new TelemetryBuffer(HISTORY);
+	protected final DashboardFrame frame = new DashboardFrame();
+	protected final NotificationSubscription dashboardSubscription =
+		new NotificationSubscription(Uuid.serviceCby, Uuid.characteristicDashboard);
+
+	// guarded by the manager
+	final ArrayDeque<Operation> queue = new ArrayDeque<>();
+	Operation current = null;
+	long notBefore = 0;
+	int failures = 0;
+
+	protected volatile Callback callback = null;
+	protected volatile boolean started = false;
+	protected volatile boolean connected = false;
+	protected volatile boolean ready = false;
+	protected volatile int lock = LOCK_UNKNOWN;
+	protected volatile int battery = -1;
+	protected volatile int speed = 0;
+	protected volatile long lastUsed;
+	protected volatile long lastSeen = 0;
+
+	BikeSession(ConnectionManager manager, String mac, BikeTransport transport) {
+		this.manager = manager;
+		this.mac = mac;
+		this.transport = transport;
+
+		touch();
+	}
+
+	public String getMac() {
+		return mac;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/** Services discovered, commands can go out. */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/** @return one of LOCK_* */
+	public int getLock() {
+		return lock;
+	}
+
+	/** @return percent, or -1 before the first dashboard frame */
+	public int getBattery() {
+		return battery;
+	}
+
+	public int getSpeed() {
+		return speed;
+	}
+
+	/** {@link System#currentTimeMillis()} of the last thing the bike sent, 0 if nothing yet. */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	public RegisterCache getRegisters() {
+		return registers;
+	}
+
+	public TelemetryBuffer getHistory() {
+		return history;
+	}
+
+	public int getQueueLength() {
+		synchronized (manager) {
+			return queue.size() + (current != null ? 1 : 0);
+		}
+	}
+
+	public int getFailures() {
+		synchronized (manager) {
+			return failures;
+		}
+	}
+
+	/** The state the fleet screen shows, taken in one go. */
+	public BikeStateBean snapshot(boolean active) {
+		int queueLength = getQueueLength();
+		int health;
+
+		if (!connected || !ready) {
+			health = started ? BikeStateBean.HEALTH_CONNECTING : BikeStateBean.HEALTH_DISCONNECTED;
+		} else if (queueLength > BACKLOG || (lock == LOCK_UNLOCKED && System.currentTimeMillis() - lastSeen > QUIET_AFTER)) {
+			health = BikeStateBean.HEALTH_STALE;
+		} else {
+			health = BikeStateBean.HEALTH_GOOD;
+		}
+
+		return new BikeStateBean()
+			.setMac(mac)
+			.setActive(active)
+			.setLock(lock)
+			.setBattery(battery)
+			.setSpeed(lock == LOCK_UNLOCKED ? speed : 0)
+			.setHealth(health)
+			.setQueueLength(queueLength)
+			.setFailures(getFailures());
+	}
+
+	/** @return false if the bike didn't get ready in time */
+	public boolean awaitReady(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		synchronized (manager) {
+			while (!ready) {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) return false;
+
+				manager.wait(left);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Waits for everything queued so far to be answered, settings replies included.
+	 *
+	 * @return false if it took too long or the bike went away
+	 */
+	public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		synchronized (manager) {
+			while (ready && (current != null || !queue.isEmpty())) {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) return false;
+
+				manager.wait(left);
+			}
+		}
+
+		return ready;
+	}
+
+	/** Who hears from this bike, null while it's in the background. */
+	public void setCallback(Callback callback) {
+		this.callback = callback;
+	}
+
+	/** Whether this bike should send dashboard frames, the active one only while they're shown. */
+	public void setDashboardWanted(boolean wanted) {
+		dashboardSubscription.setWanted(wanted);
+	}
+
+	void touch() {
+		lastUsed = System.nanoTime();
+	}
+
+	void start() {
+		if (started) return;
+
+		started = true;
+		transport.connect(transportCallback);
+	}
+
+	void shutdown() {
+		callback = null;
+		ready = false;
+		connected = false;
+
+		dashboardSubscription.shutdown();
+		transport.close();
+		transport.disconnect();
+	}
+
+	boolean issue(Operation operation) {
+		switch (operation.type) {
+			case OPERATION_READ:
+				return transport.readCharacteristic(operation.service, operation.characteristic);
+			case OPERATION_WRITE:
+				// before the write, the reply can beat writeCharacteristic returning
+				if (operation.expectsReply) registers.onCommand(operation.value);
+				return transport.writeCharacteristic(operation.service, operation.characteristic, operation.value);
+			case OPERATION_SUBSCRIBE:
+				return transport.setNotification(operation.service, operation.characteristic, operation.enabled);
+		}
+
+		return false;
+	}
+
+	protected void enqueue(Operation operation) {
+		manager.enqueue(this, operation);
+	}
+
+	protected void onLock(byte[] value) {
+		if (value == null || value.length < 1) return;
+		lock = value[0] == 0x1 ? LOCK_UNLOCKED : LOCK_LOCKED;
+	}
+
+	protected void onDashboard(byte[] value) {
+		frame.reset(value, 0, 0);
+		if (!frame.decode(DashboardFrame.SPEED | DashboardFrame.POWER | DashboardFrame.BATTERY)) return;
+
+		// first frame after unlocking has no battery
+		if (frame.getBattery() > 0) battery = frame.getBattery();
+		speed = frame.getSpeed();
+
+		history.push(System.currentTimeMillis(), frame.getSpeed(), frame.getPower(), frame.getBattery());
+	}
+
+	// --------------------------------------------------
+	// BikeTransport, for whoever drives this bike
+
+	/** Makes {@code callback} the one that hears from this bike, connecting if not done already. */
+	@Override
+	public void connect(Callback callback) {
+		setCallback(callback);
+		start();
+	}
+
+	@Override
+	public long nanoTime() {
+		return transport.nanoTime();
+	}
+
+	@Override
+	public void disconnect() {
+		manager.close(this);
+	}
+
+	@Override
+	public void close() {
+		manager.close(this);
+	}
+
+	// the session discovers by itself as soon as the link is up
+	@Override
+	public boolean discoverServices() {
+		return connected;
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return transport.hasCharacteristic(service, characteristic);
+	}
+
+	@Override
+	public boolean readCharacteristic(UUID service, UUID characteristic) {
+		if (!ready) return false;
+
+		enqueue(new Operation(OPERATION_READ, service, characteristic, null, false));
+		return true;
+	}
+
+	@Override
+	public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value) {
+		if (!ready) return false;
+
+		enqueue(new Operation(OPERATION_WRITE, service, characteristic, value, false));
+		return true;
+	}
+
+	@Override
+	public boolean setNotification(UUID service, UUID characteristic, boolean enabled) {
+		if (!ready) return false;
+
+		enqueue(new Operation(OPERATION_SUBSCRIBE, service, characteristic, null, enabled));
+		return true;
+	}
+
+	// --------------------------------------------------
+
+	protected final Callback transportCallback = new Callback() {
+		@Override
+		public void onConnectionStateChange(int newState) {
+			Callback cb = callback;
+
+			switch (newState) {
+				case STATE_CONNECTED:
+					connected = true;
+					transport.discoverServices();
+				break;
+				case STATE_DISCONNECTED:
+					connected = false;
+					ready = false;
+					lock = LOCK_UNKNOWN;
+					registers.clear();
+
+					dashboardSubscription.onDisconnected();
+					manager.onDisconnected(BikeSession.this);
+				break;
+			}
+
+			if (cb != null) cb.onConnectionStateChange(newState);
+		}
+
+		@Override
+		public void onServicesDiscovered(boolean success) {
+			if (success) {
+				// lock state and register replies are tracked for every bike, shown or not. Queued
+				// before going ready, so nobody's command can get ahead of the subscriptions
+				enqueue(new Operation(OPERATION_SUBSCRIBE, Uuid.serviceCby, Uuid.characteristicUnlock, null, true));
+				enqueue(new Operation(OPERATION_SUBSCRIBE, Uuid.serviceSettings, Uuid.characteristicSettingsRead, null, true));
+				enqueue(new Operation(OPERATION_READ, Uuid.serviceCby, Uuid.characteristicUnlock, null, false));
+
+				ready = true;
+				dashboardSubscription.onConnected(BikeSession.this);
+				manager.wake();
+			}
+
+			Callback cb = callback;
+			if (cb != null) cb.onServicesDiscovered(success);
+		}
+
+		@Override
+		public void onCharacteristicRead(UUID characteristic, byte[] value, boolean success) {
+			manager.onAnswered(BikeSession.this, OPERATION_READ, success);
+
+			if (success) {
+				lastSeen = System.currentTimeMillis();
+				if (Uuid.characteristicUnlock.equals(characteristic)) onLock(value);
+			}
+
+			Callback cb = callback;
+			if (cb != null) cb.onCharacteristicRead(characteristic, value, success);
+		}
+
+		@Override
+		public void onCharacteristicWrite(UUID characteristic, byte[] value, boolean success) {
+			manager.onAnswered(BikeSession.this, OPERATION_WRITE, success);
+
+			Callback cb = callback;
+			if (cb != null) cb.onCharacteristicWrite(characteristic, value, success);
+		}
+
+		@Override
+		public void onDescriptorWrite(UUID characteristic, boolean success) {
+			manager.onAnswered(BikeSession.this, OPERATION_SUBSCRIBE, success);
+
+			Callback cb = callback;
+			if (cb != null) cb.onDescriptorWrite(characteristic, success);
+		}
+
+		@Override
+		public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+			lastSeen = System.currentTimeMillis();
+
+			if (Uuid.characteristicDashboard.equals(characteristic)) {
+				onDashboard(value);
+			} else if (Uuid.characteristicUnlock.equals(characteristic)) {
+				onLock(value);
+			} else if (Uuid.characteristicSettingsRead.equals(characteristic)) {
+				registers.onReply(value);
+				manager.onReply(BikeSession.this);
+			}
+
+			Callback cb = callback;
+			if (cb != null) cb.onCharacteristicChanged(characteristic, value);
+		}
+	};
+}
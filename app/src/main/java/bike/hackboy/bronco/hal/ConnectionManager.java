@@ -0,0 +1,345 @@
+package bike.hackboy.bronco.hal;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.Telemetry;
+
+/**
+ * Keeps a few bikes connected at once, each in its own {@link BikeSession}, and decides
+ * whose GATT operation goes out next.
+ *
+ * Sessions take turns round robin, one operation each, so a bike with a long queue (a fleet
+ * job, a settings dump) can't starve the one the rider is looking at. How many operations
+ * may be on the air at the same time across all links is {@link #setMaxInFlight(int)}: one
+ * by default, Android's stack gets flaky with parallel GATT operations even on separate
+ * connections.
+ *
+ * Over the session cap the least recently used bike that isn't the active one is dropped.
+ * Opening a bike when the active one is all that's left drops the active one.
+ */
+public class ConnectionManager {
+	public static final String PREFERENCES = "connections";
+	public static final String PREFERENCE_MAX_SESSIONS = "max_sessions";
+	public static final int DEFAULT_MAX_SESSIONS = 3;
+
+	// no callback by then, the stack lost it
+	protected static final long OPERATION_TIMEOUT = 2000;
+	// how long a settings command waits for its reply before the session moves on
+	protected static final long REPLY_TIMEOUT = 1000;
+	protected static final long RETRY_DELAY = 50;
+	protected static final int MAX_ATTEMPTS = 3;
+	protected static final long TICK = 50;
+
+	public abstract static class TransportFactory {
+		public abstract BikeTransport create(String mac);
+	}
+
+	public abstract static class OnSessionListener {
+		/** The link to a bike that isn't the active one went down. */
+		public void onSessionLost(BikeSession session) { }
+		/** Closed to make room for another bike. */
+		public void onSessionEvicted(BikeSession session) { }
+	}
+
+	protected final TransportFactory factory;
+	protected final List<BikeSession> sessions = new ArrayList<>();
+	protected final Thread dispatcher;
+
+	protected OnSessionListener listener = null;
+	protected BikeSession active = null;
+	protected int maxSessions = DEFAULT_MAX_SESSIONS;
+	protected int maxInFlight = 1;
+	protected int inFlight = 0;
+	protected int cursor = 0;
+	protected volatile boolean running = true;
+
+	public ConnectionManager(TransportFactory factory) {
+		this.factory = factory;
+
+		dispatcher = new Thread(this::dispatch, "connections");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	public void setOnSessionListener(OnSessionListener listener) {
+		this.listener = listener;
+	}
+
+	public synchronized void setMaxSessions(int maxSessions) {
+		this.maxSessions = Math.max(1, maxSessions);
+		evict(0, false);
+	}
+
+	public synchronized int getMaxSessions() {
+		return maxSessions;
+	}
+
+	public synchronized void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+		notifyAll();
+	}
+
+	/** Connects to the bike, or hands back the session that already is. */
+	public BikeSession open(String mac) {
+		BikeSession session;
+
+		synchronized (this) {
+			session = get(mac);
+			if (session != null) return session;
+
+			// room first, so the new bike can never be the one that goes
+			evict(1, true);
+
+			session = new BikeSession(this, mac, factory.create(mac));
+			sessions.add(session);
+		}
+
+		session.start();
+		return session;
+	}
+
+	public synchronized BikeSession get(String mac) {
+		for (BikeSession session : sessions) {
+			if (session.getMac().equals(mac)) return session;
+		}
+
+		return null;
+	}
+
+	public synchronized List<BikeSession> getSessions() {
+		return new ArrayList<>(sessions);
+	}
+
+	public synchronized BikeSession getActive() {
+		return active;
+	}
+
+	/** The one the UI talks to. Never evicted. */
+	public synchronized void setActive(BikeSession session) {
+		active = session;
+		if (session != null) session.touch();
+	}
+
+	public void close(BikeSession session) {
+		synchronized (this) {
+			if (!sessions.remove(session)) return;
+			if (active == session) active = null;
+
+			release(session);
+		}
+
+		session.shutdown();
+	}
+
+	public void closeAll() {
+		for (BikeSession session : getSessions()) close(session);
+	}
+
+	public void shutdown() {
+		closeAll();
+
+		running = false;
+		dispatcher.interrupt();
+	}
+
+	public synchronized void report(PrintWriter out) {
+		out.printf("sessions: %d of %d, %d in flight%n", sessions.size(), maxSessions, inFlight);
+
+		for (BikeSession session : sessions) {
+			out.printf("  %s%s %s, %d queued, %d failed%n",
+				session.getMac(),
+				session == active ? " (active)" : "",
+				session.isReady() ? "ready" : session.isConnected() ? "connecting" : "down",
+				session.getQueueLength(),
+				session.getFailures()
+			);
+		}
+	}
+
+	// --------------------------------------------------
+	// called by the sessions
+
+	synchronized void enqueue(BikeSession session, BikeSession.Operation operation) {
+		session.queue.add(operation);
+		session.touch();
+		notifyAll();
+	}
+
+	/** GATT answered, the radio is free for the next operation. */
+	synchronized void onAnswered(BikeSession session, int type, boolean success) {
+		BikeSession.Operation operation = session.current;
+		if (operation == null || operation.type != type || operation.awaitingReply) return;
+
+		inFlight--;
+
+		if (success && operation.expectsReply) {
+			// the session stays busy until the bike replies, other sessions can go ahead
+			operation.awaitingReply = true;
+			operation.deadline = now() + REPLY_TIMEOUT;
+		} else {
+			if (!success) session.failures++;
+			session.current = null;
+		}
+
+		notifyAll();
+	}
+
+	/** The bike replied on the settings characteristic. */
+	synchronized void onReply(BikeSession session) {
+		BikeSession.Operation operation = session.current;
+		if (operation == null || !operation.awaitingReply) return;
+
+		session.current = null;
+		notifyAll();
+	}
+
+	synchronized void onDisconnected(BikeSession session) {
+		release(session);
+
+		if (session != active && sessions.contains(session) && listener != null) {
+			listener.onSessionLost(session);
+		}
+	}
+
+	synchronized void wake() {
+		notifyAll();
+	}
+
+	// --------------------------------------------------
+
+	protected void dispatch() {
+		while (running) {
+			BikeSession session;
+			BikeSession.Operation operation;
+
+			synchronized (this) {
+				expire();
+
+				session = inFlight < maxInFlight ? next() : null;
+
+				if (session == null) {
+					try {
+						wait(isBusy() ? TICK : 0);
+					} catch (InterruptedException e) {
+						return;
+					}
+
+					continue;
+				}
+
+				operation = session.queue.poll();
+				operation.deadline = now() + OPERATION_TIMEOUT;
+				session.current = operation;
+				inFlight++;
+			}
+
+			// outside the lock, the answer can come back before this returns
+			if (!session.issue(operation)) refused(session, operation);
+		}
+	}
+
+	protected synchronized void refused(BikeSession session, BikeSession.Operation operation) {
+		if (session.current != operation) return;
+
+		session.current = null;
+		inFlight--;
+
+		if (++operation.attempts < MAX_ATTEMPTS && session.isReady()) {
+			Telemetry.metrics.retries.increment();
+
+			session.queue.addFirst(operation);
+			session.notBefore = now() + RETRY_DELAY;
+		} else {
+			Telemetry.metrics.commandsFailed.increment();
+			session.failures++;
+		}
+
+		notifyAll();
+	}
+
+	/** @return the next session with something to send, taking turns */
+	protected BikeSession next() {
+		int count = sessions.size();
+		long now = now();
+
+		for (int i = 0; i < count; i++) {
+			BikeSession session = sessions.get((cursor + i) % count);
+
+			if (session.isReady() && session.current == null && !session.queue.isEmpty() && session.notBefore <= now) {
+				cursor = (cursor + i + 1) % count;
+				return session;
+			}
+		}
+
+		return null;
+	}
+
+	protected void expire() {
+		long now = now();
+
+		for (BikeSession session : sessions) {
+			BikeSession.Operation operation = session.current;
+			if (operation == null || operation.deadline > now) continue;
+
+			session.current = null;
+
+			// a silent bike after a good write isn't a failure, plenty of commands go unanswered
+			if (!operation.awaitingReply) {
+				inFlight--;
+				session.failures++;
+				Telemetry.metrics.commandsFailed.increment();
+			}
+
+			notifyAll();
+		}
+	}
+
+	protected boolean isBusy() {
+		for (BikeSession session : sessions) {
+			if (session.current != null || !session.queue.isEmpty()) return true;
+		}
+
+		return false;
+	}
+
+	protected void release(BikeSession session) {
+		BikeSession.Operation operation = session.current;
+		if (operation != null && !operation.awaitingReply) inFlight--;
+
+		session.current = null;
+		session.queue.clear();
+		notifyAll();
+	}
+
+	/**
+	 * @param room sessions about to be added
+	 * @param dropActive whether the active bike goes too when it's the only one left
+	 */
+	protected void evict(int room, boolean dropActive) {
+		while (sessions.size() + room > maxSessions) {
+			BikeSession oldest = null;
+
+			for (BikeSession session : sessions) {
+				if (session == active) continue;
+				if (oldest == null || session.getLastUsed() < oldest.getLastUsed()) oldest = session;
+			}
+
+			if (oldest == null && dropActive) oldest = active;
+			if (oldest == null) return;
+
+			if (oldest == active) active = null;
+			sessions.remove(oldest);
+			release(oldest);
+			oldest.shutdown();
+
+			if (listener != null) listener.onSessionEvicted(oldest);
+		}
+	}
+
+	protected static long now() {
+		return System.nanoTime() / 1_000_000;
+	}
+}
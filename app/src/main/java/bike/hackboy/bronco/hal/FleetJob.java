@@ -0,0 +1,171 @@
+package bike.hackboy.bronco.hal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bike.hackboy.bronco.bean.ConfigProfileBean;
+
+/**
+ * Puts one {@link ConfigProfileBean} on a list of bikes, a few at a time.
+ *
+ * Each bike gets its own worker: connect (or borrow the session if it's already connected),
+ * {@link ProfileApplier}, disconnect again if we were the ones who connected. How many run
+ * at once is capped by the parallelism given. How many new connections are open at once is
+ * capped by the slots the manager has left, so the job doesn't evict bikes, its own included.
+ * Bikes that were already connected don't take a slot. With no slot left at all the bikes
+ * that would need one fail straight away, nothing gets dropped to make room.
+ */
+public class FleetJob {
+	public static final int STATE_WAITING = 0;
+	public static final int STATE_CONNECTING = 1;
+	public static final int STATE_READING = 2;
+	public static final int STATE_WRITING = 3;
+	public static final int STATE_FLASHING = 4;
+	public static final int STATE_DONE = 5;
+	public static final int STATE_UNCHANGED = 6;
+	public static final int STATE_FAILED = 7;
+
+	protected static final long CONNECT_TIMEOUT = 20000;
+
+	public abstract static class Listener {
+		/** @param message what went wrong for STATE_FAILED, null otherwise */
+		public void onProgress(String mac, int state, String message) { }
+		public void onFinished(int succeeded, int failed) { }
+	}
+
+	protected final ConnectionManager connections;
+	protected final ConfigProfileBean profile;
+	protected final List<String> macs;
+	protected final int parallelism;
+	protected final int capacity;
+	protected final Semaphore slots;
+	protected final AtomicInteger succeeded = new AtomicInteger();
+	protected final AtomicInteger failed = new AtomicInteger();
+	protected final AtomicInteger remaining = new AtomicInteger();
+
+	protected Listener listener = null;
+	protected ExecutorService executor = null;
+	protected volatile boolean cancelled = false;
+
+	public FleetJob(ConnectionManager connections, ConfigProfileBean profile, List<String> macs, int parallelism) {
+		this.connections = connections;
+		this.profile = profile;
+		this.macs = new ArrayList<>(macs);
+
+		int fresh = 0;
+		for (String mac : macs) if (connections.get(mac) == null) fresh++;
+
+		// every connected bike holds a slot, not just the active one
+		int free = connections.getMaxSessions() - connections.getSessions().size();
+		int borrowed = this.macs.size() - fresh;
+
+		this.capacity = Math.max(0, Math.min(free, fresh));
+		this.slots = new Semaphore(capacity);
+		this.parallelism = Math.max(1, Math.min(parallelism, borrowed + capacity));
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public synchronized void start() {
+		if (executor != null) throw new IllegalStateException("This job has already run");
+
+		executor = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread thread = new Thread(r, "fleet");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		remaining.set(macs.size());
+
+		for (String mac : macs) {
+			progress(mac, STATE_WAITING, null);
+			executor.execute(() -> run(mac));
+		}
+
+		executor.shutdown();
+		if (macs.isEmpty()) finish();
+	}
+
+	/**
+	 * Workers waiting on a bike are interrupted, the rest fail as cancelled. A bike that was
+	 * mid flash still gets its flash session closed.
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		if (executor == null) return;
+
+		// the ones that never started still have to report, they fail straight away now
+		for (Runnable waiting : executor.shutdownNow()) waiting.run();
+	}
+
+	public boolean isRunning() {
+		return remaining.get() > 0;
+	}
+
+	protected void run(String mac) {
+		boolean borrowed = connections.get(mac) != null;
+		boolean slot = false;
+		BikeSession session = null;
+
+		try {
+			if (cancelled) throw new Exception("cancelled");
+
+			if (!borrowed) {
+				// waiting would be forever, opening anyway would evict someone
+				if (capacity == 0) throw new Exception("no connection free, disconnect a bike or allow more");
+
+				slots.acquire();
+				slot = true;
+			}
+
+			progress(mac, STATE_CONNECTING, null);
+			session = connections.open(mac);
+			if (!session.awaitReady(CONNECT_TIMEOUT)) throw new Exception("couldn't connect");
+
+			if (cancelled) throw new Exception("cancelled");
+
+			ProfileApplier applier = new ProfileApplier(session);
+			applier.setOnProgressListener(new ProfileApplier.OnProgressListener() {
+				@Override
+				public void onProgress(int step) {
+					// the applier's steps line up with STATE_READING onwards
+					progress(mac, STATE_READING + step, null);
+				}
+			});
+
+			int written = applier.apply(profile);
+
+			succeeded.incrementAndGet();
+			progress(mac, written > 0 ? STATE_DONE : STATE_UNCHANGED, null);
+		} catch (InterruptedException e) {
+			failed.incrementAndGet();
+			progress(mac, STATE_FAILED, "cancelled");
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			progress(mac, STATE_FAILED, e.getMessage());
+		} finally {
+			// leave bikes that were connected before as they were
+			if (session != null && !borrowed && session != connections.getActive()) connections.close(session);
+			if (slot) slots.release();
+			if (remaining.decrementAndGet() == 0) finish();
+		}
+	}
+
+	protected void progress(String mac, int state, String message) {
+		if (listener != null) listener.onProgress(mac, state, message);
+	}
+
+	protected void finish() {
+		if (listener != null) listener.onFinished(succeeded.get(), failed.get());
+	}
+}
@@ -0,0 +1,100 @@
+package bike.hackboy.bronco.hal;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.Telemetry;
+
+/**
+ * Keeps the CCCD of one characteristic in line with whether anybody wants its notifications.
+ *
+ * Turning on is done right away. Turning off waits a few seconds, so hopping to the settings
+ * screen and back doesn't flap the subscription. A descriptor write the stack refuses (another
+ * GATT operation in flight) is retried shortly after. All of it runs on one thread, so the
+ * writes go out in the order they were decided.
+ */
+public class NotificationSubscription {
+	protected static final long UNSUBSCRIBE_DELAY = 5000;
+	protected static final long RETRY_DELAY = 200;
+
+	protected final UUID service;
+	protected final UUID characteristic;
+	protected final ScheduledExecutorService executor;
+
+	protected BikeTransport connection = null;
+	protected boolean wanted = false;
+	protected volatile boolean subscribed = false;
+	protected ScheduledFuture<?> pending = null;
+
+	public NotificationSubscription(UUID service, UUID characteristic) {
+		this.service = service;
+		this.characteristic = characteristic;
+
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "subscription");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/** Services are discovered, the descriptor can be written. */
+	public void onConnected(BikeTransport connection) {
+		executor.execute(() -> {
+			this.connection = connection;
+			subscribed = false;
+			schedule(0);
+		});
+	}
+
+	/** The link is gone and the bike forgot the subscription with it. */
+	public void onDisconnected() {
+		executor.execute(() -> {
+			connection = null;
+			subscribed = false;
+			cancel();
+		});
+	}
+
+	public void setWanted(boolean wanted) {
+		executor.execute(() -> {
+			this.wanted = wanted;
+			schedule(wanted ? 0 : UNSUBSCRIBE_DELAY);
+		});
+	}
+
+	public boolean isSubscribed() {
+		return subscribed;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	protected void schedule(long delay) {
+		cancel();
+		pending = executor.schedule(this::sync, delay, TimeUnit.MILLISECONDS);
+	}
+
+	protected void cancel() {
+		if (pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+
+	protected void sync() {
+		pending = null;
+		if (connection == null || wanted == subscribed) return;
+
+		if (connection.setNotification(service, characteristic, wanted)) {
+			subscribed = wanted;
+		} else {
+			Telemetry.metrics.retries.increment();
+			schedule(RETRY_DELAY);
+		}
+	}
+}
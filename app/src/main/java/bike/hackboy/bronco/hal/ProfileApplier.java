@@ -0,0 +1,206 @@
+package bike.hackboy.bronco.hal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bike.hackboy.bronco.bean.ConfigProfileBean;
+import bike.hackboy.bronco.data.Command;
+import bike.hackboy.bronco.data.Uuid;
+
+/**
+ * Puts a {@link ConfigProfileBean} on one bike: reads what's there, writes only the registers
+ * that differ and commits flash once at the end, not once per setting. A bike that already
+ * matches isn't written to at all.
+ *
+ * Blocks until done, so run it off the main thread. Reads and writes are queued back to back
+ * on the session, which keeps the modbus requests in order and one at a time.
+ */
+public class ProfileApplier {
+	public static final int UNIT_MOTOR = 1;
+	public static final int UNIT_BIKE = 10;
+
+	public static final int REGISTER_AUTO_LOCK = 0;
+	public static final int REGISTER_SPEED = 4;
+	public static final int REGISTER_MOTOR_MODE = 11;
+	public static final int REGISTER_FIELD_WEAKENING = 129;
+	public static final int REGISTER_FLASH = 0x1FF;
+	public static final int FLASH_COMMIT = 0x7FFF;
+
+	public static final int STEP_READING = 0;
+	public static final int STEP_WRITING = 1;
+	public static final int STEP_FLASHING = 2;
+
+	// a few round trips each, with room for retries and a busy radio
+	protected static final long STEP_TIMEOUT = 15000;
+
+	public abstract static class OnProgressListener {
+		public void onProgress(int step) { }
+	}
+
+	protected static class Setting {
+		final String name;
+		final int unit;
+		final int register;
+		final byte[] read;
+		final byte[] write;
+		final int value;
+
+		Setting(String name, int unit, int register, byte[] read, byte[] write, int value) {
+			this.name = name;
+			this.unit = unit;
+			this.register = register;
+			this.read = Command.withChecksum(read);
+			this.write = Command.withChecksum(Command.withValue(write, value));
+			this.value = value;
+		}
+	}
+
+	protected final BikeSession session;
+	protected OnProgressListener listener = null;
+
+	public ProfileApplier(BikeSession session) {
+		this.session = session;
+	}
+
+	public void setOnProgressListener(OnProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/** @return how many registers were written, 0 if the bike already matched */
+	public int apply(ConfigProfileBean profile) throws Exception {
+		List<Setting> settings = settingsOf(profile);
+		if (settings.isEmpty()) return 0;
+
+		read(settings);
+
+		List<Setting> changed = new ArrayList<>();
+
+		for (Setting setting : settings) {
+			if (session.getRegisters().get(setting.unit, setting.register) != setting.value) changed.add(setting);
+		}
+
+		if (changed.isEmpty()) return 0;
+
+		progress(STEP_WRITING);
+		for (Setting setting : changed) send(setting.write);
+		await("write");
+
+		// write replies echo the command, no reply (or an error) leaves the cache where it was.
+		// Nothing gets committed unless every setting made it
+		for (Setting setting : changed) {
+			Integer written = session.getRegisters().get(setting.unit, setting.register);
+			if (written == null || written != setting.value) throw new Exception(setting.name + " was not accepted");
+		}
+
+		progress(STEP_FLASHING);
+		session.getRegisters().forget(UNIT_MOTOR, REGISTER_FLASH);
+		send(Command.withChecksum(Command.WRITE_FLASH));
+
+		// the flash session is open from here on, it gets closed whatever happens to the commit
+		boolean committed = false;
+
+		try {
+			await("flash");
+
+			Integer flash = session.getRegisters().get(UNIT_MOTOR, REGISTER_FLASH);
+			if (flash == null || flash != FLASH_COMMIT) throw new Exception("flash write was not accepted");
+
+			committed = true;
+		} finally {
+			closeFlash(committed);
+		}
+
+		return changed.size();
+	}
+
+	/** What the bike is set to now, as a profile that would put it back like this. */
+	public ConfigProfileBean capture(String name) throws Exception {
+		ConfigProfileBean profile = new ConfigProfileBean();
+
+		// any value will do, only the reads go out
+		profile.setSpeed(0);
+		profile.setMotorMode(0);
+		profile.setFieldWeakening(0);
+		profile.setAutoLock(0);
+
+		read(settingsOf(profile));
+
+		RegisterCache registers = session.getRegisters();
+
+		profile.setName(name);
+		profile.setSpeed(registers.get(UNIT_BIKE, REGISTER_SPEED));
+		profile.setMotorMode(registers.get(UNIT_MOTOR, REGISTER_MOTOR_MODE));
+		profile.setFieldWeakening(registers.get(UNIT_MOTOR, REGISTER_FIELD_WEAKENING));
+		profile.setAutoLock(registers.get(UNIT_BIKE, REGISTER_AUTO_LOCK));
+
+		return profile;
+	}
+
+	// read fresh rather than trusting the cache, someone may have used the app on it since
+	protected void read(List<Setting> settings) throws Exception {
+		progress(STEP_READING);
+
+		for (Setting setting : settings) {
+			session.getRegisters().forget(setting.unit, setting.register);
+			send(setting.read);
+		}
+
+		await("read");
+
+		for (Setting setting : settings) {
+			if (session.getRegisters().get(setting.unit, setting.register) == null) throw new Exception("couldn't read " + setting.name);
+		}
+	}
+
+	protected List<Setting> settingsOf(ConfigProfileBean profile) {
+		List<Setting> settings = new ArrayList<>();
+
+		if (profile.getSpeed() != ConfigProfileBean.KEEP) {
+			settings.add(new Setting("speed", UNIT_BIKE, REGISTER_SPEED,
+				Command.READ_SPEED, Command.SET_SPEED, profile.getSpeed()));
+		}
+
+		if (profile.getMotorMode() != ConfigProfileBean.KEEP) {
+			settings.add(new Setting("motor mode", UNIT_MOTOR, REGISTER_MOTOR_MODE,
+				Command.READ_MOTOR_MODE, Command.SET_MOTOR_MODE_TORQUE, profile.getMotorMode()));
+		}
+
+		if (profile.getFieldWeakening() != ConfigProfileBean.KEEP) {
+			settings.add(new Setting("field weakening", UNIT_MOTOR, REGISTER_FIELD_WEAKENING,
+				Command.READ_FIELD_WEAKENING, Command.SET_FIELD_WEAKENING, profile.getFieldWeakening()));
+		}
+
+		if (profile.getAutoLock() != ConfigProfileBean.KEEP) {
+			settings.add(new Setting("auto lock", UNIT_BIKE, REGISTER_AUTO_LOCK,
+				Command.READ_AUTO_LOCK, Command.SET_AUTO_LOCK, profile.getAutoLock()));
+		}
+
+		return settings;
+	}
+
+	/** @param report false when something already went wrong, that's the error worth keeping */
+	protected void closeFlash(boolean report) throws Exception {
+		try {
+			send(Command.withChecksum(Command.CLOSE_FLASH));
+			await("closing flash");
+		} catch (Exception e) {
+			if (report) throw e;
+		}
+	}
+
+	protected void send(byte[] command) throws Exception {
+		if (!session.writeCharacteristic(Uuid.serviceSettings, Uuid.characteristicSettingsWrite, command)) {
+			throw new Exception("not connected");
+		}
+	}
+
+	protected void await(String step) throws Exception {
+		if (!session.awaitIdle(STEP_TIMEOUT)) {
+			throw new Exception(session.isReady() ? step + " timed out" : "disconnected");
+		}
+	}
+
+	protected void progress(int step) {
+		if (listener != null) listener.onProgress(step);
+	}
+}
@@ -0,0 +1,88 @@
+package bike.hackboy.bronco.hal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last known value of every modbus register a bike has told us about, learned from the
+ * commands going out and the replies coming back.
+ *
+ * Read replies don't carry the register address and write replies don't carry the value,
+ * so the pending command per unit fills in the blanks. That holds as long as commands to
+ * a unit go out one at a time, which the session queue makes sure of.
+ */
+public class RegisterCache {
+	protected static final int FUNCTION_READ = 0x03;
+	protected static final int FUNCTION_WRITE = 0x10;
+
+	protected final Map<Integer, Integer> values = new HashMap<>();
+	protected final Map<Integer, byte[]> pending = new HashMap<>();
+	protected final Map<Integer, Integer> replied = new HashMap<>();
+
+	protected static int key(int unit, int register) {
+		return unit << 16 | register;
+	}
+
+	/** @return the cached value or null if it was never read or written */
+	public synchronized Integer get(int unit, int register) {
+		return values.get(key(unit, register));
+	}
+
+	/**
+	 * Which register the last reply from {@code unit} was about, the first one for a
+	 * multi-register read.
+	 *
+	 * @return -1 if the last reply couldn't be matched to a command
+	 */
+	public synchronized int getLastReplied(int unit) {
+		Integer register = replied.get(unit);
+		return register != null ? register : -1;
+	}
+
+	public synchronized void forget(int unit, int register) {
+		values.remove(key(unit, register));
+	}
+
+	public synchronized void clear() {
+		values.clear();
+		pending.clear();
+		replied.clear();
+	}
+
+	/** A command to {@code characteristicSettingsWrite} went out. */
+	public synchronized void onCommand(byte[] command) {
+		if (command == null || command.length < 6) return;
+		pending.put(command[0] & 0xff, command);
+	}
+
+	/** A notification from {@code characteristicSettingsRead} came in. */
+	public synchronized void onReply(byte[] reply) {
+		if (reply == null || reply.length < 3) return;
+
+		int unit = reply[0] & 0xff;
+		replied.remove(unit);
+
+		byte[] command = pending.remove(unit);
+		if (command == null) return;
+
+		int function = reply[1] & 0xff;
+		if (function != (command[1] & 0xff)) return;  // exception reply or out of step
+
+		int register = ((command[2] & 0xff) << 8) | (command[3] & 0xff);
+		replied.put(unit, register);
+
+		if (function == FUNCTION_READ) {
+			int bytes = reply[2] & 0xff;
+
+			for (int i = 0; i + 1 < bytes && 4 + i < reply.length; i += 2) {
+				values.put(key(unit, register + i / 2), ((reply[3 + i] & 0xff) << 8) | (reply[4 + i] & 0xff));
+			}
+		} else if (function == FUNCTION_WRITE && command.length >= 9) {
+			int count = ((command[4] & 0xff) << 8) | (command[5] & 0xff);
+
+			for (int i = 0; i < count && 8 + i * 2 < command.length; i++) {
+				values.put(key(unit, register + i), ((command[7 + i * 2] & 0xff) << 8) | (command[8 + i * 2] & 0xff));
+			}
+		}
+	}
+}
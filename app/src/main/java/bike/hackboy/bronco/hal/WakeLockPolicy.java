@@ -0,0 +1,70 @@
+package bike.hackboy.bronco.hal;
+
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import bike.hackboy.bronco.telemetry.Telemetry;
+
+/**
+ * Keeps the CPU up only around bluetooth work instead of for the whole ride.
+ *
+ * Every {@link #hold(long)} (re)arms one timed wake lock, so a burst of frames or a command
+ * and its reply share a single hold and the phone can sleep in between. The stack wakes us
+ * up again for the next notification on its own, it doesn't need us holding anything.
+ *
+ * Time held goes to {@link Telemetry#metrics}. Expiry isn't reported by the platform, so a
+ * hold is counted up to its deadline once the next one finds it expired, or on release.
+ */
+public class WakeLockPolicy {
+	protected final PowerManager.WakeLock wakeLock;
+
+	protected long acquiredAt = 0;
+	protected long heldUntil = 0;
+	protected boolean held = false;
+
+	public WakeLockPolicy(PowerManager powerManager, String tag) {
+		wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, tag);
+		wakeLock.setReferenceCounted(false);
+	}
+
+	/** Keeps the CPU awake for at least another {@code millis}. */
+	public synchronized void hold(long millis) {
+		long now = SystemClock.elapsedRealtime();
+
+		if (held && now >= heldUntil) account();
+
+		if (!held) {
+			held = true;
+			acquiredAt = now;
+			Telemetry.metrics.wakeLocks.increment();
+		}
+
+		// never shorten a longer hold that's still running
+		if (now + millis > heldUntil) {
+			heldUntil = now + millis;
+			wakeLock.acquire(millis);
+		}
+	}
+
+	public synchronized void release() {
+		if (!held) return;
+
+		heldUntil = Math.min(heldUntil, SystemClock.elapsedRealtime());
+		account();
+
+		if (wakeLock.isHeld()) wakeLock.release();
+	}
+
+	public synchronized boolean isHeld() {
+		return held && SystemClock.elapsedRealtime() < heldUntil;
+	}
+
+	protected void account() {
+		long millis = heldUntil - acquiredAt;
+
+		Telemetry.metrics.wakeLockMillis.add(millis);
+		Telemetry.metrics.wakeLockHeld.record(millis * 1_000_000L);
+
+		held = false;
+	}
+}
@@ -0,0 +1,71 @@
+package bike.hackboy.bronco.hal.sim;
+
+import java.util.Arrays;
+
+/**
+ * Modbus holding registers of the simulated controllers (unit 1, the motor controller, and
+ * unit 10, the rest of the bike). Writes land in RAM; {@link #commit()} copies RAM to flash
+ * and {@link #powerCycle()} throws away whatever wasn't committed, like the real thing.
+ */
+public class RegisterFile {
+	public static final int UNIT_MOTOR = 1;
+	public static final int UNIT_BIKE = 10;
+
+	public static final int REGISTER_COUNT = 0x200;
+
+	protected final int[][] ram = new int[2][REGISTER_COUNT];
+	protected final int[][] flash = new int[2][REGISTER_COUNT];
+
+	public RegisterFile() {
+		// factory defaults
+		flash[indexOf(UNIT_BIKE)][0] = 0;      // auto lock, minutes
+		flash[indexOf(UNIT_BIKE)][1] = 0;      // lights
+		flash[indexOf(UNIT_BIKE)][4] = 25;     // speed cap, km/h
+		flash[indexOf(UNIT_MOTOR)][11] = 1;    // motor mode: torque
+		flash[indexOf(UNIT_MOTOR)][129] = 0;   // field weakening
+
+		powerCycle();
+	}
+
+	public static boolean hasUnit(int unit) {
+		return unit == UNIT_MOTOR || unit == UNIT_BIKE;
+	}
+
+	protected static int indexOf(int unit) {
+		if (!hasUnit(unit)) throw new IllegalArgumentException("no such unit: " + unit);
+		return unit == UNIT_MOTOR ? 0 : 1;
+	}
+
+	public synchronized int read(int unit, int register) {
+		return ram[indexOf(unit)][register];
+	}
+
+	public synchronized void write(int unit, int register, int value) {
+		ram[indexOf(unit)][register] = value & 0xffff;
+	}
+
+	public synchronized int readFlash(int unit, int register) {
+		return flash[indexOf(unit)][register];
+	}
+
+	/** Persists RAM of both units; the app only ever sends the commit to unit 1. */
+	public synchronized void commit() {
+		for (int i = 0; i < ram.length; i++) {
+			System.arraycopy(ram[i], 0, flash[i], 0, REGISTER_COUNT);
+		}
+	}
+
+	public synchronized void powerCycle() {
+		for (int i = 0; i < ram.length; i++) {
+			System.arraycopy(flash[i], 0, ram[i], 0, REGISTER_COUNT);
+		}
+	}
+
+	public synchronized boolean isDirty() {
+		for (int i = 0; i < ram.length; i++) {
+			if (!Arrays.equals(ram[i], flash[i])) return true;
+		}
+
+		return false;
+	}
+}
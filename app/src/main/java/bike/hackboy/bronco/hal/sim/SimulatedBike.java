@@ -0,0 +1,468 @@
+package bike.hackboy.bronco.hal.sim;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import bike.hackboy.bronco.DashboardProto;
+import bike.hackboy.bronco.data.Command;
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.utils.Crc16;
+
+/**
+ * A bike in software, for running the command pipeline without one.
+ *
+ * Serves the Cby service (lock state, dashboard frames while unlocked) and the settings
+ * service, where writes are Modbus RTU frames answered on the read characteristic from a
+ * {@link RegisterFile}. Writing 0x7FFF to register 0x1FF commits RAM to flash.
+ *
+ * Every callback runs on one simulator thread, in order, after the configured latency.
+ * Lost packets show up as failed reads/writes and as missing notifications.
+ */
+public class SimulatedBike implements BikeTransport {
+	public static final int REGISTER_FLASH = 0x1FF;
+	public static final int FLASH_COMMIT = 0x7FFF;
+
+	protected static final int FUNCTION_READ = 3;
+	protected static final int FUNCTION_WRITE = 16;
+	protected static final int ERROR_ILLEGAL_FUNCTION = 1;
+	protected static final int ERROR_ILLEGAL_ADDRESS = 2;
+	protected static final int ERROR_ILLEGAL_VALUE = 3;
+
+	protected static final int REGISTER_LIGHTS = 1;
+	protected static final int REGISTER_SPEED = 4;
+
+	protected static final double BATTERY_WH = 360;
+
+	protected static class Packet {
+		final long due;
+		final Runnable runnable;
+
+		Packet(long due, Runnable runnable) {
+			this.due = due;
+			this.runnable = runnable;
+		}
+	}
+
+	protected final RegisterFile registers = new RegisterFile();
+	protected final ArrayDeque<Packet> inFlight = new ArrayDeque<>();
+	protected final Set<UUID> subscribed = new HashSet<>();
+	protected final Random random;
+
+	protected ScheduledExecutorService executor = null;
+	protected ScheduledFuture<?> dashboardTask = null;
+	protected Callback callback = null;
+	protected boolean connected = false;
+
+	// link
+	protected long latencyMillis = 20;
+	protected long jitterMillis = 10;
+	protected double lossRate = 0;
+	protected long dashboardIntervalMillis = 1000;
+	protected long lastDueNanos = 0;
+
+	// ride
+	protected boolean locked = true;
+	protected int riderSpeed = 22;
+	protected int assistance = 1;
+	protected int tripId = 0;
+	protected long tripStartNanos = 0;
+	protected long lastTickNanos = 0;
+	protected double distance = 0;
+	protected double battery = 80;
+	protected boolean firstFrame = true;
+
+	protected long notificationsSent = 0;
+	protected long packetsLost = 0;
+
+	public SimulatedBike() {
+		this(System.nanoTime());
+	}
+
+	/** @param seed fixes jitter and packet loss, for runs that have to be repeatable */
+	public SimulatedBike(long seed) {
+		random = new Random(seed);
+	}
+
+	// --------------------------------------------------
+
+	public synchronized void setLatency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+	}
+
+	/** @param lossRate share of packets that never arrive, 0..1 */
+	public synchronized void setLossRate(double lossRate) {
+		this.lossRate = lossRate;
+	}
+
+	public synchronized void setDashboardRate(double framesPerSecond) {
+		dashboardIntervalMillis = Math.max(1, Math.round(1000 / framesPerSecond));
+		if (dashboardTask != null) startDashboard();
+	}
+
+	/** How fast the simulated rider would like to go, the speed cap still applies. */
+	public synchronized void setRiderSpeed(int kmh) {
+		riderSpeed = kmh;
+	}
+
+	public synchronized void setBattery(double percent) {
+		battery = percent;
+	}
+
+	public RegisterFile getRegisters() {
+		return registers;
+	}
+
+	public synchronized boolean isLocked() {
+		return locked;
+	}
+
+	public synchronized long getNotificationsSent() {
+		return notificationsSent;
+	}
+
+	public synchronized long getPacketsLost() {
+		return packetsLost;
+	}
+
+	// --------------------------------------------------
+
+	@Override
+	public synchronized void connect(Callback callback) {
+		this.callback = callback;
+
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "simulated-bike");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		deliver(() -> {
+			synchronized (this) {
+				connected = true;
+			}
+
+			callback.onConnectionStateChange(STATE_CONNECTED);
+		});
+	}
+
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	@Override
+	public synchronized void disconnect() {
+		if (!connected) return;
+
+		connected = false;
+		subscribed.clear();
+		stopDashboard();
+
+		Callback cb = callback;
+		deliver(() -> cb.onConnectionStateChange(STATE_DISCONNECTED));
+	}
+
+	@Override
+	public synchronized void close() {
+		connected = false;
+		stopDashboard();
+		inFlight.clear();
+		callback = null;
+
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	@Override
+	public synchronized boolean discoverServices() {
+		if (!connected) return false;
+
+		Callback cb = callback;
+		deliver(() -> cb.onServicesDiscovered(true));
+		return true;
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		if (Uuid.serviceCby.equals(service)) {
+			return Uuid.characteristicUnlock.equals(characteristic) || Uuid.characteristicDashboard.equals(characteristic);
+		}
+
+		if (Uuid.serviceSettings.equals(service)) {
+			return Uuid.characteristicSettingsRead.equals(characteristic) || Uuid.characteristicSettingsWrite.equals(characteristic);
+		}
+
+		return false;
+	}
+
+	@Override
+	public synchronized boolean readCharacteristic(UUID service, UUID characteristic) {
+		if (!connected || !hasCharacteristic(service, characteristic)) return false;
+
+		byte[] value;
+
+		if (Uuid.characteristicUnlock.equals(characteristic)) {
+			value = new byte[] { (byte) (locked ? 0 : 1) };
+		} else if (Uuid.characteristicDashboard.equals(characteristic)) {
+			value = buildDashboardFrame(System.nanoTime());
+		} else {
+			value = new byte[0];
+		}
+
+		boolean lost = isLost();
+		Callback cb = callback;
+		deliver(() -> cb.onCharacteristicRead(characteristic, value, !lost));
+
+		return true;
+	}
+
+	@Override
+	public synchronized boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value) {
+		if (!connected || !hasCharacteristic(service, characteristic)) return false;
+
+		byte[] copy = value.clone();
+		boolean lost = isLost();
+		Callback cb = callback;
+
+		deliver(() -> cb.onCharacteristicWrite(characteristic, copy, !lost));
+		if (lost) return true;
+
+		if (Uuid.characteristicUnlock.equals(characteristic)) {
+			onLockWrite(copy);
+		} else if (Uuid.characteristicSettingsWrite.equals(characteristic)) {
+			byte[] reply = handleModbus(copy);
+			if (reply != null) notifyChanged(Uuid.characteristicSettingsRead, reply);
+		}
+
+		return true;
+	}
+
+	@Override
+	public synchronized boolean setNotification(UUID service, UUID characteristic, boolean enabled) {
+		if (!connected || !hasCharacteristic(service, characteristic)) return false;
+
+		if (enabled) {
+			subscribed.add(characteristic);
+		} else {
+			subscribed.remove(characteristic);
+		}
+
+		Callback cb = callback;
+		deliver(() -> cb.onDescriptorWrite(characteristic, true));
+
+		return true;
+	}
+
+	// --------------------------------------------------
+
+	protected void onLockWrite(byte[] value) {
+		if (value.length < 1) return;
+
+		boolean lock = value[0] == 0;
+		if (lock == locked) return;
+
+		locked = lock;
+
+		if (!locked) {
+			tripId = random.nextInt(Integer.MAX_VALUE);
+			tripStartNanos = System.nanoTime();
+			lastTickNanos = tripStartNanos;
+			distance = 0;
+			firstFrame = true;
+
+			startDashboard();
+		} else {
+			stopDashboard();
+		}
+
+		notifyChanged(Uuid.characteristicUnlock, new byte[] { (byte) (locked ? 0 : 1) });
+	}
+
+	/**
+	 * @return the reply frame, or null when a real controller would stay silent
+	 *         (bad checksum, unknown unit)
+	 */
+	protected byte[] handleModbus(byte[] frame) {
+		if (frame.length < 8 || !hasValidChecksum(frame)) return null;
+
+		int unit = frame[0] & 0xff;
+		int function = frame[1] & 0xff;
+		int register = ((frame[2] & 0xff) << 8) | (frame[3] & 0xff);
+		int count = ((frame[4] & 0xff) << 8) | (frame[5] & 0xff);
+
+		if (!RegisterFile.hasUnit(unit)) return null;
+
+		if (count < 1 || register + count > RegisterFile.REGISTER_COUNT) {
+			return errorReply(unit, function, ERROR_ILLEGAL_ADDRESS);
+		}
+
+		switch (function) {
+			case FUNCTION_READ:
+				byte[] read = new byte[3 + count * 2];
+				read[0] = (byte) unit;
+				read[1] = FUNCTION_READ;
+				read[2] = (byte) (count * 2);
+
+				for (int i = 0; i < count; i++) {
+					int value = registers.read(unit, register + i);
+					read[3 + i * 2] = (byte) (value >> 8);
+					read[4 + i * 2] = (byte) value;
+				}
+
+				return Command.withChecksum(read);
+
+			case FUNCTION_WRITE:
+				if (frame.length != 9 + count * 2 || (frame[6] & 0xff) != count * 2) {
+					return errorReply(unit, function, ERROR_ILLEGAL_VALUE);
+				}
+
+				for (int i = 0; i < count; i++) {
+					int value = ((frame[7 + i * 2] & 0xff) << 8) | (frame[8 + i * 2] & 0xff);
+
+					if (register + i == REGISTER_FLASH) {
+						// 0x7FFF commits, anything else (the app sends 0) closes the flash session
+						if (value == FLASH_COMMIT) registers.commit();
+					} else {
+						registers.write(unit, register + i, value);
+					}
+				}
+
+				return Command.withChecksum(new byte[] {
+					(byte) unit, FUNCTION_WRITE, frame[2], frame[3], frame[4], frame[5]
+				});
+
+			default:
+				return errorReply(unit, function, ERROR_ILLEGAL_FUNCTION);
+		}
+	}
+
+	protected static byte[] errorReply(int unit, int function, int error) {
+		return Command.withChecksum(new byte[] { (byte) unit, (byte) (function | 0x80), (byte) error });
+	}
+
+	protected static boolean hasValidChecksum(byte[] frame) {
+		byte[] payload = new byte[frame.length - 2];
+		System.arraycopy(frame, 0, payload, 0, payload.length);
+
+		byte[] checksum = Crc16.getChecksum(payload);
+		return checksum[0] == frame[frame.length - 2] && checksum[1] == frame[frame.length - 1];
+	}
+
+	// --------------------------------------------------
+
+	protected void startDashboard() {
+		stopDashboard();
+		if (executor == null) return;
+
+		dashboardTask = executor.scheduleAtFixedRate(this::tick, dashboardIntervalMillis, dashboardIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	protected void stopDashboard() {
+		if (dashboardTask != null) {
+			dashboardTask.cancel(false);
+			dashboardTask = null;
+		}
+	}
+
+	protected synchronized void tick() {
+		if (!connected || locked) return;
+		if (!subscribed.contains(Uuid.characteristicDashboard)) return;
+
+		// through the link like any other packet, so latency, loss and ordering apply to it too
+		notifyChanged(Uuid.characteristicDashboard, buildDashboardFrame(System.nanoTime()));
+	}
+
+	protected byte[] buildDashboardFrame(long now) {
+		int speed = locked ? 0 : Math.min(riderSpeed, registers.read(RegisterFile.UNIT_BIKE, REGISTER_SPEED));
+
+		// roughly what the motor pulls on the flat: 10 W per km/h
+		int power = speed * 10;
+
+		double hours = (now - lastTickNanos) / 3.6e12;
+		lastTickNanos = now;
+
+		if (!locked) {
+			distance += speed * 1000 * hours;
+			battery = Math.max(0, battery - power * hours / BATTERY_WH * 100);
+		}
+
+		DashboardProto.Dashboard.Builder builder = DashboardProto.Dashboard.newBuilder()
+			.setTripId(tripId)
+			.setDuration((int) ((now - tripStartNanos) / 1_000_000_000L))
+			.setSpeed(speed)
+			.setPower(power)
+			.setDistance((int) distance)
+			.setAssistance(assistance)
+			.setLights(registers.read(RegisterFile.UNIT_BIKE, REGISTER_LIGHTS));
+
+		// like the real bike, the first frame after unlocking comes without a battery level
+		if (!firstFrame) builder.setBattery((int) Math.ceil(battery));
+		firstFrame = false;
+
+		return builder.build().toByteArray();
+	}
+
+	// --------------------------------------------------
+
+	protected void notifyChanged(UUID characteristic, byte[] value) {
+		if (!subscribed.contains(characteristic)) return;
+
+		if (isLost()) return;
+
+		Callback cb = callback;
+		deliver(() -> {
+			synchronized (this) {
+				notificationsSent++;
+			}
+
+			cb.onCharacteristicChanged(characteristic, value);
+		});
+	}
+
+	protected boolean isLost() {
+		if (lossRate <= 0 || random.nextDouble() >= lossRate) return false;
+
+		packetsLost++;
+		return true;
+	}
+
+	/** Runs on the simulator thread after the link latency, never overtaking earlier packets. */
+	protected void deliver(Runnable runnable) {
+		if (executor == null) return;
+
+		long delay = latencyMillis + (jitterMillis > 0 ? (long) random.nextInt((int) jitterMillis + 1) : 0);
+		long due = Math.max(System.nanoTime() + delay * 1_000_000L, lastDueNanos);
+		lastDueNanos = due;
+
+		inFlight.add(new Packet(due, runnable));
+		executor.schedule(this::drain, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	// packets are queued in due order, so whichever drain fires first takes everything that's due
+	protected void drain() {
+		while (true) {
+			Packet packet;
+
+			synchronized (this) {
+				packet = inFlight.peek();
+				if (packet == null || packet.due > System.nanoTime()) return;
+				inFlight.poll();
+			}
+
+			packet.runnable.run();
+		}
+	}
+}
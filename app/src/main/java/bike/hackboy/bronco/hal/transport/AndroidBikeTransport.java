@@ -0,0 +1,152 @@
+package bike.hackboy.bronco.hal.transport;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.UUID;
+
+import bike.hackboy.bronco.data.Uuid;
+
+/**
+ * {@link BikeTransport} over the phone's own bluetooth stack.
+ */
+public class AndroidBikeTransport implements BikeTransport {
+	protected final Context context;
+	protected final BluetoothDevice device;
+
+	protected volatile BluetoothGatt gatt = null;
+	protected Callback callback = null;
+
+	public AndroidBikeTransport(Context context, BluetoothDevice device) {
+		this.context = context;
+		this.device = device;
+	}
+
+	@Override
+	public void connect(Callback callback) {
+		this.callback = callback;
+
+		// some stacks only behave when connectGatt is called from the main thread
+		Handler handler = new Handler(Looper.getMainLooper());
+		handler.post(() -> gatt = device.connectGatt(context, false, gattCallback));
+	}
+
+	@Override
+	public long nanoTime() {
+		return SystemClock.elapsedRealtimeNanos();
+	}
+
+	@Override
+	public void disconnect() {
+		if (gatt != null) gatt.disconnect();
+	}
+
+	@Override
+	public void close() {
+		if (gatt != null) gatt.close();
+	}
+
+	@Override
+	public boolean discoverServices() {
+		return gatt != null && gatt.discoverServices();
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return findCharacteristic(service, characteristic) != null;
+	}
+
+	@Override
+	public boolean readCharacteristic(UUID service, UUID characteristic) {
+		BluetoothGattCharacteristic c = findCharacteristic(service, characteristic);
+		return c != null && gatt.readCharacteristic(c);
+	}
+
+	@Override
+	public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value) {
+		BluetoothGattCharacteristic c = findCharacteristic(service, characteristic);
+		if (c == null) return false;
+
+		c.setValue(value);
+		return gatt.writeCharacteristic(c);
+	}
+
+	@Override
+	public boolean setNotification(UUID service, UUID characteristic, boolean enabled) {
+		BluetoothGattCharacteristic c = findCharacteristic(service, characteristic);
+		if (c == null) return false;
+
+		gatt.setCharacteristicNotification(c, enabled);
+
+		BluetoothGattDescriptor descriptor = c.getDescriptor(Uuid.notificationDescriptor);
+		if (descriptor == null) return false;
+
+		descriptor.setValue(enabled
+			? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE
+			: BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+
+		return gatt.writeDescriptor(descriptor);
+	}
+
+	protected BluetoothGattCharacteristic findCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+		if (gatt == null) return null;
+
+		BluetoothGattService service = gatt.getService(serviceUuid);
+		if (service == null) return null;
+
+		return service.getCharacteristic(characteristicUuid);
+	}
+
+	// --------------------------------------------------
+
+	protected final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+		@Override
+		public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+			// can arrive before connectGatt has returned
+			if (gatt == null) gatt = g;
+
+			switch (newState) {
+				case BluetoothProfile.STATE_CONNECTED:
+					callback.onConnectionStateChange(STATE_CONNECTED);
+				break;
+				case BluetoothProfile.STATE_DISCONNECTED:
+					callback.onConnectionStateChange(STATE_DISCONNECTED);
+				break;
+			}
+		}
+
+		@Override
+		public void onServicesDiscovered(BluetoothGatt g, int status) {
+			callback.onServicesDiscovered(status == BluetoothGatt.GATT_SUCCESS);
+		}
+
+		@Override
+		public void onCharacteristicRead(BluetoothGatt g, BluetoothGattCharacteristic characteristic, int status) {
+			callback.onCharacteristicRead(characteristic.getUuid(), characteristic.getValue(), status == BluetoothGatt.GATT_SUCCESS);
+		}
+
+		@Override
+		public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic characteristic, int status) {
+			callback.onCharacteristicWrite(characteristic.getUuid(), characteristic.getValue(), status == BluetoothGatt.GATT_SUCCESS);
+		}
+
+		@Override
+		public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic characteristic) {
+			callback.onCharacteristicChanged(characteristic.getUuid(), characteristic.getValue());
+		}
+
+		@Override
+		public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor descriptor, int status) {
+			callback.onDescriptorWrite(descriptor.getCharacteristic().getUuid(), status == BluetoothGatt.GATT_SUCCESS);
+		}
+	};
+}
@@ -0,0 +1,40 @@
+package bike.hackboy.bronco.hal.transport;
+
+import java.util.UUID;
+
+/**
+ * The few GATT operations the app needs from a bike, so the command pipeline doesn't have
+ * to know whether there's a phone radio, a simulator or a recording on the other end.
+ *
+ * Like BluetoothGatt, every operation is asynchronous: the return value only says whether
+ * it could be queued, the outcome arrives on the {@link Callback}.
+ */
+public interface BikeTransport {
+	// same values as BluetoothProfile.STATE_*
+	int STATE_DISCONNECTED = 0;
+	int STATE_CONNECTED = 2;
+
+	abstract class Callback {
+		public void onConnectionStateChange(int newState) { }
+		public void onServicesDiscovered(boolean success) { }
+		public void onCharacteristicRead(UUID characteristic, byte[] value, boolean success) { }
+		public void onCharacteristicWrite(UUID characteristic, byte[] value, boolean success) { }
+		public void onCharacteristicChanged(UUID characteristic, byte[] value) { }
+		public void onDescriptorWrite(UUID characteristic, boolean success) { }
+	}
+
+	void connect(Callback callback);
+
+	/** Monotonic time in nanoseconds, as this transport sees it. Stamp frames with this. */
+	long nanoTime();
+
+	void disconnect();
+	void close();
+
+	boolean discoverServices();
+	boolean hasCharacteristic(UUID service, UUID characteristic);
+
+	boolean readCharacteristic(UUID service, UUID characteristic);
+	boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value);
+	boolean setNotification(UUID service, UUID characteristic, boolean enabled);
+}
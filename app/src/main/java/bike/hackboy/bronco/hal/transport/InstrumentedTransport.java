@@ -0,0 +1,161 @@
+package bike.hackboy.bronco.hal.transport;
+
+import java.util.UUID;
+
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.telemetry.CommandSpans;
+import bike.hackboy.bronco.telemetry.Latency;
+import bike.hackboy.bronco.telemetry.Metrics;
+import bike.hackboy.bronco.telemetry.Telemetry;
+import bike.hackboy.bronco.utils.Tracer;
+
+/**
+ * Wraps another transport, times commands on their way through it (see {@link Latency})
+ * and counts every operation and its outcome in {@link Metrics}.
+ */
+public class InstrumentedTransport implements BikeTransport {
+	protected final BikeTransport delegate;
+
+	// one pair per bike, an answer can only belong to a command sent to the same bike
+	protected final CommandSpans settings = new CommandSpans(Telemetry.latency.settingsWritten, Telemetry.latency.settingsAcked);
+	protected final CommandSpans lock = new CommandSpans(Telemetry.latency.lockWritten, Telemetry.latency.lockAcked);
+
+	// one GATT operation in flight at a time, so one write slice at a time
+	protected volatile int writeTrace = 0;
+
+	public InstrumentedTransport(BikeTransport delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void connect(Callback callback) {
+		settings.clear();
+		lock.clear();
+
+		delegate.connect(new Callback() {
+			@Override
+			public void onConnectionStateChange(int newState) {
+				callback.onConnectionStateChange(newState);
+			}
+
+			@Override
+			public void onServicesDiscovered(boolean success) {
+				count(Metrics.GattOps.DISCOVER, success);
+				callback.onServicesDiscovered(success);
+			}
+
+			@Override
+			public void onCharacteristicRead(UUID characteristic, byte[] value, boolean success) {
+				count(Metrics.GattOps.READ, success);
+
+				if (success && Uuid.characteristicUnlock.equals(characteristic)) {
+					lock.onAcked(Latency.now());
+				}
+
+				callback.onCharacteristicRead(characteristic, value, success);
+			}
+
+			@Override
+			public void onCharacteristicWrite(UUID characteristic, byte[] value, boolean success) {
+				count(Metrics.GattOps.WRITE, success);
+				Tracer.endAsync("gatt write", writeTrace);
+
+				if (success) {
+					if (Uuid.characteristicSettingsWrite.equals(characteristic)) {
+						settings.onWritten(Latency.now());
+					} else if (Uuid.characteristicUnlock.equals(characteristic)) {
+						lock.onWritten(Latency.now());
+					}
+				}
+
+				callback.onCharacteristicWrite(characteristic, value, success);
+			}
+
+			@Override
+			public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+				count(Metrics.GattOps.NOTIFY, true);
+
+				if (Uuid.characteristicSettingsRead.equals(characteristic)) {
+					settings.onAcked(Latency.now());
+				} else if (Uuid.characteristicUnlock.equals(characteristic)) {
+					lock.onAcked(Latency.now());
+				}
+
+				callback.onCharacteristicChanged(characteristic, value);
+			}
+
+			@Override
+			public void onDescriptorWrite(UUID characteristic, boolean success) {
+				count(Metrics.GattOps.SUBSCRIBE, success);
+				callback.onDescriptorWrite(characteristic, success);
+			}
+		});
+	}
+
+	@Override
+	public long nanoTime() {
+		return delegate.nanoTime();
+	}
+
+	@Override
+	public void disconnect() {
+		delegate.disconnect();
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	@Override
+	public boolean discoverServices() {
+		return queued(Metrics.GattOps.DISCOVER, delegate.discoverServices());
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return delegate.hasCharacteristic(service, characteristic);
+	}
+
+	@Override
+	public boolean readCharacteristic(UUID service, UUID characteristic) {
+		return queued(Metrics.GattOps.READ, delegate.readCharacteristic(service, characteristic));
+	}
+
+	@Override
+	public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value) {
+		// started before the write, the callback can beat writeCharacteristic returning
+		CommandSpans spans = null;
+
+		if (Uuid.characteristicSettingsWrite.equals(characteristic)) {
+			spans = settings;
+		} else if (Uuid.characteristicUnlock.equals(characteristic)) {
+			spans = lock;
+		}
+
+		if (spans != null) spans.onSent(Latency.now());
+		writeTrace = Tracer.beginAsync("gatt write");
+
+		boolean queued = queued(Metrics.GattOps.WRITE, delegate.writeCharacteristic(service, characteristic, value));
+		if (!queued) {
+			if (spans != null) spans.onNotSent();
+			Tracer.endAsync("gatt write", writeTrace);
+		}
+
+		return queued;
+	}
+
+	@Override
+	public boolean setNotification(UUID service, UUID characteristic, boolean enabled) {
+		return queued(Metrics.GattOps.SUBSCRIBE, delegate.setNotification(service, characteristic, enabled));
+	}
+
+	protected static boolean queued(int type, boolean queued) {
+		Telemetry.metrics.gatt.count(type, queued ? Metrics.GattOps.QUEUED : Metrics.GattOps.REFUSED);
+		return queued;
+	}
+
+	protected static void count(int type, boolean success) {
+		Telemetry.metrics.gatt.count(type, success ? Metrics.GattOps.SUCCEEDED : Metrics.GattOps.FAILED);
+	}
+}
@@ -0,0 +1,151 @@
+package bike.hackboy.bronco.hal.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import bike.hackboy.bronco.telemetry.FrameLog;
+import bike.hackboy.bronco.telemetry.FrameLogReader;
+
+/**
+ * Plays a recorded {@link FrameLog} back as if the bike were sending it.
+ *
+ * Records come out in file order on one thread, paced by their recorded timestamps divided
+ * by the speed factor, or back to back with {@link #AS_FAST_AS_POSSIBLE}. {@link #nanoTime()}
+ * follows the recording rather than the wall clock, so anything timed off the transport sees
+ * exactly the same numbers on every run, whatever the speed.
+ *
+ * Commands sent by the app are accepted and ignored: the replies are in the recording.
+ */
+public class ReplayTransport implements BikeTransport {
+	public static final double AS_FAST_AS_POSSIBLE = 0;
+
+	protected final File file;
+	protected final double speed;
+	protected final CountDownLatch discovered = new CountDownLatch(1);
+
+	protected Thread thread = null;
+	protected volatile boolean running = false;
+	protected volatile long virtualNanos = 0;
+	protected volatile long records = 0;
+
+	public ReplayTransport(File file, double speed) {
+		this.file = file;
+		this.speed = speed;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	@Override
+	public synchronized void connect(Callback callback) {
+		if (thread != null) return;
+
+		running = true;
+		thread = new Thread(() -> replay(callback), "replay");
+		thread.start();
+	}
+
+	@Override
+	public void disconnect() {
+		close();
+	}
+
+	@Override
+	public synchronized void close() {
+		running = false;
+
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	@Override
+	public long nanoTime() {
+		return virtualNanos;
+	}
+
+	@Override
+	public boolean discoverServices() {
+		discovered.countDown();
+		return true;
+	}
+
+	@Override
+	public boolean hasCharacteristic(UUID service, UUID characteristic) {
+		return FrameLog.characteristicCode(characteristic) != FrameLog.CHARACTERISTIC_OTHER;
+	}
+
+	@Override
+	public boolean readCharacteristic(UUID service, UUID characteristic) {
+		return true;
+	}
+
+	@Override
+	public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value) {
+		return true;
+	}
+
+	@Override
+	public boolean setNotification(UUID service, UUID characteristic, boolean enabled) {
+		return true;
+	}
+
+	protected void replay(Callback callback) {
+		try (FrameLogReader reader = new FrameLogReader(file)) {
+			virtualNanos = reader.getStartNanos();
+			callback.onConnectionStateChange(STATE_CONNECTED);
+
+			// hold the traffic until the app is listening, like a real connection
+			discovered.await();
+			callback.onServicesDiscovered(true);
+
+			long wallStart = System.nanoTime();
+			long recordStart = reader.getStartNanos();
+
+			while (running && reader.next()) {
+				long timestamp = reader.getTimestampNanos();
+
+				if (speed > 0) {
+					long due = wallStart + (long) ((timestamp - recordStart) / speed);
+
+					long wait;
+					while (running && (wait = due - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(wait);
+					}
+
+					if (!running) break;
+				}
+
+				virtualNanos = timestamp;
+				records++;
+
+				switch (reader.getType()) {
+					case FrameLog.TYPE_NOTIFY:
+						callback.onCharacteristicChanged(reader.getCharacteristic(), reader.getValue());
+					break;
+					case FrameLog.TYPE_READ:
+						callback.onCharacteristicRead(reader.getCharacteristic(), reader.getValue(), true);
+					break;
+					case FrameLog.TYPE_WRITE:
+						callback.onCharacteristicWrite(reader.getCharacteristic(), reader.getValue(), true);
+					break;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// ran out of records rather than being closed
+		boolean finished = running;
+		running = false;
+
+		if (finished) callback.onConnectionStateChange(STATE_DISCONNECTED);
+	}
+}
@@ -0,0 +1,75 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * Times commands to one characteristic from being handed to the stack, to the write callback,
+ * to the bike's answer. The bike answers in order and there's one GATT operation in flight at
+ * a time, so spans are matched first in first out.
+ *
+ * Answers that never come (dropped link, a command the bike ignores) would shift every later
+ * match, so anything pending longer than {@link #TIMEOUT_NANOS} is given up on.
+ */
+public class CommandSpans {
+	protected static final int CAPACITY = 32;
+	protected static final long TIMEOUT_NANOS = 10_000_000_000L;
+
+	protected final LatencyHistogram written;
+	protected final LatencyHistogram acked;
+
+	protected final long[] sentAt = new long[CAPACITY];
+	protected long sent = 0;
+	protected long writeCursor = 0;
+	protected long ackCursor = 0;
+
+	public CommandSpans(LatencyHistogram written, LatencyHistogram acked) {
+		this.written = written;
+		this.acked = acked;
+	}
+
+	public synchronized void onSent(long nanos) {
+		sentAt[(int) (sent % CAPACITY)] = nanos;
+		sent++;
+
+		// ring is full, oldest spans are lost
+		writeCursor = Math.max(writeCursor, sent - CAPACITY);
+		ackCursor = Math.max(ackCursor, sent - CAPACITY);
+	}
+
+	/** Takes back the last {@link #onSent(long)}, the stack refused the write. */
+	public synchronized void onNotSent() {
+		if (sent == 0) return;
+
+		sent--;
+		writeCursor = Math.min(writeCursor, sent);
+		ackCursor = Math.min(ackCursor, sent);
+	}
+
+	public synchronized void onWritten(long nanos) {
+		writeCursor = next(writeCursor, nanos);
+		if (writeCursor == sent) return;
+
+		written.record(nanos - sentAt[(int) (writeCursor % CAPACITY)]);
+		writeCursor++;
+	}
+
+	public synchronized void onAcked(long nanos) {
+		ackCursor = next(ackCursor, nanos);
+		if (ackCursor == sent) return;
+
+		acked.record(nanos - sentAt[(int) (ackCursor % CAPACITY)]);
+		ackCursor++;
+
+		// an answer means it was written too, even if that callback went missing
+		writeCursor = Math.max(writeCursor, ackCursor);
+	}
+
+	/** Forget pending spans, their answers won't come on a new connection. */
+	public synchronized void clear() {
+		writeCursor = sent;
+		ackCursor = sent;
+	}
+
+	protected long next(long cursor, long nanos) {
+		while (cursor < sent && nanos - sentAt[(int) (cursor % CAPACITY)] > TIMEOUT_NANOS) cursor++;
+		return cursor;
+	}
+}
@@ -0,0 +1,138 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * A dashboard notification decoded straight off the wire into plain ints, only the fields
+ * asked for. One instance is reused for every frame, so consumers must copy what they keep.
+ *
+ * Field masks are {@code 1 << field number} from dashboard.proto.
+ */
+public class DashboardFrame {
+	public static final int TRIP_ID = 1 << 1;
+	public static final int DURATION = 1 << 2;
+	public static final int SPEED = 1 << 3;
+	public static final int POWER = 1 << 4;
+	public static final int DISTANCE = 1 << 5;
+	public static final int BATTERY = 1 << 6;
+	public static final int ASSISTANCE = 1 << 7;
+	public static final int LIGHTS = 1 << 8;
+
+	public static final int NONE = 0;
+	public static final int ALL = TRIP_ID | DURATION | SPEED | POWER | DISTANCE | BATTERY | ASSISTANCE | LIGHTS;
+
+	protected final WireReader reader = new WireReader();
+
+	protected byte[] raw;
+	protected long timestamp;
+	protected long received;
+	protected int fields;
+
+	protected int tripId;
+	protected int duration;
+	protected int speed;
+	protected int power;
+	protected int distance;
+	protected int battery;
+	protected int assistance;
+	protected int lights;
+
+	/**
+	 * @param timestamp transport clock, as everything else in telemetry
+	 * @param received {@link Latency#now()} when it came in
+	 */
+	public void reset(byte[] raw, long timestamp, long received) {
+		this.raw = raw;
+		this.timestamp = timestamp;
+		this.received = received;
+		this.fields = NONE;
+	}
+
+	/**
+	 * Decodes the requested fields, leaving the rest as they were. Fields missing from the
+	 * message are 0, as protobuf would have them.
+	 *
+	 * @return false if the frame is malformed
+	 */
+	public boolean decode(int fields) {
+		int wanted = fields & ~this.fields;
+		if (wanted == NONE) return true;
+
+		if ((wanted & TRIP_ID) != 0) tripId = 0;
+		if ((wanted & DURATION) != 0) duration = 0;
+		if ((wanted & SPEED) != 0) speed = 0;
+		if ((wanted & POWER) != 0) power = 0;
+		if ((wanted & DISTANCE) != 0) distance = 0;
+		if ((wanted & BATTERY) != 0) battery = 0;
+		if ((wanted & ASSISTANCE) != 0) assistance = 0;
+		if ((wanted & LIGHTS) != 0) lights = 0;
+
+		reader.reset(raw);
+
+		while (reader.next()) {
+			int field = reader.getField();
+			if (field > 8 || (wanted & (1 << field)) == 0) continue;
+			if (reader.getWireType() != WireReader.WIRE_VARINT) return false;
+
+			int value = reader.getIntValue();
+
+			switch (field) {
+				case 1: tripId = value; break;
+				case 2: duration = value; break;
+				case 3: speed = value; break;
+				case 4: power = value; break;
+				case 5: distance = value; break;
+				case 6: battery = value; break;
+				case 7: assistance = value; break;
+				case 8: lights = value; break;
+			}
+		}
+
+		if (reader.isMalformed()) return false;
+
+		this.fields |= wanted;
+		return true;
+	}
+
+	public byte[] getRaw() {
+		return raw;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public int getTripId() {
+		return tripId;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	public int getSpeed() {
+		return speed;
+	}
+
+	public int getPower() {
+		return power;
+	}
+
+	public int getDistance() {
+		return distance;
+	}
+
+	public int getBattery() {
+		return battery;
+	}
+
+	public int getAssistance() {
+		return assistance;
+	}
+
+	public int getLights() {
+		return lights;
+	}
+}
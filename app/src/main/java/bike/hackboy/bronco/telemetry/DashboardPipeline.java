@@ -0,0 +1,136 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * Hands each dashboard notification to whoever needs it, decoding only the fields the due
+ * consumers asked for. A consumer that's inactive, or whose interval hasn't passed yet, costs
+ * nothing; a frame nobody is due for isn't decoded at all.
+ *
+ * Frames come in on one thread (the bluetooth callback), consumers are switched on and off
+ * from any other.
+ */
+public class DashboardPipeline {
+	public abstract static class Consumer {
+		protected final String name;
+		protected final int fields;
+		protected final long intervalNanos;
+
+		protected volatile boolean active = false;
+		protected boolean ran = false;
+		protected long lastRun = 0;
+
+		/**
+		 * @param fields {@link DashboardFrame} mask, NONE for consumers that only want the raw bytes
+		 * @param intervalNanos least time between two frames, 0 for all of them
+		 */
+		protected Consumer(String name, int fields, long intervalNanos) {
+			this.name = name;
+			this.fields = fields;
+			this.intervalNanos = intervalNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isActive() {
+			return active;
+		}
+
+		/** Makes the next frame due right away. */
+		public void rearm() {
+			ran = false;
+		}
+
+		protected boolean isDue(long timestamp) {
+			return active && (!ran || timestamp - lastRun >= intervalNanos);
+		}
+
+		/** @return false to be offered the next frame too, e.g. when this one was incomplete */
+		public abstract boolean onFrame(DashboardFrame frame);
+	}
+
+	public abstract static class OnActiveChangeListener {
+		public void onActiveChange(int activeConsumers) { }
+	}
+
+	protected final DashboardFrame frame = new DashboardFrame();
+	protected volatile Consumer[] consumers = new Consumer[0];
+	protected OnActiveChangeListener listener = null;
+
+	public synchronized void add(Consumer consumer) {
+		Consumer[] next = new Consumer[consumers.length + 1];
+		System.arraycopy(consumers, 0, next, 0, consumers.length);
+		next[consumers.length] = consumer;
+
+		consumers = next;
+	}
+
+	public void setOnActiveChangeListener(OnActiveChangeListener listener) {
+		this.listener = listener;
+	}
+
+	public void setActive(Consumer consumer, boolean active) {
+		int count;
+
+		synchronized (this) {
+			if (consumer.active == active) return;
+
+			consumer.active = active;
+			consumer.rearm();
+			count = getActiveCount();
+		}
+
+		if (listener != null) listener.onActiveChange(count);
+	}
+
+	public int getActiveCount() {
+		int count = 0;
+		for (Consumer c : consumers) if (c.active) count++;
+
+		return count;
+	}
+
+	/**
+	 * Consumers asking for no fields, or only for fields that did decode, still get a malformed frame.
+	 *
+	 * @return false if the frame had to be decoded and turned out malformed
+	 */
+	public boolean onFrame(byte[] raw, long timestamp, long received) {
+		Consumer[] all = consumers;
+		int fields = DashboardFrame.NONE;
+		boolean due = false;
+
+		for (Consumer c : all) {
+			if (c.isDue(timestamp)) {
+				fields |= c.fields;
+				due = true;
+			}
+		}
+
+		if (!due) {
+			Telemetry.metrics.framesSkipped.increment();
+			return true;
+		}
+
+		frame.reset(raw, timestamp, received);
+		boolean valid = frame.decode(fields);
+
+		for (Consumer c : all) {
+			if (!c.isDue(timestamp)) continue;
+
+			// switched on since the first pass, or the frame is broken somewhere and only
+			// this consumer's fields are worth trying, the recorder wants it either way
+			if (!frame.decode(c.fields)) {
+				valid = false;
+				continue;
+			}
+
+			if (c.onFrame(frame)) {
+				c.ran = true;
+				c.lastRun = timestamp;
+			}
+		}
+
+		return valid;
+	}
+}
@@ -0,0 +1,215 @@
+package bike.hackboy.bronco.telemetry;
+
+import bike.hackboy.bronco.bean.TripSummaryBean;
+
+/**
+ * Integrates the dashboard power readings into watt-hours.
+ *
+ * Runs on every decoded frame, so {@link #onSample} only touches primitive fields.
+ * Intervals are integrated with the trapezoidal rule on the frame receive timestamps;
+ * intervals longer than {@link #MAX_GAP_NANOS} (dropped stream, reconnect) are skipped
+ * rather than guessed, along with the distance covered meanwhile. A new trip id from the
+ * bike closes the running trip.
+ *
+ * The bike's trip distance counts from when the trip started, which may be before the app
+ * was there, so distance is counted from the first sample seen. A trip that comes back after
+ * a lock or a reconnect with the same id carries on where it was; its summary is handed out
+ * again and replaces the earlier one.
+ */
+public class EnergyIntegrator {
+	protected static final long MAX_GAP_NANOS = 5_000_000_000L;
+	protected static final double NANOS_PER_HOUR = 3_600_000_000_000.0;
+	protected static final int MAX_CONFIGURATIONS = 16;
+
+	public abstract static class OnTripEndListener {
+		public abstract void onTripEnd(TripSummaryBean summary);
+	}
+
+	protected volatile OnTripEndListener onTripEndListener;
+
+	protected int speedCap = 0;
+	protected int fieldWeakening = -1;
+
+	// running trip, or the last one once it has ended
+	protected boolean inTrip = false;
+	protected boolean hasTrip = false;
+	protected int tripId = 0;
+	protected int tripDuration = 0;
+	protected int tripDistance = 0;
+	// bike's trip distance at the first sample, moved forward over every gap
+	protected int tripStartDistance = 0;
+	protected double tripEnergy = 0;
+	protected int tripGaps = 0;
+	protected int tripSpeedCap = 0;
+	protected int tripFieldWeakening = -1;
+
+	protected long lastTime = 0;
+	protected int lastPower = 0;
+	protected int lastDistance = 0;
+
+	// totals per speed cap / field weakening combination since the service started
+	protected final int[] configSpeedCap = new int[MAX_CONFIGURATIONS];
+	protected final int[] configFieldWeakening = new int[MAX_CONFIGURATIONS];
+	protected final double[] configEnergy = new double[MAX_CONFIGURATIONS];
+	protected final double[] configDistance = new double[MAX_CONFIGURATIONS];
+	protected int configCount = 0;
+	protected int currentConfig = -1;
+
+	public void setOnTripEndListener(OnTripEndListener listener) {
+		this.onTripEndListener = listener;
+	}
+
+	public synchronized void setSpeedCap(int speedCap) {
+		this.speedCap = speedCap;
+		currentConfig = -1;
+	}
+
+	public synchronized void setFieldWeakening(int fieldWeakening) {
+		this.fieldWeakening = fieldWeakening;
+		currentConfig = -1;
+	}
+
+	/**
+	 * @param time     monotonic receive timestamp in nanoseconds
+	 * @param tripId   trip id reported by the bike
+	 * @param duration trip duration in seconds
+	 * @param distance trip distance in meters
+	 * @param power    motor power in watts
+	 */
+	public void onSample(long time, int tripId, int duration, int distance, int power) {
+		TripSummaryBean ended = null;
+
+		synchronized (this) {
+			if (inTrip && tripId != this.tripId) ended = closeTrip();
+			sample(time, tripId, duration, distance, power);
+		}
+
+		// outside the lock, the listener stores it
+		publish(ended);
+	}
+
+	protected void sample(long time, int tripId, int duration, int distance, int power) {
+		if (!inTrip && hasTrip && tripId == this.tripId && distance >= lastDistance) {
+			// same trip as before the lock or the disconnect, nothing was measured in between
+			inTrip = true;
+			tripGaps++;
+			tripStartDistance += distance - lastDistance;
+		} else if (!inTrip) {
+			startTrip(tripId, distance);
+		} else {
+			long delta = time - lastTime;
+
+			if (delta > 0 && delta <= MAX_GAP_NANOS && distance >= lastDistance) {
+				double energy = (lastPower + power) * 0.5 * delta / NANOS_PER_HOUR;
+				int travelled = distance - lastDistance;
+
+				tripEnergy += energy;
+
+				if (currentConfig < 0) currentConfig = configIndex(speedCap, fieldWeakening);
+				configEnergy[currentConfig] += energy;
+				configDistance[currentConfig] += travelled;
+			} else {
+				tripGaps++;
+				if (distance >= lastDistance) tripStartDistance += distance - lastDistance;
+			}
+		}
+
+		tripDuration = duration;
+		tripDistance = distance;
+
+		lastTime = time;
+		lastPower = power;
+		lastDistance = distance;
+	}
+
+	/**
+	 * Closes the running trip, if any, and hands its summary to the listener.
+	 * Called when the bike locks or the connection goes away.
+	 */
+	public void endTrip() {
+		TripSummaryBean ended;
+
+		synchronized (this) {
+			ended = closeTrip();
+		}
+
+		publish(ended);
+	}
+
+	/** @return the summary to hand out, null if there's nothing worth keeping */
+	protected TripSummaryBean closeTrip() {
+		if (!inTrip) return null;
+		inTrip = false;
+
+		int distance = tripDistance - tripStartDistance;
+		if (distance <= 0 && tripEnergy <= 0) return null;
+
+		TripSummaryBean summary = new TripSummaryBean();
+		summary.setTripId(tripId);
+		summary.setEndedAt(System.currentTimeMillis());
+		summary.setDuration(tripDuration);
+		summary.setDistance(distance);
+		summary.setEnergy(tripEnergy);
+		summary.setSpeedCap(tripSpeedCap);
+		summary.setFieldWeakening(tripFieldWeakening);
+		summary.setGaps(tripGaps);
+
+		return summary;
+	}
+
+	protected void publish(TripSummaryBean summary) {
+		OnTripEndListener listener = onTripEndListener;
+		if (summary != null && listener != null) listener.onTripEnd(summary);
+	}
+
+	protected void startTrip(int tripId, int distance) {
+		inTrip = true;
+		hasTrip = true;
+
+		this.tripId = tripId;
+		tripStartDistance = distance;
+		tripEnergy = 0;
+		tripGaps = 0;
+		tripSpeedCap = speedCap;
+		tripFieldWeakening = fieldWeakening;
+	}
+
+	public synchronized double getTripEnergy() {
+		return tripEnergy;
+	}
+
+	/** @return Wh/km of the running trip, 0 until the bike has moved */
+	public synchronized double getTripWhPerKm() {
+		int distance = tripDistance - tripStartDistance;
+		return distance > 0 ? tripEnergy / (distance / 1000.0) : 0;
+	}
+
+	/** @return Wh/km for the given configuration, 0 if it hasn't been ridden yet */
+	public synchronized double getWhPerKm(int speedCap, int fieldWeakening) {
+		for (int i = 0; i < configCount; i++) {
+			if (configSpeedCap[i] == speedCap && configFieldWeakening[i] == fieldWeakening) {
+				return configDistance[i] > 0 ? configEnergy[i] / (configDistance[i] / 1000.0) : 0;
+			}
+		}
+
+		return 0;
+	}
+
+	protected int configIndex(int speedCap, int fieldWeakening) {
+		for (int i = 0; i < configCount; i++) {
+			if (configSpeedCap[i] == speedCap && configFieldWeakening[i] == fieldWeakening) return i;
+		}
+
+		if (configCount == MAX_CONFIGURATIONS) {
+			// out of slots, fold into the last one rather than allocate
+			return MAX_CONFIGURATIONS - 1;
+		}
+
+		configSpeedCap[configCount] = speedCap;
+		configFieldWeakening[configCount] = fieldWeakening;
+		configEnergy[configCount] = 0;
+		configDistance[configCount] = 0;
+
+		return configCount++;
+	}
+}
@@ -0,0 +1,184 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import bike.hackboy.bronco.utils.Converter;
+
+/**
+ * Live statistics over raw frames, meant for working out what the unknown dashboard
+ * fields and the unhandled settings replies mean.
+ *
+ * For every dashboard field it keeps min/max/last, how often it changed, a histogram
+ * and how often it changed together with every other field. Proto3 leaves out fields
+ * that are zero, so a missing field counts as zero.
+ *
+ * Histogram buckets: 0 = negative, 1..31 = values 0..30, 32.. = one bucket per power of two.
+ */
+public class FieldStats {
+	public static final int MAX_FIELDS = 16;
+	protected static final int BUCKETS = 48;
+	protected static final int MAX_SETTINGS_KEYS = 32;
+
+	protected final WireReader reader = new WireReader();
+
+	protected long frames = 0;
+	protected long malformed = 0;
+
+	protected final boolean[] seen = new boolean[MAX_FIELDS];
+	protected final boolean[] isFloat = new boolean[MAX_FIELDS];
+	protected final long[] last = new long[MAX_FIELDS];
+	protected final long[] current = new long[MAX_FIELDS];
+	protected final long[] min = new long[MAX_FIELDS];
+	protected final long[] max = new long[MAX_FIELDS];
+	protected final long[] changes = new long[MAX_FIELDS];
+	protected final long[][] histogram = new long[MAX_FIELDS][BUCKETS];
+	protected final long[][] coChanges = new long[MAX_FIELDS][MAX_FIELDS];
+	protected final boolean[] changed = new boolean[MAX_FIELDS];
+
+	// settings replies, keyed by unit and function code
+	protected final int[] settingsKeys = new int[MAX_SETTINGS_KEYS];
+	protected final long[] settingsCounts = new long[MAX_SETTINGS_KEYS];
+	protected final byte[][] settingsLast = new byte[MAX_SETTINGS_KEYS][];
+	protected int settingsKeyCount = 0;
+
+	public FieldStats() {
+		Arrays.fill(min, Long.MAX_VALUE);
+		Arrays.fill(max, Long.MIN_VALUE);
+	}
+
+	public synchronized void onDashboardFrame(byte[] value) {
+		Arrays.fill(current, 0);
+		reader.reset(value);
+
+		while (reader.next()) {
+			int field = reader.getField();
+			if (field >= MAX_FIELDS) continue;
+
+			if (reader.getWireType() == WireReader.WIRE_FIXED32) {
+				isFloat[field] = true;
+				current[field] = (long) Math.floor(reader.getFloatValue());
+			} else if (reader.getWireType() == WireReader.WIRE_VARINT) {
+				// int32 negatives are sign extended to 64 bits on the wire
+				current[field] = (int) reader.getValue();
+			}
+
+			seen[field] = true;
+		}
+
+		if (reader.isMalformed()) {
+			malformed++;
+			return;
+		}
+
+		for (int i = 1; i < MAX_FIELDS; i++) {
+			long v = current[i];
+
+			changed[i] = frames > 0 && v != last[i];
+			if (changed[i]) changes[i]++;
+
+			if (v < min[i]) min[i] = v;
+			if (v > max[i]) max[i] = v;
+			histogram[i][bucketOf(v)]++;
+
+			last[i] = v;
+		}
+
+		for (int i = 1; i < MAX_FIELDS; i++) {
+			if (!changed[i]) continue;
+
+			for (int j = 1; j < MAX_FIELDS; j++) {
+				if (changed[j]) coChanges[i][j]++;
+			}
+		}
+
+		frames++;
+	}
+
+	public synchronized void onSettingsFrame(byte[] value) {
+		if (value == null || value.length < 2) return;
+
+		int key = ((value[0] & 0xff) << 8) | (value[1] & 0xff);
+		int index = -1;
+
+		for (int i = 0; i < settingsKeyCount; i++) {
+			if (settingsKeys[i] == key) {
+				index = i;
+				break;
+			}
+		}
+
+		if (index < 0) {
+			if (settingsKeyCount == MAX_SETTINGS_KEYS) return;
+
+			index = settingsKeyCount++;
+			settingsKeys[index] = key;
+		}
+
+		settingsCounts[index]++;
+		settingsLast[index] = value;
+	}
+
+	protected static int bucketOf(long v) {
+		if (v < 0) return 0;
+		if (v < 32) return (int) v + 1;
+
+		int log2 = 63 - Long.numberOfLeadingZeros(v);
+		return Math.min(BUCKETS - 1, 32 + log2 - 4);
+	}
+
+	protected static String bucketLabel(int bucket) {
+		if (bucket == 0) return "<0";
+		if (bucket <= 32) return String.valueOf(bucket - 1);
+
+		// one per power of two from 32 on, the last one takes everything above
+		int log2 = bucket - 32 + 4;
+		if (bucket == BUCKETS - 1) return String.format("%d..", 1L << log2);
+
+		return String.format("%d..%d", 1L << log2, (1L << (log2 + 1)) - 1);
+	}
+
+	public synchronized void report(PrintWriter out) {
+		out.printf("dashboard frames: %d, malformed: %d%n%n", frames, malformed);
+
+		for (int i = 1; i < MAX_FIELDS; i++) {
+			if (!seen[i]) continue;
+
+			out.printf(
+				"field %d%s: min %d, max %d, last %d, changes %d (%.1f%%)%n",
+				i,
+				isFloat[i] ? " (float, floored)" : "",
+				min[i],
+				max[i],
+				last[i],
+				changes[i],
+				frames > 1 ? 100.0 * changes[i] / (frames - 1) : 0.0
+			);
+
+			out.print("  histogram:");
+			for (int b = 0; b < BUCKETS; b++) {
+				if (histogram[i][b] > 0) out.printf(" [%s]=%d", bucketLabel(b), histogram[i][b]);
+			}
+			out.println();
+
+			out.print("  changes with:");
+			for (int j = 1; j < MAX_FIELDS; j++) {
+				if (j == i || coChanges[i][j] == 0) continue;
+				// share of this field's changes that happened in the same frame as field j's
+				out.printf(" %d=%.0f%%", j, 100.0 * coChanges[i][j] / changes[i]);
+			}
+			out.println();
+		}
+
+		out.printf("%nsettings replies:%n");
+		for (int i = 0; i < settingsKeyCount; i++) {
+			out.printf(
+				"unit 0x%02X function 0x%02X: %d, last %s%n",
+				settingsKeys[i] >> 8,
+				settingsKeys[i] & 0xff,
+				settingsCounts[i],
+				Converter.byteArrayToHexString(settingsLast[i])
+			);
+		}
+	}
+}
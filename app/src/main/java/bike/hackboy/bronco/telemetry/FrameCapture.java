@@ -0,0 +1,91 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.UUID;
+
+import bike.hackboy.bronco.data.Uuid;
+
+/**
+ * Capture mode: every raw notification, read and write goes to a {@link FrameLog} file,
+ * and what the bike sent goes through {@link FieldStats}. Stopping writes the stats
+ * report next to the log.
+ */
+public class FrameCapture {
+	protected volatile FrameLogWriter writer = null;
+	protected FieldStats stats = null;
+	protected File logFile = null;
+
+	public boolean isRunning() {
+		return writer != null;
+	}
+
+	public synchronized File start(File directory, long monotonicNanos) throws IOException {
+		if (writer != null) return logFile;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can't create " + directory);
+		}
+
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+
+		logFile = new File(directory, "capture-" + name + ".bin");
+		stats = new FieldStats();
+		writer = new FrameLogWriter(logFile, System.currentTimeMillis(), monotonicNanos);
+
+		return logFile;
+	}
+
+	/** Cheap no-op unless a capture is running, as are the other two. */
+	public void onNotification(UUID characteristic, long timestampNanos, byte[] value) {
+		onFrame(FrameLog.TYPE_NOTIFY, characteristic, timestampNanos, value);
+	}
+
+	public void onRead(UUID characteristic, long timestampNanos, byte[] value) {
+		onFrame(FrameLog.TYPE_READ, characteristic, timestampNanos, value);
+	}
+
+	public void onWrite(UUID characteristic, long timestampNanos, byte[] value) {
+		FrameLogWriter w = writer;
+		if (w != null) w.append(FrameLog.TYPE_WRITE, characteristic, timestampNanos, value);
+	}
+
+	protected void onFrame(byte type, UUID characteristic, long timestampNanos, byte[] value) {
+		FrameLogWriter w = writer;
+		if (w == null) return;
+
+		w.append(type, characteristic, timestampNanos, value);
+
+		if (Uuid.characteristicDashboard.equals(characteristic)) {
+			stats.onDashboardFrame(value);
+		} else if (Uuid.characteristicSettingsRead.equals(characteristic)) {
+			stats.onSettingsFrame(value);
+		}
+	}
+
+	/** @return the finished log file, or null if nothing was running */
+	public synchronized File stop() throws IOException {
+		FrameLogWriter w = writer;
+		if (w == null) return null;
+
+		writer = null;
+		w.close();
+
+		String reportName = logFile.getName().replace(".bin", ".txt");
+		try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+			new FileOutputStream(new File(logFile.getParentFile(), reportName)), StandardCharsets.UTF_8))
+		) {
+			out.printf("records: %d, dropped: %d%n", w.getRecords(), w.getDropped());
+			stats.report(out);
+		}
+
+		return logFile;
+	}
+}
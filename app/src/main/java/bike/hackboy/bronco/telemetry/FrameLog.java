@@ -0,0 +1,57 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.util.UUID;
+
+import bike.hackboy.bronco.data.Uuid;
+
+/**
+ * Binary frame log layout, shared by the writer and anything reading captures back.
+ *
+ * Header:  magic (int), version (short), wall clock start millis (long), monotonic start nanos (long)
+ * Record:  type (byte), characteristic (byte), [uuid msb (long), uuid lsb (long) if characteristic is OTHER],
+ *          monotonic timestamp nanos (long), length (unsigned short), value bytes
+ *
+ * Everything is big endian. Types: notifications, read results and confirmed writes, each
+ * with the value as the stack reported it.
+ */
+public class FrameLog {
+	public static final int MAGIC = 0x4252464C; // "BRFL"
+	// 2: reads and confirmed writes are recorded too, version 1 files only have notifications
+	public static final short VERSION = 2;
+	public static final int HEADER_SIZE = 4 + 2 + 8 + 8;
+
+	public static final byte TYPE_NOTIFY = 1;
+	public static final byte TYPE_READ = 2;
+	public static final byte TYPE_WRITE = 3;
+
+	public static final byte CHARACTERISTIC_OTHER = (byte) 0xFF;
+	public static final byte CHARACTERISTIC_UNLOCK = 1;
+	public static final byte CHARACTERISTIC_DASHBOARD = 2;
+	public static final byte CHARACTERISTIC_SETTINGS_READ = 3;
+	public static final byte CHARACTERISTIC_SETTINGS_WRITE = 4;
+
+	public static final int MAX_VALUE_LENGTH = 0xFFFF;
+
+	public static byte characteristicCode(UUID characteristic) {
+		if (Uuid.characteristicDashboard.equals(characteristic)) return CHARACTERISTIC_DASHBOARD;
+		if (Uuid.characteristicSettingsRead.equals(characteristic)) return CHARACTERISTIC_SETTINGS_READ;
+		if (Uuid.characteristicSettingsWrite.equals(characteristic)) return CHARACTERISTIC_SETTINGS_WRITE;
+		if (Uuid.characteristicUnlock.equals(characteristic)) return CHARACTERISTIC_UNLOCK;
+
+		return CHARACTERISTIC_OTHER;
+	}
+
+	public static UUID characteristicUuid(byte code) {
+		switch (code) {
+			case CHARACTERISTIC_DASHBOARD: return Uuid.characteristicDashboard;
+			case CHARACTERISTIC_SETTINGS_READ: return Uuid.characteristicSettingsRead;
+			case CHARACTERISTIC_SETTINGS_WRITE: return Uuid.characteristicSettingsWrite;
+			case CHARACTERISTIC_UNLOCK: return Uuid.characteristicUnlock;
+			default: return null;
+		}
+	}
+
+	public static int recordSize(byte characteristicCode, int valueLength) {
+		return 1 + 1 + (characteristicCode == CHARACTERISTIC_OTHER ? 16 : 0) + 8 + 2 + valueLength;
+	}
+}
@@ -0,0 +1,98 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Reads a {@link FrameLog} file back one record at a time.
+ *
+ * A record cut short at the end of the file (app killed mid capture) just ends the log.
+ */
+public class FrameLogReader implements Closeable {
+	protected final DataInputStream in;
+	protected final long wallClockMillis;
+	protected final long startNanos;
+
+	protected byte type;
+	protected UUID characteristic;
+	protected long timestampNanos;
+	protected byte[] value;
+
+	public FrameLogReader(File file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+		try {
+			if (in.readInt() != FrameLog.MAGIC) throw new IOException(file.getName() + " is not a frame log");
+
+			short version = in.readShort();
+			if (version > FrameLog.VERSION) throw new IOException("unsupported frame log version " + version);
+
+			wallClockMillis = in.readLong();
+			startNanos = in.readLong();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/** @return false once there are no more records */
+	public boolean next() throws IOException {
+		int t = in.read();
+		if (t < 0) return false;
+
+		try {
+			byte code = in.readByte();
+
+			if (code == FrameLog.CHARACTERISTIC_OTHER) {
+				characteristic = new UUID(in.readLong(), in.readLong());
+			} else {
+				characteristic = FrameLog.characteristicUuid(code);
+			}
+
+			timestampNanos = in.readLong();
+			value = new byte[in.readUnsignedShort()];
+			in.readFully(value);
+		} catch (EOFException e) {
+			return false;
+		}
+
+		type = (byte) t;
+		return true;
+	}
+
+	public long getWallClockMillis() {
+		return wallClockMillis;
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	public byte getType() {
+		return type;
+	}
+
+	public UUID getCharacteristic() {
+		return characteristic;
+	}
+
+	public long getTimestampNanos() {
+		return timestampNanos;
+	}
+
+	/** A new array for every record, it's safe to hand on. */
+	public byte[] getValue() {
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
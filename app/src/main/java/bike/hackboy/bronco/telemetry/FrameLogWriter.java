@@ -0,0 +1,157 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * Appends records to a {@link FrameLog} file.
+ *
+ * Records go into one of two preallocated buffers; a full buffer is handed to a
+ * background thread for the actual disk write while the caller keeps filling the other,
+ * so appending costs a memcpy and never touches the disk on the caller's thread.
+ */
+public class FrameLogWriter {
+	protected static final int BUFFER_SIZE = 128 * 1024;
+
+	protected final FileChannel channel;
+	protected final Thread flusher;
+
+	protected ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	protected ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	protected ByteBuffer pending = null;
+
+	protected boolean closed = false;
+	protected IOException error = null;
+	protected long records = 0;
+	protected long dropped = 0;
+
+	public FrameLogWriter(File file, long wallClockMillis, long monotonicNanos) throws IOException {
+		channel = new FileOutputStream(file).getChannel();
+
+		active.putInt(FrameLog.MAGIC);
+		active.putShort(FrameLog.VERSION);
+		active.putLong(wallClockMillis);
+		active.putLong(monotonicNanos);
+
+		flusher = new Thread(this::flushLoop, "FrameLogWriter");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	public synchronized void append(byte type, UUID characteristic, long timestampNanos, byte[] value) {
+		if (closed) return;
+
+		byte code = FrameLog.characteristicCode(characteristic);
+		int length = Math.min(value == null ? 0 : value.length, FrameLog.MAX_VALUE_LENGTH);
+		int size = FrameLog.recordSize(code, length);
+
+		if (active.remaining() < size && !swap()) {
+			// disk can't keep up, losing a frame beats stalling the bluetooth thread
+			dropped++;
+			return;
+		}
+
+		active.put(type);
+		active.put(code);
+
+		if (code == FrameLog.CHARACTERISTIC_OTHER) {
+			active.putLong(characteristic.getMostSignificantBits());
+			active.putLong(characteristic.getLeastSignificantBits());
+		}
+
+		active.putLong(timestampNanos);
+		active.putShort((short) length);
+		if (length > 0) active.put(value, 0, length);
+
+		records++;
+	}
+
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/** Writes out whatever is buffered and closes the file. */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) return;
+
+			while (pending != null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			closed = true;
+			notifyAll();
+		}
+
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		active.flip();
+		while (active.hasRemaining()) channel.write(active);
+		channel.close();
+
+		if (error != null) throw error;
+	}
+
+	// must hold the lock
+	protected boolean swap() {
+		if (pending != null) return false;
+
+		active.flip();
+		pending = active;
+		active = spare;
+		spare = null;
+
+		notifyAll();
+		return true;
+	}
+
+	protected void flushLoop() {
+		while (true) {
+			ByteBuffer buffer;
+
+			synchronized (this) {
+				while (pending == null && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				if (pending == null) return;
+				buffer = pending;
+			}
+
+			try {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			} catch (IOException e) {
+				error = e;
+			}
+
+			buffer.clear();
+
+			synchronized (this) {
+				spare = buffer;
+				pending = null;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.PrintWriter;
+
+/**
+ * End to end latency of the two paths that matter: a dashboard notification until it's
+ * on screen, and a command until the bike has answered it.
+ *
+ * Every span is on {@link #now()}, never on a transport clock, so replays measure the phone.
+ */
+public class Latency {
+	public final LatencyHistogram frameDecoded = new LatencyHistogram("frame -> decoded");
+	public final LatencyHistogram frameDisplayed = new LatencyHistogram("frame -> on screen");
+
+	public final LatencyHistogram settingsWritten = new LatencyHistogram("setting -> written");
+	public final LatencyHistogram settingsAcked = new LatencyHistogram("setting -> reply");
+	public final LatencyHistogram lockWritten = new LatencyHistogram("lock -> written");
+	public final LatencyHistogram lockAcked = new LatencyHistogram("lock -> state");
+
+	protected final LatencyHistogram[] all = {
+		frameDecoded, frameDisplayed, settingsWritten, settingsAcked, lockWritten, lockAcked
+	};
+
+	public static long now() {
+		return System.nanoTime();
+	}
+
+	public void report(PrintWriter out) {
+		LatencyHistogram.reportHeader(out);
+		for (LatencyHistogram h : all) h.report(out);
+	}
+
+	public void reset() {
+		for (LatencyHistogram h : all) h.reset();
+	}
+}
@@ -0,0 +1,116 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size latency histogram in the spirit of HdrHistogram: values are kept in microseconds,
+ * in buckets that double in width every octave with 16 steps per octave, so any reading is
+ * within ~6% of what was recorded. Covers 1us to about 9 hours in ~4 KB, whatever is thrown at it.
+ *
+ * Recording is lock free and allocation free, safe from any thread.
+ */
+public class LatencyHistogram {
+	protected static final int SUB_BUCKET_BITS = 4;
+	protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	protected static final int MAX_EXPONENT = 35;
+	protected static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	protected final String name;
+	protected final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	protected final AtomicLong total = new AtomicLong();
+	protected final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+
+		counts.incrementAndGet(bucketOf(micros));
+		total.incrementAndGet();
+
+		long m;
+		while (micros > (m = max.get()) && !max.compareAndSet(m, micros)) { }
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	public long getMaxMicros() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return the highest value that falls in the same bucket as the percentile, in microseconds
+	 */
+	public long getPercentileMicros(double percentile) {
+		long count = total.get();
+		if (count == 0) return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) return Math.min(upperBoundOf(i), max.get());
+		}
+
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+		total.set(0);
+		max.set(0);
+	}
+
+	public void report(PrintWriter out) {
+		out.printf(
+			Locale.US,
+			"%-22s %7d %9s %9s %9s %9s%n",
+			name,
+			getCount(),
+			millis(getPercentileMicros(50)),
+			millis(getPercentileMicros(90)),
+			millis(getPercentileMicros(99)),
+			millis(getMaxMicros())
+		);
+	}
+
+	public static void reportHeader(PrintWriter out) {
+		out.printf(Locale.US, "%-22s %7s %9s %9s %9s %9s%n", "ms", "count", "p50", "p90", "p99", "max");
+	}
+
+	protected static String millis(long micros) {
+		return String.format(Locale.US, "%.1f", micros / 1000.0);
+	}
+
+	protected static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) return (int) micros;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+	}
+
+	protected static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+		return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+}
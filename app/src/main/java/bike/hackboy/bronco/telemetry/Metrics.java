@@ -0,0 +1,212 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * What BikeService did since the process started: GATT operations, frames, connections and
+ * wake lock time. Everything is a plain atomic so it's cheap enough to leave on, and it's
+ * all printed by {@code adb shell dumpsys activity service BikeService} and the debug screen.
+ */
+public class Metrics {
+	public abstract static class Metric {
+		protected final String name;
+
+		protected Metric(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public abstract void report(PrintWriter out, long nanos);
+		public abstract void reset();
+	}
+
+	public static class Counter extends Metric {
+		protected final AtomicLong value = new AtomicLong();
+
+		public Counter(String name) {
+			super(name);
+		}
+
+		public void increment() {
+			value.incrementAndGet();
+		}
+
+		/** @return the new value */
+		public long add(long delta) {
+			return value.addAndGet(delta);
+		}
+
+		public long get() {
+			return value.get();
+		}
+
+		@Override
+		public void report(PrintWriter out, long nanos) {
+			out.printf(Locale.US, "%-28s %d%n", name, value.get());
+		}
+
+		@Override
+		public void reset() {
+			value.set(0);
+		}
+	}
+
+	/** A level rather than a total, goes up and down. Survives {@link #reset()}. */
+	public static class Gauge extends Counter {
+		public Gauge(String name) {
+			super(name);
+		}
+
+		public void set(long v) {
+			value.set(v);
+		}
+
+		@Override
+		public void reset() { }
+	}
+
+	/** Events in the last whole second. */
+	public static class Rate extends Metric {
+		protected final AtomicLong second = new AtomicLong();
+		protected final AtomicLong current = new AtomicLong();
+		protected final AtomicLong last = new AtomicLong();
+
+		public Rate(String name) {
+			super(name);
+		}
+
+		public void mark(long nanos) {
+			long s = nanos / 1_000_000_000L;
+			long was = second.get();
+
+			// whoever moves the window on closes the old one, the rest just count
+			if (s != was && second.compareAndSet(was, s)) {
+				long count = current.getAndSet(0);
+				last.set(s == was + 1 ? count : 0);
+			}
+
+			current.incrementAndGet();
+		}
+
+		public long get(long nanos) {
+			long s = nanos / 1_000_000_000L;
+			long was = second.get();
+
+			if (s == was) return last.get();
+			if (s == was + 1) return current.get();
+			return 0;
+		}
+
+		@Override
+		public void report(PrintWriter out, long nanos) {
+			out.printf(Locale.US, "%-28s %d%n", name, get(nanos));
+		}
+
+		@Override
+		public void reset() { }
+	}
+
+	/** Counts of GATT operations by type and outcome. */
+	public static class GattOps extends Metric {
+		public static final int READ = 0;
+		public static final int WRITE = 1;
+		public static final int SUBSCRIBE = 2;
+		public static final int DISCOVER = 3;
+		public static final int NOTIFY = 4;
+		protected static final String[] TYPES = {"read", "write", "subscribe", "discover", "notify"};
+
+		public static final int QUEUED = 0;
+		public static final int REFUSED = 1;
+		public static final int SUCCEEDED = 2;
+		public static final int FAILED = 3;
+		protected static final String[] OUTCOMES = {"queued", "refused", "ok", "failed"};
+
+		protected final AtomicLongArray counts = new AtomicLongArray(TYPES.length * OUTCOMES.length);
+
+		public GattOps(String name) {
+			super(name);
+		}
+
+		public void count(int type, int outcome) {
+			counts.incrementAndGet(type * OUTCOMES.length + outcome);
+		}
+
+		public long get(int type, int outcome) {
+			return counts.get(type * OUTCOMES.length + outcome);
+		}
+
+		@Override
+		public void report(PrintWriter out, long nanos) {
+			for (int t = 0; t < TYPES.length; t++) {
+				out.printf(Locale.US, "%-28s", name + "." + TYPES[t]);
+
+				for (int o = 0; o < OUTCOMES.length; o++) {
+					out.printf(Locale.US, " %s=%d", OUTCOMES[o], get(t, o));
+				}
+
+				out.println();
+			}
+		}
+
+		@Override
+		public void reset() {
+			for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+		}
+	}
+
+	// --------------------------------------------------
+
+	protected final List<Metric> metrics = new ArrayList<>();
+	protected final List<LatencyHistogram> histograms = new ArrayList<>();
+
+	public final GattOps gatt = add(new GattOps("gatt"));
+	public final Counter retries = add(new Counter("gatt.retries"));
+	public final Gauge queueDepth = add(new Gauge("gatt.queue_depth"));
+	public final Counter commandsFailed = add(new Counter("commands.failed"));
+
+	public final Counter frames = add(new Counter("frames.received"));
+	public final Rate framesPerSecond = add(new Rate("frames.per_second"));
+	public final Counter framesInvalid = add(new Counter("frames.invalid"));
+	public final Counter framesIncomplete = add(new Counter("frames.incomplete"));
+	public final Counter framesSkipped = add(new Counter("frames.not_decoded"));
+
+	public final Counter connects = add(new Counter("connection.attempts"));
+	public final Counter reconnects = add(new Counter("connection.reconnects"));
+	public final Counter disconnects = add(new Counter("connection.lost"));
+
+	public final Counter wakeLocks = add(new Counter("wakelock.acquired"));
+	public final Counter wakeLockMillis = add(new Counter("wakelock.held_ms"));
+	public final LatencyHistogram wakeLockHeld = add(new LatencyHistogram("wakelock held"));
+
+	protected <T extends Metric> T add(T metric) {
+		metrics.add(metric);
+		return metric;
+	}
+
+	protected LatencyHistogram add(LatencyHistogram histogram) {
+		histograms.add(histogram);
+		return histogram;
+	}
+
+	public void report(PrintWriter out) {
+		long nanos = Latency.now();
+		for (Metric m : metrics) m.report(out, nanos);
+
+		out.println();
+		LatencyHistogram.reportHeader(out);
+		for (LatencyHistogram h : histograms) h.report(out);
+	}
+
+	public void reset() {
+		for (Metric m : metrics) m.reset();
+		for (LatencyHistogram h : histograms) h.reset();
+	}
+}
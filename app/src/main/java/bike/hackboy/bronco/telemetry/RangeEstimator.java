@@ -0,0 +1,210 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * Estimates remaining range from the live dashboard stream.
+ *
+ * Battery percentage is reported in whole steps, so instead of regressing every frame
+ * the distance and energy used since the last step are accumulated and each battery
+ * step becomes one observation:
+ *
+ *   deltaBattery = a * deltaKm + b * deltaWh
+ *
+ * The coefficients are fitted with recursive least squares (O(1) per observation, no
+ * allocation) separately for every assistance mode / speed cap combination, plus one
+ * model over everything which is used until a bucket has seen enough battery steps.
+ */
+public class RangeEstimator {
+	protected static final int MAX_BUCKETS = 16;
+	protected static final int MIN_OBSERVATIONS = 3;
+
+	// about the last 50 battery steps carry weight
+	protected static final double FORGETTING_FACTOR = 0.98;
+	protected static final double INITIAL_COVARIANCE = 1000;
+
+	// frames further apart than this are not integrated (reconnect, dropped stream)
+	protected static final long MAX_GAP_NANOS = 10_000_000_000L;
+
+	protected static class Bucket {
+		int key;
+
+		double a = 0;
+		double b = 0;
+		double p00 = INITIAL_COVARIANCE;
+		double p01 = 0;
+		double p11 = INITIAL_COVARIANCE;
+		int observations = 0;
+
+		double totalKm = 0;
+		double totalWh = 0;
+
+		void update(double km, double wh, double deltaBattery) {
+			totalKm += km;
+			totalWh += wh;
+
+			// P * x
+			double px0 = p00 * km + p01 * wh;
+			double px1 = p01 * km + p11 * wh;
+
+			double denominator = FORGETTING_FACTOR + km * px0 + wh * px1;
+			double k0 = px0 / denominator;
+			double k1 = px1 / denominator;
+
+			double error = deltaBattery - (a * km + b * wh);
+			a += k0 * error;
+			b += k1 * error;
+
+			// P = (P - k * x' * P) / lambda, P stays symmetric
+			p00 = (p00 - k0 * px0) / FORGETTING_FACTOR;
+			p01 = (p01 - k0 * px1) / FORGETTING_FACTOR;
+			p11 = (p11 - k1 * px1) / FORGETTING_FACTOR;
+
+			observations++;
+		}
+
+		/** @return battery percent used per km, or a non-positive number when unknown */
+		double consumptionPerKm() {
+			if (observations < MIN_OBSERVATIONS || totalKm <= 0) return -1;
+			return -(a + b * (totalWh / totalKm));
+		}
+	}
+
+	protected final Bucket overall = new Bucket();
+	protected final Bucket[] buckets = new Bucket[MAX_BUCKETS];
+	protected int bucketCount = 0;
+
+	protected int speedCap = 0;
+	protected int assistance = -1;
+	protected int battery = -1;
+
+	protected long lastTime = 0;
+	protected int lastDistance = -1;
+	protected int lastPower = 0;
+
+	// usage since the last battery step
+	protected double pendingKm = 0;
+	protected double pendingWh = 0;
+
+	public synchronized void setSpeedCap(int speedCap) {
+		if (this.speedCap == speedCap) return;
+
+		// usage so far belongs to the old configuration
+		this.speedCap = speedCap;
+		pendingKm = 0;
+		pendingWh = 0;
+	}
+
+	public synchronized int getSpeedCap() {
+		return speedCap;
+	}
+
+	/**
+	 * @param time       monotonic timestamp of the frame in nanoseconds
+	 * @param distance   trip distance in meters
+	 * @param power      motor power as reported by the bike
+	 * @param battery    battery percentage
+	 * @param assistance raw assistance mode
+	 */
+	public synchronized void onSample(long time, int distance, int power, int battery, int assistance) {
+		if (battery < 1) return;
+
+		boolean continuous = lastDistance >= 0
+			&& distance >= lastDistance
+			&& time - lastTime < MAX_GAP_NANOS
+			&& battery <= this.battery
+			&& assistance == this.assistance;
+
+		if (continuous) {
+			double hours = (time - lastTime) / 3_600_000_000_000.0;
+
+			pendingKm += (distance - lastDistance) / 1000.0;
+			pendingWh += (lastPower + power) * 0.5 * hours;
+
+			if (battery < this.battery) {
+				double deltaBattery = battery - this.battery;
+
+				overall.update(pendingKm, pendingWh, deltaBattery);
+				bucketFor(assistance, speedCap).update(pendingKm, pendingWh, deltaBattery);
+
+				pendingKm = 0;
+				pendingWh = 0;
+			}
+		} else {
+			// new trip, charging, mode switch or a gap: start counting from here
+			pendingKm = 0;
+			pendingWh = 0;
+		}
+
+		this.battery = battery;
+		this.assistance = assistance;
+		lastTime = time;
+		lastDistance = distance;
+		lastPower = power;
+	}
+
+	/** @return estimated km left in the current mode, or -1 when there's not enough data yet */
+	public synchronized float getRange() {
+		return getRange(assistance, speedCap);
+	}
+
+	public synchronized float getRange(int assistance, int speedCap) {
+		if (battery < 1) return -1;
+
+		Bucket bucket = findBucket(assistance, speedCap);
+		double consumption = bucket != null ? bucket.consumptionPerKm() : -1;
+		if (consumption <= 0) consumption = overall.consumptionPerKm();
+		if (consumption <= 0) return -1;
+
+		return (float) (battery / consumption);
+	}
+
+	public synchronized void reset() {
+		for (int i = 0; i < bucketCount; i++) buckets[i] = null;
+		bucketCount = 0;
+
+		overall.a = 0;
+		overall.b = 0;
+		overall.p00 = INITIAL_COVARIANCE;
+		overall.p01 = 0;
+		overall.p11 = INITIAL_COVARIANCE;
+		overall.observations = 0;
+		overall.totalKm = 0;
+		overall.totalWh = 0;
+
+		battery = -1;
+		assistance = -1;
+		lastDistance = -1;
+		pendingKm = 0;
+		pendingWh = 0;
+	}
+
+	protected static int keyOf(int assistance, int speedCap) {
+		return (assistance << 16) | (speedCap & 0xffff);
+	}
+
+	protected Bucket findBucket(int assistance, int speedCap) {
+		int key = keyOf(assistance, speedCap);
+
+		for (int i = 0; i < bucketCount; i++) {
+			if (buckets[i].key == key) return buckets[i];
+		}
+
+		return null;
+	}
+
+	protected Bucket bucketFor(int assistance, int speedCap) {
+		Bucket bucket = findBucket(assistance, speedCap);
+		if (bucket != null) return bucket;
+
+		if (bucketCount == MAX_BUCKETS) {
+			// no sane setup gets here, recycle the oldest
+			System.arraycopy(buckets, 1, buckets, 0, MAX_BUCKETS - 1);
+			bucketCount--;
+		}
+
+		bucket = new Bucket();
+		bucket.key = keyOf(assistance, speedCap);
+		buckets[bucketCount++] = bucket;
+
+		return bucket;
+	}
+}
@@ -0,0 +1,215 @@
+package bike.hackboy.bronco.telemetry;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import bike.hackboy.bronco.bean.TripSummaryBean;
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.hal.transport.ReplayTransport;
+
+/**
+ * A capture played back through a pipeline of its own, next to whatever bike is connected.
+ *
+ * Range and energy are worked out by instances that belong to the replay, so nothing recorded
+ * ends up in {@link Telemetry}, the chart or the trip store. Frames are stamped with the
+ * recorded clock, two runs of the same file give the same numbers whatever the speed.
+ */
+public class Replay {
+	public abstract static class OnFinishedListener {
+		/** Called once the recording ran out, on the replay thread, or from {@link #stop()}. */
+		public void onFinished(Replay replay) { }
+	}
+
+	protected final File file;
+	protected final ReplayTransport transport;
+	protected final DashboardPipeline pipeline = new DashboardPipeline();
+	protected final RangeEstimator range = new RangeEstimator();
+	protected final EnergyIntegrator energy = new EnergyIntegrator();
+	protected final List<TripSummaryBean> trips = new ArrayList<>();
+
+	protected OnFinishedListener listener = null;
+	protected volatile boolean running = false;
+	protected long startNanos = 0;
+	protected long elapsedNanos = 0;
+
+	// only touched from the replay thread until it's finished
+	protected long frames = 0;
+	protected long framesInvalid = 0;
+	protected long notifications = 0;
+	protected long reads = 0;
+	protected long writes = 0;
+
+	public Replay(File file, double speed) {
+		this.file = file;
+		this.transport = new ReplayTransport(file, speed);
+
+		energy.setOnTripEndListener(new EnergyIntegrator.OnTripEndListener() {
+			@Override
+			public void onTripEnd(TripSummaryBean summary) {
+				synchronized (trips) {
+					trips.add(summary);
+				}
+			}
+		});
+
+		pipeline.add(analyticsConsumer);
+		pipeline.setActive(analyticsConsumer, true);
+	}
+
+	public void setOnFinishedListener(OnFinishedListener listener) {
+		this.listener = listener;
+	}
+
+	public synchronized void start() {
+		if (running) return;
+
+		running = true;
+		startNanos = System.nanoTime();
+		transport.connect(callback);
+	}
+
+	public void stop() {
+		transport.close();
+		finish();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/** Extra consumers see the replayed frames too, e.g. a screen showing them. */
+	public DashboardPipeline getPipeline() {
+		return pipeline;
+	}
+
+	public RangeEstimator getRange() {
+		return range;
+	}
+
+	public EnergyIntegrator getEnergy() {
+		return energy;
+	}
+
+	public List<TripSummaryBean> getTrips() {
+		synchronized (trips) {
+			return new ArrayList<>(trips);
+		}
+	}
+
+	/** Wh of every trip that ended so far, across the whole recording. */
+	public double getTotalEnergy() {
+		double total = 0;
+
+		synchronized (trips) {
+			for (TripSummaryBean trip : trips) total += trip.getEnergy();
+		}
+
+		return total;
+	}
+
+	public long getRecords() {
+		return transport.getRecords();
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getFramesInvalid() {
+		return framesInvalid;
+	}
+
+	public long getNotifications() {
+		return notifications;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	/** Wall clock time the replay took, or has taken so far. */
+	public synchronized long getElapsedNanos() {
+		return running ? System.nanoTime() - startNanos : elapsedNanos;
+	}
+
+	protected void finish() {
+		synchronized (this) {
+			if (!running) return;
+
+			running = false;
+			elapsedNanos = System.nanoTime() - startNanos;
+		}
+
+		// the last trip of the recording never saw a lock
+		energy.endTrip();
+
+		if (listener != null) listener.onFinished(this);
+	}
+
+	// --------------------------------------------------
+
+	protected final DashboardPipeline.Consumer analyticsConsumer = new DashboardPipeline.Consumer(
+		"replay analytics",
+		DashboardFrame.TRIP_ID | DashboardFrame.DURATION | DashboardFrame.POWER
+			| DashboardFrame.DISTANCE | DashboardFrame.BATTERY | DashboardFrame.ASSISTANCE,
+		0
+	) {
+		@Override
+		public boolean onFrame(DashboardFrame frame) {
+			range.onSample(frame.getTimestamp(), frame.getDistance(), frame.getPower(), frame.getBattery(), frame.getAssistance());
+
+			// same as the service, the first frame after unlocking has no battery level
+			if (frame.getBattery() > 0) {
+				energy.onSample(frame.getTimestamp(), frame.getTripId(), frame.getDuration(), frame.getDistance(), frame.getPower());
+			}
+
+			return true;
+		}
+	};
+
+	protected final BikeTransport.Callback callback = new BikeTransport.Callback() {
+		@Override
+		public void onConnectionStateChange(int newState) {
+			switch (newState) {
+				case BikeTransport.STATE_CONNECTED:
+					transport.discoverServices();
+				break;
+				case BikeTransport.STATE_DISCONNECTED:
+					finish();
+				break;
+			}
+		}
+
+		@Override
+		public void onCharacteristicRead(UUID characteristic, byte[] value, boolean success) {
+			reads++;
+		}
+
+		@Override
+		public void onCharacteristicWrite(UUID characteristic, byte[] value, boolean success) {
+			writes++;
+		}
+
+		@Override
+		public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+			notifications++;
+			if (!Uuid.characteristicDashboard.equals(characteristic)) return;
+
+			frames++;
+
+			long timestamp = transport.nanoTime();
+			if (!pipeline.onFrame(value, timestamp, timestamp)) framesInvalid++;
+		}
+	};
+}
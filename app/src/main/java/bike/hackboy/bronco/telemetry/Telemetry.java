@@ -0,0 +1,14 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * Process wide telemetry state. Fed by BikeService, read by the UI.
+ */
+public class Telemetry {
+	public static final RangeEstimator range = new RangeEstimator();
+	public static final EnergyIntegrator energy = new EnergyIntegrator();
+	public static final FrameCapture capture = new FrameCapture();
+	public static final Latency latency = new Latency();
+	public static final Metrics metrics = new Metrics();
+	// the active bike's chart history, kept whatever screen is showing
+	public static final TelemetryBuffer history = new TelemetryBuffer(1024);
+}
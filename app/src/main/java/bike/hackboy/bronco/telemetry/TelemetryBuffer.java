@@ -0,0 +1,72 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * Fixed size ring buffer of dashboard samples, stored as primitive arrays so
+ * pushing a sample or drawing the history never allocates.
+ */
+public class TelemetryBuffer {
+	protected final long[] time;
+	protected final float[] speed;
+	protected final float[] power;
+	protected final float[] battery;
+	protected final int capacity;
+
+	protected int head = 0;
+	protected int size = 0;
+
+	public TelemetryBuffer(int capacity) {
+		this.capacity = capacity;
+
+		time = new long[capacity];
+		speed = new float[capacity];
+		power = new float[capacity];
+		battery = new float[capacity];
+	}
+
+	public synchronized void push(long timeMillis, float speedValue, float powerValue, float batteryValue) {
+		time[head] = timeMillis;
+		speed[head] = speedValue;
+		power[head] = powerValue;
+		battery[head] = batteryValue;
+
+		head = (head + 1) % capacity;
+		if (size < capacity) size++;
+	}
+
+	public synchronized void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Copies samples not older than {@code since} into the given arrays, oldest first.
+	 * Arrays must hold at least {@link #getCapacity()} entries.
+	 *
+	 * @return number of samples copied
+	 */
+	public synchronized int copySince(long since, long[] outTime, float[] outSpeed, float[] outPower, float[] outBattery) {
+		int start = (head - size + capacity) % capacity;
+		int count = 0;
+
+		for (int i = 0; i < size; i++) {
+			int index = (start + i) % capacity;
+			if (time[index] < since) continue;
+
+			outTime[count] = time[index];
+			outSpeed[count] = speed[index];
+			outPower[count] = power[index];
+			outBattery[count] = battery[index];
+			count++;
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,133 @@
+package bike.hackboy.bronco.telemetry;
+
+/**
+ * Allocation free cursor over a protobuf encoded message. Only understands the wire
+ * format, so it works for fields the .proto doesn't describe (yet).
+ */
+public class WireReader {
+	public static final int WIRE_VARINT = 0;
+	public static final int WIRE_FIXED64 = 1;
+	public static final int WIRE_LENGTH_DELIMITED = 2;
+	public static final int WIRE_FIXED32 = 5;
+
+	protected byte[] data;
+	protected int position;
+	protected int limit;
+
+	protected int field;
+	protected int wireType;
+	protected long value;
+	protected boolean malformed;
+
+	public WireReader reset(byte[] data) {
+		this.data = data;
+		this.position = 0;
+		this.limit = data == null ? 0 : data.length;
+		this.malformed = false;
+
+		return this;
+	}
+
+	/**
+	 * Moves to the next field.
+	 *
+	 * @return false at the end of the message or when it turns out to be malformed
+	 */
+	public boolean next() {
+		if (position >= limit || malformed) return false;
+
+		long tag = readVarint();
+		if (malformed) return false;
+
+		field = (int) (tag >>> 3);
+		wireType = (int) (tag & 0x7);
+
+		// there's no field 0, a tag of 0 is garbage and not the end of the message
+		if (field <= 0) {
+			malformed = true;
+			return false;
+		}
+
+		switch (wireType) {
+			case WIRE_VARINT:
+				value = readVarint();
+			break;
+			case WIRE_FIXED64:
+				value = readFixed(8);
+			break;
+			case WIRE_FIXED32:
+				value = readFixed(4);
+			break;
+			case WIRE_LENGTH_DELIMITED:
+				// value is the length, payload is skipped
+				value = readVarint();
+				if (value < 0 || position + value > limit) {
+					malformed = true;
+				} else {
+					position += (int) value;
+				}
+			break;
+			default:
+				malformed = true;
+		}
+
+		return !malformed;
+	}
+
+	public int getField() {
+		return field;
+	}
+
+	public int getWireType() {
+		return wireType;
+	}
+
+	/** @return the raw varint or fixed value */
+	public long getValue() {
+		return value;
+	}
+
+	public int getIntValue() {
+		return (int) value;
+	}
+
+	public float getFloatValue() {
+		return Float.intBitsToFloat((int) value);
+	}
+
+	public boolean isMalformed() {
+		return malformed;
+	}
+
+	protected long readVarint() {
+		long result = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position >= limit) {
+				malformed = true;
+				return 0;
+			}
+
+			byte b = data[position++];
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return result;
+		}
+
+		malformed = true;
+		return 0;
+	}
+
+	protected long readFixed(int bytes) {
+		if (position + bytes > limit) {
+			malformed = true;
+			return 0;
+		}
+
+		long result = 0;
+		for (int i = 0; i < bytes; i++) {
+			result |= (long) (data[position++] & 0xFF) << (8 * i);
+		}
+
+		return result;
+	}
+}
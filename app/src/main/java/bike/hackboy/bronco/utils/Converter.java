@@ -63,6 +63,11 @@ public class Converter {
 		return builder.toString();
 	}
 
+	// a MAC is 48 bits, it fits. Good as a stable id for list items
+	public static long macToLong(String mac) {
+		return Long.parseLong(mac.replace(":", ""), 16);
+	}
+
 	public static String formatDecimal(float number) {
 		DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);
 		DecimalFormat decimalFormat = new DecimalFormat("#.00", symbols);
@@ -0,0 +1,127 @@
+package bike.hackboy.bronco.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * ISO-8601 timestamps as the cloud API sends them ("2021-03-14T15:09:26.535Z"), parsed by
+ * hand: no SimpleDateFormat, no Calendar, safe to call from any thread.
+ *
+ * Accepts an optional fraction of any length and Z, +hh, +hhmm or +hh:mm offsets.
+ */
+public class DateParser {
+	// SimpleDateFormat isn't thread-safe, so one per thread instead of one per call
+	private static final ThreadLocal<SimpleDateFormat> displayFormat = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+		}
+	};
+
+	public static Date parseIso8601(String value) throws ParseException {
+		return new Date(parseIso8601Millis(value));
+	}
+
+	public static long parseIso8601Millis(String value) throws ParseException {
+		if (value == null || value.length() < 19) throw new ParseException("not a timestamp: " + value, 0);
+
+		int year = digits(value, 0, 4);
+		expect(value, 4, '-');
+		int month = digits(value, 5, 2);
+		expect(value, 7, '-');
+		int day = digits(value, 8, 2);
+		expect(value, 10, 'T');
+		int hour = digits(value, 11, 2);
+		expect(value, 13, ':');
+		int minute = digits(value, 14, 2);
+		expect(value, 16, ':');
+		int second = digits(value, 17, 2);
+
+		if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+			throw new ParseException("out of range: " + value, 0);
+		}
+
+		int pos = 19;
+		int millis = 0;
+
+		if (pos < value.length() && value.charAt(pos) == '.') {
+			pos++;
+			int start = pos;
+
+			while (pos < value.length() && Character.isDigit(value.charAt(pos))) {
+				// anything past milliseconds is dropped
+				if (pos - start < 3) millis = millis * 10 + (value.charAt(pos) - '0');
+				pos++;
+			}
+
+			if (pos == start) throw new ParseException("empty fraction: " + value, pos);
+			for (int i = pos - start; i < 3; i++) millis *= 10;
+		}
+
+		if (pos >= value.length()) throw new ParseException("missing offset: " + value, pos);
+
+		int offsetMinutes = 0;
+		char sign = value.charAt(pos);
+
+		if (sign == 'Z' || sign == 'z') {
+			pos++;
+		} else if (sign == '+' || sign == '-') {
+			pos++;
+			int offsetHours = digits(value, pos, 2);
+			pos += 2;
+
+			if (pos < value.length() && value.charAt(pos) == ':') pos++;
+			if (pos < value.length()) {
+				offsetMinutes = digits(value, pos, 2);
+				pos += 2;
+			}
+
+			offsetMinutes += offsetHours * 60;
+			if (sign == '-') offsetMinutes = -offsetMinutes;
+		} else {
+			throw new ParseException("bad offset: " + value, pos);
+		}
+
+		if (pos != value.length()) throw new ParseException("trailing characters: " + value, pos);
+
+		long days = daysFromCivil(year, month, day);
+		long seconds = days * 86400L + hour * 3600L + minute * 60L + second - offsetMinutes * 60L;
+
+		return seconds * 1000L + millis;
+	}
+
+	/** "yyyy-MM-dd HH:mm" in the device's time zone, like the details screen shows it. */
+	public static String formatDisplay(Date date) {
+		return displayFormat.get().format(date);
+	}
+
+	// days since 1970-01-01 in the proleptic gregorian calendar (Howard Hinnant's algorithm)
+	protected static long daysFromCivil(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	protected static int digits(String value, int start, int count) throws ParseException {
+		if (start + count > value.length()) throw new ParseException("truncated: " + value, start);
+
+		int result = 0;
+		for (int i = start; i < start + count; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') throw new ParseException("expected a digit: " + value, i);
+			result = result * 10 + (c - '0');
+		}
+
+		return result;
+	}
+
+	protected static void expect(String value, int index, char c) throws ParseException {
+		if (value.charAt(index) != c) throw new ParseException("expected '" + c + "': " + value, index);
+	}
+}
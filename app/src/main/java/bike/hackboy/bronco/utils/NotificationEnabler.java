@@ -1,10 +1,5 @@
 package bike.hackboy.bronco.utils;
 
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
-
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
@@ -12,11 +7,12 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.Telemetry;
 
 public class NotificationEnabler {
 	protected final List<notificationRequestBean> list = new ArrayList<>();
-	protected BluetoothGatt adapter = null;
+	protected BikeTransport adapter = null;
 
 	private static final int THROTTLE_MILIS = 200;
 	private long lastCommandTime = 0;
@@ -51,7 +47,7 @@ public class NotificationEnabler {
 		}
 	}
 
-	public void setConnection(BluetoothGatt adapter) {
+	public void setConnection(BikeTransport adapter) {
 		this.adapter = adapter;
 	}
 
@@ -67,6 +63,8 @@ public class NotificationEnabler {
 		if(adapter == null) throw new Exception("adapter not set");
 		if(list.isEmpty()) throw new Exception("nothing to run");
 
+		Tracer.counter("gatt queue", Telemetry.metrics.queueDepth.add(list.size()));
+
 		Thread thread = new Thread(() -> {
 			do {
 				if(lastCommandTime + THROTTLE_MILIS > System.currentTimeMillis()) {
@@ -79,6 +77,9 @@ public class NotificationEnabler {
 
 				if (enableNotifications(item.getService(), item.getCharacteristic())) {
 					list.remove(0);
+					Tracer.counter("gatt queue", Telemetry.metrics.queueDepth.add(-1));
+				} else {
+					Telemetry.metrics.retries.increment();
 				}
 			} while (!list.isEmpty());
 
@@ -93,18 +94,9 @@ public class NotificationEnabler {
 	}
 
 	protected boolean enableNotifications(UUID serviceUuid, UUID characteristicUuid) {
-		BluetoothGattService service = adapter.getService(serviceUuid);
-		BluetoothGattCharacteristic characteristic = service.getCharacteristic(characteristicUuid);
-
-		//Log.d("notification_enabler", service.getUuid().toString());
-		//Log.d("notification_enabler", characteristic.getUuid().toString());
-
-		adapter.setCharacteristicNotification(characteristic, true);
-		BluetoothGattDescriptor descriptor = characteristic.getDescriptor(Uuid.notificationDescriptor);
-
-		descriptor.setValue(BluetoothGattDescriptor.ENABLE_INDICATION_VALUE);
-		descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+		//Log.d("notification_enabler", serviceUuid.toString());
+		//Log.d("notification_enabler", characteristicUuid.toString());
 
-		return adapter.writeDescriptor(descriptor);
+		return adapter.setNotification(serviceUuid, characteristicUuid, true);
 	}
 }
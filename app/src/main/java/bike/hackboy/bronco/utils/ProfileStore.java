@@ -0,0 +1,95 @@
+package bike.hackboy.bronco.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bike.hackboy.bronco.bean.ConfigProfileBean;
+
+/** Named ride profiles, kept by name. Starts out with a commute and an off-road one. */
+public class ProfileStore {
+	protected static final String PREFERENCES = "profiles";
+	protected static final String KEY = "profiles";
+
+	public static List<ConfigProfileBean> load(Context context) {
+		SharedPreferences sharedPref = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+		String stored = sharedPref.getString(KEY, null);
+		if (stored == null) return defaults();
+
+		List<ConfigProfileBean> list = new ArrayList<>();
+
+		try {
+			JSONArray profiles = new JSONArray(stored);
+
+			for (int i = 0; i < profiles.length(); i++) {
+				list.add(ConfigProfileBean.fromJSON(profiles.getJSONObject(i)));
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+
+		return list;
+	}
+
+	public static ConfigProfileBean find(Context context, String name) {
+		for (ConfigProfileBean profile : load(context)) {
+			if (profile.getName().equals(name)) return profile;
+		}
+
+		return null;
+	}
+
+	/** Replaces the profile with the same name, if there's one. */
+	public static void save(Context context, ConfigProfileBean profile) {
+		List<ConfigProfileBean> profiles = load(context);
+
+		for (int i = 0; i < profiles.size(); i++) {
+			if (!profiles.get(i).getName().equals(profile.getName())) continue;
+
+			profiles.set(i, profile);
+			store(context, profiles);
+			return;
+		}
+
+		profiles.add(profile);
+		store(context, profiles);
+	}
+
+	protected static void store(Context context, List<ConfigProfileBean> profiles) {
+		SharedPreferences sharedPref = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+
+		try {
+			JSONArray json = new JSONArray();
+			for (ConfigProfileBean profile : profiles) json.put(profile.toJSON());
+
+			sharedPref.edit().putString(KEY, json.toString()).apply();
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	protected static List<ConfigProfileBean> defaults() {
+		List<ConfigProfileBean> list = new ArrayList<>();
+
+		ConfigProfileBean commute = new ConfigProfileBean();
+		commute.setName("Commute");
+		commute.setSpeed(25);
+		commute.setMotorMode(ConfigProfileBean.MOTOR_MODE_TORQUE_WITH_LIMIT);
+		commute.setFieldWeakening(0);
+		list.add(commute);
+
+		ConfigProfileBean offRoad = new ConfigProfileBean();
+		offRoad.setName("Off-road");
+		offRoad.setSpeed(32);
+		offRoad.setMotorMode(ConfigProfileBean.MOTOR_MODE_TORQUE_WITH_LIMIT);
+		offRoad.setFieldWeakening(ConfigProfileBean.percentToAsi(20));
+		list.add(offRoad);
+
+		return list;
+	}
+}
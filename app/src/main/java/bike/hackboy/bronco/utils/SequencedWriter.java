@@ -1,9 +1,5 @@
 package bike.hackboy.bronco.utils;
 
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
-
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
@@ -12,10 +8,12 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.Telemetry;
 
 public class SequencedWriter {
 	protected final List<WriteRequestBean> list = new ArrayList<>();
-	protected BluetoothGatt adapter = null;
+	protected BikeTransport adapter = null;
 
 	private static final int THROTTLE_MILIS = 1000;
 	private long lastCommandTime = 0;
@@ -24,6 +22,7 @@ public class SequencedWriter {
 		private UUID service;
 		private UUID characteristic;
 		private byte[] data;
+		private transient int trace;
 
 		public byte[] getData() {
 			return data;
@@ -33,6 +32,14 @@ public class SequencedWriter {
 			this.data = data;
 		}
 
+		public int getTrace() {
+			return trace;
+		}
+
+		public void setTrace(int trace) {
+			this.trace = trace;
+		}
+
 		public UUID getService() {
 			return service;
 		}
@@ -61,7 +68,7 @@ public class SequencedWriter {
 		}
 	}
 
-	public void setConnection(BluetoothGatt adapter) {
+	public void setConnection(BikeTransport adapter) {
 		this.adapter = adapter;
 	}
 
@@ -70,6 +77,7 @@ public class SequencedWriter {
 		request.setCharacteristic(characteristic);
 		request.setService(service);
 		request.setData(data);
+		request.setTrace(Tracer.beginAsync("queue wait"));
 
 		this.list.add(request);
 	}
@@ -78,6 +86,8 @@ public class SequencedWriter {
 		if(adapter == null) throw new Exception("adapter not set");
 		if(list.isEmpty()) throw new Exception("nothing to run");
 
+		Tracer.counter("gatt queue", Telemetry.metrics.queueDepth.add(list.size()));
+
 		Thread thread = new Thread(() -> {
 			do {
 				if(lastCommandTime + THROTTLE_MILIS > System.currentTimeMillis()) {
@@ -89,7 +99,14 @@ public class SequencedWriter {
 				//Log.d("writer_loop", item.toString());
 
 				boolean success = write(item.getService(), item.getCharacteristic(), item.getData());
-				if (success) list.remove(0);
+
+				if (success) {
+					list.remove(0);
+					Tracer.endAsync("queue wait", item.getTrace());
+					Tracer.counter("gatt queue", Telemetry.metrics.queueDepth.add(-1));
+				} else {
+					Telemetry.metrics.retries.increment();
+				}
 			} while (!list.isEmpty());
 
 			end();
@@ -103,10 +120,6 @@ public class SequencedWriter {
 	}
 
 	protected boolean write(UUID serviceUuid, UUID characteristicUuid, byte[] data) {
-		BluetoothGattService service = adapter.getService(serviceUuid);
-		BluetoothGattCharacteristic characteristic = service.getCharacteristic(characteristicUuid);
-		characteristic.setValue(data);
-
-		return adapter.writeCharacteristic(characteristic);
+		return adapter.writeCharacteristic(serviceUuid, characteristicUuid, data);
 	}
 }
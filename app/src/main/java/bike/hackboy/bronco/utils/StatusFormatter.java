@@ -0,0 +1,56 @@
+package bike.hackboy.bronco.utils;
+
+import bike.hackboy.bronco.bean.DashboardBean;
+
+/**
+ * Text of the ongoing ride notification. The labels come from resources once, formatting
+ * itself needs no Context so it can be measured off the device.
+ */
+public class StatusFormatter {
+	protected final CharSequence unlocked;
+	protected final CharSequence battery;
+	protected final CharSequence uptime;
+	protected final CharSequence cycled;
+
+	public StatusFormatter(CharSequence unlocked, CharSequence battery, CharSequence uptime, CharSequence cycled) {
+		this.unlocked = unlocked;
+		this.battery = battery;
+		this.uptime = uptime;
+		this.cycled = cycled;
+	}
+
+	public String formatStatus(DashboardBean db) {
+		return formatStatus(db.getBattery());
+	}
+
+	public String formatSubStatus(DashboardBean db) {
+		return formatSubStatus(db.getDuration(), db.getDistance());
+	}
+
+	// straight from the raw values, for callers that never build a bean
+	public String formatStatus(int battery) {
+		return formatStatus(DashboardBean.formatBattery(battery));
+	}
+
+	public String formatSubStatus(int duration, int distance) {
+		return formatSubStatus(DashboardBean.formatDuration(duration), DashboardBean.formatDistance(distance));
+	}
+
+	protected String formatStatus(String batteryText) {
+		return String.format(
+			"%s • %s %s",
+			unlocked,
+			batteryText,
+			battery
+		);
+	}
+
+	protected String formatSubStatus(String durationText, String distanceText) {
+		return String.format("%s %s • %s %s",
+			uptime,
+			durationText,
+			distanceText,
+			cycled
+		);
+	}
+}
@@ -0,0 +1,35 @@
+package bike.hackboy.bronco.utils;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * {@link Tracer} onto android.os.Trace, set once by the service. Async slices and counters
+ * need API 29 and are dropped below that.
+ */
+public class SystemTrace extends Tracer.Sink {
+	@Override
+	public void begin(String name) {
+		Trace.beginSection(name);
+	}
+
+	@Override
+	public void end() {
+		Trace.endSection();
+	}
+
+	@Override
+	public void beginAsync(String name, int cookie) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.beginAsyncSection(name, cookie);
+	}
+
+	@Override
+	public void endAsync(String name, int cookie) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.endAsyncSection(name, cookie);
+	}
+
+	@Override
+	public void counter(String name, long value) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.setCounter(name, value);
+	}
+}
@@ -0,0 +1,78 @@
+package bike.hackboy.bronco.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * android.os.Trace sections along the bluetooth to screen path, for Perfetto / systrace.
+ *
+ * Off by default and switchable at runtime from the debug screen; when off every call is a
+ * volatile read. Sections must end on the thread they began on, so {@link #begin(String)}
+ * hands back whether it opened one and {@link #end(boolean)} only closes what was opened,
+ * even if tracing was switched in between:
+ *
+ *   boolean traced = Tracer.begin("decode");
+ *   try { ... } finally { Tracer.end(traced); }
+ *
+ * Async slices and counters need API 29, they're dropped on older phones.
+ *
+ * The calls themselves go to a {@link Sink}, {@link SystemTrace} on a phone. Until one is set
+ * nothing is recorded, which keeps this class and whatever calls it free of android.
+ */
+public class Tracer {
+	public static final String PREFERENCES = "debug";
+	public static final String PREFERENCE_ENABLED = "tracing";
+
+	public abstract static class Sink {
+		public void begin(String name) { }
+		public void end() { }
+		public void beginAsync(String name, int cookie) { }
+		public void endAsync(String name, int cookie) { }
+		public void counter(String name, long value) { }
+	}
+
+	protected static volatile Sink sink = new Sink() { };
+	protected static volatile boolean enabled = false;
+	protected static final AtomicInteger cookies = new AtomicInteger();
+
+	public static void setEnabled(boolean enabled) {
+		Tracer.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setSink(Sink sink) {
+		Tracer.sink = sink;
+	}
+
+	public static boolean begin(String name) {
+		if (!enabled) return false;
+
+		sink.begin(name);
+		return true;
+	}
+
+	public static void end(boolean traced) {
+		if (traced) sink.end();
+	}
+
+	/** @return a cookie for {@link #endAsync(String, int)}, 0 when not tracing */
+	public static int beginAsync(String name) {
+		if (!enabled) return 0;
+
+		int cookie = cookies.incrementAndGet();
+		if (cookie == 0) cookie = cookies.incrementAndGet();
+
+		sink.beginAsync(name, cookie);
+		return cookie;
+	}
+
+	public static void endAsync(String name, int cookie) {
+		if (cookie != 0) sink.endAsync(name, cookie);
+	}
+
+	public static void counter(String name, long value) {
+		if (enabled) sink.counter(name, value);
+	}
+}
@@ -0,0 +1,59 @@
+package bike.hackboy.bronco.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bike.hackboy.bronco.bean.TripSummaryBean;
+
+public class TripStore {
+	protected static final String PREFERENCES = "trips";
+	protected static final String KEY = "summaries";
+	protected static final int MAX_TRIPS = 100;
+
+	/** A trip saved last time round (resumed after a lock or a reconnect) is replaced. */
+	public static synchronized void save(Context context, TripSummaryBean summary) {
+		SharedPreferences sharedPref = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+
+		try {
+			JSONArray stored = new JSONArray(sharedPref.getString(KEY, "[]"));
+			JSONArray trips = new JSONArray();
+
+			int end = stored.length();
+			if (end > 0 && stored.getJSONObject(end - 1).optInt("trip_id", -1) == summary.getTripId()) end--;
+
+			// oldest entries fall off the front
+			int skip = Math.max(0, end + 1 - MAX_TRIPS);
+			for (int i = skip; i < end; i++) {
+				trips.put(stored.get(i));
+			}
+			trips.put(summary.toJSON());
+
+			sharedPref.edit().putString(KEY, trips.toString()).apply();
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static List<TripSummaryBean> load(Context context) {
+		SharedPreferences sharedPref = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+		List<TripSummaryBean> list = new ArrayList<>();
+
+		try {
+			JSONArray trips = new JSONArray(sharedPref.getString(KEY, "[]"));
+
+			for (int i = 0; i < trips.length(); i++) {
+				list.add(TripSummaryBean.fromJSON(trips.getJSONObject(i)));
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+
+		return list;
+	}
+}
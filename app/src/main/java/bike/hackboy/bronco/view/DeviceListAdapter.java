@@ -1,7 +1,5 @@
 package bike.hackboy.bronco.view;
 
-import android.annotation.SuppressLint;
-import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -9,6 +7,8 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.jetbrains.annotations.NotNull;
@@ -16,73 +16,119 @@ import org.jetbrains.annotations.NotNull;
 import java.util.List;
 
 import bike.hackboy.bronco.R;
+import bike.hackboy.bronco.bean.ScannedBikeBean;
+import bike.hackboy.bronco.utils.Converter;
 
 public class DeviceListAdapter extends RecyclerView.Adapter<DeviceListAdapter.ViewHolder> {
-	private final List<BluetoothDevice> data;
+	// the only thing that changes while scanning, rebinds just the signal
+	protected static final String PAYLOAD_SIGNAL = "signal";
+
+	private final AsyncListDiffer<ScannedBikeBean> differ;
 	private final LayoutInflater inflater;
+	private final String signalFormat;
 	onDeviceClickListener onDeviceClickListener;
 
 	public abstract static class onDeviceClickListener {
 		public void onClick(String mac) { }
 	}
 
-	public DeviceListAdapter(Context context, List<BluetoothDevice> data) {
+	public DeviceListAdapter(Context context) {
 		this.inflater = LayoutInflater.from(context);
-		this.data = data;
+		this.signalFormat = context.getString(R.string.signal_dbm);
+		this.differ = new AsyncListDiffer<>(this, DIFF);
+
+		setHasStableIds(true);
+	}
+
+	/** Diffed against what's shown off the main thread, only the rows that changed get rebound. */
+	public void submitList(List<ScannedBikeBean> bikes) {
+		differ.submitList(bikes);
 	}
 
 	@NotNull
 	@Override
 	public ViewHolder onCreateViewHolder(@NotNull ViewGroup parent, int viewType) {
 		View view = inflater.inflate(R.layout.device_item, parent, false);
-		return new ViewHolder(view);
+		ViewHolder holder = new ViewHolder(view);
+
+		// once per row rather than once per bind
+		holder.container.setOnClickListener(v -> {
+			int position = holder.getAdapterPosition();
+			if (position == RecyclerView.NO_POSITION || onDeviceClickListener == null) return;
+
+			onDeviceClickListener.onClick(differ.getCurrentList().get(position).getMac());
+		});
+
+		return holder;
 	}
 
-	@SuppressLint("SetTextI18n")
 	@Override
 	public void onBindViewHolder(@NotNull ViewHolder holder, int position) {
-		BluetoothDevice device = data.get(position);
-
-		String name = device.getName();
-		String alias = device.getAlias();
-		String mac = device.getAddress();
-
-		holder.name.setText(name);
-		holder.mac.setText(mac);
-
-		if(alias != null && !alias.isEmpty() && !alias.equals(name)) {
-			holder.name.setText(alias);
-		} else if(name != null && !name.isEmpty()) {
-			holder.name.setText(name);
-		} else {
-			// idk...
-			holder.name.setText("COWBOY");
-		}
+		ScannedBikeBean bike = differ.getCurrentList().get(position);
+
+		holder.name.setText(bike.getName());
+		holder.mac.setText(bike.getMac());
+		bindSignal(holder, bike);
+	}
 
-		if (onDeviceClickListener != null) {
-			holder.container.setOnClickListener(v -> onDeviceClickListener.onClick(mac));
+	@Override
+	public void onBindViewHolder(@NotNull ViewHolder holder, int position, @NotNull List<Object> payloads) {
+		if (payloads.isEmpty()) {
+			onBindViewHolder(holder, position);
+			return;
 		}
+
+		bindSignal(holder, differ.getCurrentList().get(position));
+	}
+
+	protected void bindSignal(ViewHolder holder, ScannedBikeBean bike) {
+		// paired bikes listed without a scan have no reading
+		holder.signal.setText(bike.isBonded() ? "" : String.format(signalFormat, bike.getRssi()));
 	}
 
 	@Override
 	public int getItemCount() {
-		return data.size();
+		return differ.getCurrentList().size();
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return Converter.macToLong(differ.getCurrentList().get(position).getMac());
 	}
 
 	public void setOnDeviceClickListener(onDeviceClickListener onDeviceClickListener) {
 		this.onDeviceClickListener = onDeviceClickListener;
 	}
 
+	protected static final DiffUtil.ItemCallback<ScannedBikeBean> DIFF = new DiffUtil.ItemCallback<ScannedBikeBean>() {
+		@Override
+		public boolean areItemsTheSame(@NotNull ScannedBikeBean a, @NotNull ScannedBikeBean b) {
+			return a.getMac().equals(b.getMac());
+		}
+
+		@Override
+		public boolean areContentsTheSame(@NotNull ScannedBikeBean a, @NotNull ScannedBikeBean b) {
+			return a.getRssi() == b.getRssi() && a.isBonded() == b.isBonded() && a.getName().equals(b.getName());
+		}
+
+		@Override
+		public Object getChangePayload(@NotNull ScannedBikeBean a, @NotNull ScannedBikeBean b) {
+			return a.getName().equals(b.getName()) && a.isBonded() == b.isBonded() ? PAYLOAD_SIGNAL : null;
+		}
+	};
+
 	public static class ViewHolder extends RecyclerView.ViewHolder {
 		final TextView name;
 		final TextView mac;
+		final TextView signal;
 		final ConstraintLayout container;
 
 		ViewHolder(View itemView) {
 			super(itemView);
 			name = itemView.findViewById(R.id.name);
 			mac = itemView.findViewById(R.id.mac);
+			signal = itemView.findViewById(R.id.signal);
 			container = itemView.findViewById(R.id.device_item);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package bike.hackboy.bronco.view;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+import bike.hackboy.bronco.R;
+import bike.hackboy.bronco.bean.BikeStateBean;
+import bike.hackboy.bronco.utils.Converter;
+
+public class FleetListAdapter extends RecyclerView.Adapter<FleetListAdapter.ViewHolder> {
+	// what changed between two snapshots of a bike, so only those views get rebound
+	protected static final int PAYLOAD_ACTIVE = 1;
+	protected static final int PAYLOAD_LOCK = 1 << 1;
+	protected static final int PAYLOAD_TELEMETRY = 1 << 2;
+	protected static final int PAYLOAD_HEALTH = 1 << 3;
+
+	private final AsyncListDiffer<BikeStateBean> differ;
+	private final LayoutInflater inflater;
+	onBikeClickListener onBikeClickListener;
+
+	// looked up once, not on every bind
+	private final String activeFormat;
+	private final String batteryFormat;
+	private final String speedFormat;
+	private final String failuresFormat;
+	private final String[] lockNames;
+	private final String[] healthNames;
+
+	public abstract static class onBikeClickListener {
+		public void onClick(String mac) { }
+	}
+
+	public FleetListAdapter(Context context) {
+		this.inflater = LayoutInflater.from(context);
+		this.differ = new AsyncListDiffer<>(this, DIFF);
+
+		activeFormat = context.getString(R.string.active_bike);
+		batteryFormat = context.getString(R.string.battery_percent);
+		speedFormat = context.getString(R.string.speed_kmh);
+		failuresFormat = context.getString(R.string.health_with_failures);
+
+		// indexed by LOCK_* + 1 and HEALTH_*
+		lockNames = new String[] {
+			context.getString(R.string.lock_unknown),
+			context.getString(R.string.locked),
+			context.getString(R.string.unlocked),
+		};
+
+		healthNames = new String[] {
+			context.getString(R.string.health_disconnected),
+			context.getString(R.string.health_connecting),
+			context.getString(R.string.health_good),
+			context.getString(R.string.health_stale),
+		};
+
+		setHasStableIds(true);
+	}
+
+	/** Diffed off the main thread, a refresh where nothing changed binds nothing. */
+	public void submitList(List<BikeStateBean> bikes) {
+		differ.submitList(bikes);
+	}
+
+	@NotNull
+	@Override
+	public ViewHolder onCreateViewHolder(@NotNull ViewGroup parent, int viewType) {
+		View view = inflater.inflate(R.layout.fleet_item, parent, false);
+		ViewHolder holder = new ViewHolder(view);
+
+		holder.container.setOnClickListener(v -> {
+			int position = holder.getAdapterPosition();
+			if (position == RecyclerView.NO_POSITION || onBikeClickListener == null) return;
+
+			onBikeClickListener.onClick(differ.getCurrentList().get(position).getMac());
+		});
+
+		return holder;
+	}
+
+	@Override
+	public void onBindViewHolder(@NotNull ViewHolder holder, int position) {
+		bind(holder, differ.getCurrentList().get(position), PAYLOAD_ACTIVE | PAYLOAD_LOCK | PAYLOAD_TELEMETRY | PAYLOAD_HEALTH);
+	}
+
+	@Override
+	public void onBindViewHolder(@NotNull ViewHolder holder, int position, @NotNull List<Object> payloads) {
+		if (payloads.isEmpty()) {
+			onBindViewHolder(holder, position);
+			return;
+		}
+
+		// several refreshes can land before the next layout pass
+		int changes = 0;
+		for (Object payload : payloads) changes |= (Integer) payload;
+
+		bind(holder, differ.getCurrentList().get(position), changes);
+	}
+
+	protected void bind(ViewHolder holder, BikeStateBean bike, int changes) {
+		if ((changes & PAYLOAD_ACTIVE) != 0) {
+			holder.mac.setText(bike.isActive() ? String.format(activeFormat, bike.getMac()) : bike.getMac());
+		}
+
+		if ((changes & PAYLOAD_LOCK) != 0) {
+			holder.lock.setText(lockNames[bike.getLock() + 1]);
+		}
+
+		if ((changes & PAYLOAD_TELEMETRY) != 0) {
+			holder.battery.setText(bike.getBattery() < 0 ? "" : String.format(batteryFormat, bike.getBattery()));
+			holder.speed.setText(bike.getLock() == BikeStateBean.LOCK_UNLOCKED ? String.format(speedFormat, bike.getSpeed()) : "");
+		}
+
+		if ((changes & PAYLOAD_HEALTH) != 0) {
+			String health = healthNames[bike.getHealth()];
+			holder.health.setText(bike.getFailures() > 0 ? String.format(failuresFormat, health, bike.getFailures()) : health);
+		}
+	}
+
+	@Override
+	public int getItemCount() {
+		return differ.getCurrentList().size();
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return Converter.macToLong(differ.getCurrentList().get(position).getMac());
+	}
+
+	public void setOnBikeClickListener(onBikeClickListener onBikeClickListener) {
+		this.onBikeClickListener = onBikeClickListener;
+	}
+
+	protected static int changesBetween(BikeStateBean a, BikeStateBean b) {
+		int changes = 0;
+
+		if (a.isActive() != b.isActive()) changes |= PAYLOAD_ACTIVE;
+		if (a.getLock() != b.getLock()) changes |= PAYLOAD_LOCK | PAYLOAD_TELEMETRY;
+		if (a.getBattery() != b.getBattery() || a.getSpeed() != b.getSpeed()) changes |= PAYLOAD_TELEMETRY;
+		if (a.getHealth() != b.getHealth() || a.getFailures() != b.getFailures()) changes |= PAYLOAD_HEALTH;
+
+		return changes;
+	}
+
+	protected static final DiffUtil.ItemCallback<BikeStateBean> DIFF = new DiffUtil.ItemCallback<BikeStateBean>() {
+		@Override
+		public boolean areItemsTheSame(@NotNull BikeStateBean a, @NotNull BikeStateBean b) {
+			return a.getMac().equals(b.getMac());
+		}
+
+		// the queue length isn't shown, it only feeds the health bucket
+		@Override
+		public boolean areContentsTheSame(@NotNull BikeStateBean a, @NotNull BikeStateBean b) {
+			return changesBetween(a, b) == 0;
+		}
+
+		@Override
+		public Object getChangePayload(@NotNull BikeStateBean a, @NotNull BikeStateBean b) {
+			return changesBetween(a, b);
+		}
+	};
+
+	public static class ViewHolder extends RecyclerView.ViewHolder {
+		final TextView mac;
+		final TextView lock;
+		final TextView health;
+		final TextView battery;
+		final TextView speed;
+		final ConstraintLayout container;
+
+		ViewHolder(View itemView) {
+			super(itemView);
+			mac = itemView.findViewById(R.id.mac);
+			lock = itemView.findViewById(R.id.lock);
+			health = itemView.findViewById(R.id.health);
+			battery = itemView.findViewById(R.id.battery);
+			speed = itemView.findViewById(R.id.speed);
+			container = itemView.findViewById(R.id.fleet_item);
+		}
+	}
+}
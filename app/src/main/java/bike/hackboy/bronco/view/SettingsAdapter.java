@@ -10,64 +10,127 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.jetbrains.annotations.NotNull;
+
 import java.util.List;
+import java.util.Objects;
 
 import bike.hackboy.bronco.R;
 import bike.hackboy.bronco.bean.SettingBean;
 
 public class SettingsAdapter extends RecyclerView.Adapter<SettingsAdapter.ViewHolder> {
-	protected final List<SettingBean> settings;
+	// lock state and auto lock timer only change the value on the right
+	protected static final String PAYLOAD_VALUE = "value";
+
+	protected final AsyncListDiffer<SettingBean> differ;
 	protected final LayoutInflater inflater;
 
-	public SettingsAdapter(Context context, List<SettingBean> data) {
+	public SettingsAdapter(Context context) {
 		this.inflater = LayoutInflater.from(context);
-		this.settings = data;
+		this.differ = new AsyncListDiffer<>(this, DIFF);
+
+		setHasStableIds(true);
+	}
+
+	/** Diffed against what's shown off the main thread, only the rows that changed get rebound. */
+	public void submitList(List<SettingBean> settings) {
+		differ.submitList(settings);
 	}
 
 	@NotNull
 	@Override
 	public ViewHolder onCreateViewHolder(@NotNull ViewGroup parent, int viewType) {
 		View view = inflater.inflate(R.layout.settings_item, parent, false);
-		return new ViewHolder(view);
+		ViewHolder holder = new ViewHolder(view);
+
+		// once per row rather than once per bind
+		holder.container.setOnClickListener(v -> {
+			int position = holder.getAdapterPosition();
+			if (position == RecyclerView.NO_POSITION) return;
+
+			View.OnClickListener listener = differ.getCurrentList().get(position).getOnClickListener();
+			if (listener != null) listener.onClick(v);
+		});
+
+		return holder;
 	}
 
 	@Override
-	public void onBindViewHolder(ViewHolder holder, int position) {
-		SettingBean entry = settings.get(position);
+	public void onBindViewHolder(@NotNull ViewHolder holder, int position) {
+		SettingBean entry = differ.getCurrentList().get(position);
 
 		holder.name.setText(entry.getName());
 		holder.description.setText(entry.getDescription());
+		holder.arrow.setVisibility(entry.isHasArrow() ? View.VISIBLE : View.GONE);
+
+		bindValue(holder, entry);
+	}
 
-		if(entry.isHasArrow()) {
-			holder.setIsRecyclable(false);
-			holder.arrow.setVisibility(View.VISIBLE);
-		} else if (entry.getValue() != null) {
-			holder.setIsRecyclable(false);
-
-			if(entry.getValue().isEmpty()) {
-				holder.loader.setVisibility(View.VISIBLE);
-				holder.value.setVisibility(View.GONE);
-			} else {
-				holder.value.setText(entry.getValue());
-				holder.value.setVisibility(View.VISIBLE);
-				holder.loader.setVisibility(View.GONE);
-			}
+	@Override
+	public void onBindViewHolder(@NotNull ViewHolder holder, int position, @NotNull List<Object> payloads) {
+		if (payloads.isEmpty()) {
+			onBindViewHolder(holder, position);
+			return;
 		}
 
-		holder.container.setOnClickListener(view -> {
-			View.OnClickListener listener = entry.getOnClickListener();
-			listener.onClick(view);
-		});
+		bindValue(holder, differ.getCurrentList().get(position));
+	}
+
+	// every view is set either way, rows get recycled between entries with and without a value
+	protected void bindValue(ViewHolder holder, SettingBean entry) {
+		String value = entry.getValue();
+
+		if (value == null) {
+			holder.value.setVisibility(View.GONE);
+			holder.loader.setVisibility(View.GONE);
+		} else if (value.isEmpty()) {
+			holder.loader.setVisibility(View.VISIBLE);
+			holder.value.setVisibility(View.GONE);
+		} else {
+			holder.value.setText(value);
+			holder.value.setVisibility(View.VISIBLE);
+			holder.loader.setVisibility(View.GONE);
+		}
 	}
 
 	@Override
 	public int getItemCount() {
-		return settings.size();
+		return differ.getCurrentList().size();
 	}
 
+	@Override
+	public long getItemId(int position) {
+		return differ.getCurrentList().get(position).getId();
+	}
+
+	// listeners aren't compared, the same setting keeps the same one
+	protected static final DiffUtil.ItemCallback<SettingBean> DIFF = new DiffUtil.ItemCallback<SettingBean>() {
+		@Override
+		public boolean areItemsTheSame(@NotNull SettingBean a, @NotNull SettingBean b) {
+			return a.getId() == b.getId();
+		}
+
+		@Override
+		public boolean areContentsTheSame(@NotNull SettingBean a, @NotNull SettingBean b) {
+			return sameLabels(a, b) && Objects.equals(a.getValue(), b.getValue());
+		}
+
+		@Override
+		public Object getChangePayload(@NotNull SettingBean a, @NotNull SettingBean b) {
+			return sameLabels(a, b) ? PAYLOAD_VALUE : null;
+		}
+
+		private boolean sameLabels(SettingBean a, SettingBean b) {
+			return a.isHasArrow() == b.isHasArrow()
+				&& Objects.equals(a.getName(), b.getName())
+				&& Objects.equals(a.getDescription(), b.getDescription());
+		}
+	};
+
 	public static class ViewHolder extends RecyclerView.ViewHolder {
 		final TextView name;
 		final TextView description;
@@ -86,4 +149,4 @@ public class SettingsAdapter extends RecyclerView.Adapter<SettingsAdapter.ViewHo
 			container = itemView.findViewById(R.id.settings_item);
 		}
 	}
-}
\ No newline at end of file
+}
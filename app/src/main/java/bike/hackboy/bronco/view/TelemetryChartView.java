@@ -0,0 +1,118 @@
+package bike.hackboy.bronco.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import bike.hackboy.bronco.R;
+import bike.hackboy.bronco.telemetry.TelemetryBuffer;
+
+public class TelemetryChartView extends View {
+	protected static final long WINDOW_MILLIS = 3 * 60 * 1000L;
+
+	protected static final float SPEED_SCALE = 50f;
+	protected static final float POWER_SCALE = 100f;
+	protected static final float BATTERY_SCALE = 100f;
+
+	protected TelemetryBuffer buffer;
+
+	// everything used by onDraw is allocated once
+	protected long[] time = new long[0];
+	protected float[] speed = new float[0];
+	protected float[] power = new float[0];
+	protected float[] battery = new float[0];
+
+	protected final Path speedPath = new Path();
+	protected final Path powerPath = new Path();
+	protected final Path batteryPath = new Path();
+
+	protected final Paint speedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	protected final Paint powerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	protected final Paint batteryPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	public TelemetryChartView(Context context) {
+		this(context, null);
+	}
+
+	public TelemetryChartView(Context context, @Nullable AttributeSet attrs) {
+		super(context, attrs);
+
+		float density = getResources().getDisplayMetrics().density;
+
+		setupPaint(speedPaint, ContextCompat.getColor(context, R.color.black), 2 * density);
+		setupPaint(powerPaint, ContextCompat.getColor(context, R.color.pink), 1.5f * density);
+		setupPaint(batteryPaint, ContextCompat.getColor(context, R.color.gray_400), 1.5f * density);
+	}
+
+	protected void setupPaint(Paint paint, int color, float width) {
+		paint.setStyle(Paint.Style.STROKE);
+		paint.setStrokeJoin(Paint.Join.ROUND);
+		paint.setStrokeWidth(width);
+		paint.setColor(color);
+	}
+
+	public void setBuffer(TelemetryBuffer buffer) {
+		this.buffer = buffer;
+
+		int capacity = buffer.getCapacity();
+		time = new long[capacity];
+		speed = new float[capacity];
+		power = new float[capacity];
+		battery = new float[capacity];
+
+		postInvalidateOnAnimation();
+	}
+
+	// the chart only moves when there's a new sample, no point drawing in between
+	public void onSample() {
+		postInvalidateOnAnimation();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (buffer == null) return;
+
+		long now = SystemClock.elapsedRealtime();
+		long since = now - WINDOW_MILLIS;
+		int count = buffer.copySince(since, time, speed, power, battery);
+
+		if (count > 1) {
+			float width = getWidth() - getPaddingLeft() - getPaddingRight();
+			float height = getHeight() - getPaddingTop() - getPaddingBottom();
+
+			fillPath(batteryPath, battery, BATTERY_SCALE, count, since, width, height);
+			fillPath(powerPath, power, POWER_SCALE, count, since, width, height);
+			fillPath(speedPath, speed, SPEED_SCALE, count, since, width, height);
+
+			canvas.drawPath(batteryPath, batteryPaint);
+			canvas.drawPath(powerPath, powerPaint);
+			canvas.drawPath(speedPath, speedPaint);
+		}
+	}
+
+	protected void fillPath(Path path, float[] values, float scale, int count, long since, float width, float height) {
+		path.rewind();
+
+		float left = getPaddingLeft();
+		float bottom = getPaddingTop() + height;
+
+		for (int i = 0; i < count; i++) {
+			float x = left + width * (time[i] - since) / WINDOW_MILLIS;
+			float y = bottom - height * Math.min(Math.max(values[i] / scale, 0f), 1f);
+
+			if (i == 0) {
+				path.moveTo(x, y);
+			} else {
+				path.lineTo(x, y);
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package bike.hackboy.bronco.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import bike.hackboy.bronco.bean.CbyBikeResponseBean;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// BikeParser reads with android.util.JsonReader, hence robolectric
+@RunWith(RobolectricTestRunner.class)
+public class BikePollerTest {
+	protected static final String BIKE = "{\"id\":1,\"serial_number\":\"SN1\",\"battery_state_of_charge\":80,\"seen_at\":\"%s\"}";
+	protected static final String LAST_MODIFIED = "Wed, 21 Oct 2020 07:28:00 GMT";
+
+	protected MockWebServer server;
+	protected BikePoller poller;
+	protected final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+
+		String baseUrl = server.url("/").toString();
+		baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+
+		poller = new BikePoller(baseUrl, "uid", "client", "token", 1, new BikePoller.OnUpdateListener() {
+			@Override
+			public void onBike(CbyBikeResponseBean bike) {
+				events.add(bike);
+			}
+
+			@Override
+			public void onUnchanged() {
+				events.add("unchanged");
+			}
+
+			@Override
+			public void onError(Exception e) {
+				events.add(e);
+			}
+		});
+
+		// no scheduler, each poll() is one request and nothing gets scheduled after it
+		poller.running = true;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+	}
+
+	protected Object poll() throws InterruptedException {
+		poller.poll();
+
+		Object event = events.poll(5, TimeUnit.SECONDS);
+		assertNotNull("no answer from the poller", event);
+		return event;
+	}
+
+	protected static String bike(String seenAt) {
+		return String.format(BIKE, seenAt);
+	}
+
+	@Test
+	public void sendsValidatorsBackAndTakes304AsUnchanged() throws Exception {
+		server.enqueue(new MockResponse()
+			.setBody(bike("2021-03-01T10:00:00.000Z"))
+			.setHeader("ETag", "\"v1\"")
+			.setHeader("Last-Modified", LAST_MODIFIED));
+		server.enqueue(new MockResponse().setResponseCode(304));
+
+		Object first = poll();
+		assertTrue(first instanceof CbyBikeResponseBean);
+		assertEquals("SN1", ((CbyBikeResponseBean) first).getSerial());
+		assertEquals(BikePoller.MIN_INTERVAL_MILLIS, poller.getInterval());
+
+		RecordedRequest request = server.takeRequest();
+		assertEquals("/bikes/1", request.getPath());
+		assertNull(request.getHeader("If-None-Match"));
+		assertNull(request.getHeader("If-Modified-Since"));
+
+		assertEquals("unchanged", poll());
+		assertEquals(BikePoller.MIN_INTERVAL_MILLIS * 2, poller.getInterval());
+
+		request = server.takeRequest();
+		assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+		assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+	}
+
+	@Test
+	public void sameBodyWithoutValidatorsIsUnchanged() throws Exception {
+		String body = bike("2021-03-01T10:00:00.000Z");
+
+		server.enqueue(new MockResponse().setBody(body));
+		server.enqueue(new MockResponse().setBody(body));
+		server.enqueue(new MockResponse().setBody(bike("2021-03-01T10:05:00.000Z")));
+
+		assertTrue(poll() instanceof CbyBikeResponseBean);
+
+		// a plain 200, only the hash of the body tells it's the same
+		assertEquals("unchanged", poll());
+		assertEquals(BikePoller.MIN_INTERVAL_MILLIS * 2, poller.getInterval());
+
+		server.takeRequest();
+		assertNull(server.takeRequest().getHeader("If-None-Match"));
+
+		// the bike checked in again, back to the shortest interval
+		assertTrue(poll() instanceof CbyBikeResponseBean);
+		assertEquals(BikePoller.MIN_INTERVAL_MILLIS, poller.getInterval());
+	}
+
+	@Test
+	public void backsOffOnErrors() throws Exception {
+		long expected = BikePoller.MIN_INTERVAL_MILLIS;
+
+		for (int i = 0; i < 8; i++) {
+			server.enqueue(new MockResponse().setResponseCode(500));
+
+			assertTrue(poll() instanceof Exception);
+
+			expected = Math.min(expected * 2, BikePoller.MAX_INTERVAL_MILLIS);
+			assertEquals(expected, poller.getInterval());
+		}
+
+		assertEquals(BikePoller.MAX_INTERVAL_MILLIS, poller.getInterval());
+
+		server.enqueue(new MockResponse().setBody(bike("2021-03-01T10:00:00.000Z")));
+
+		assertTrue(poll() instanceof CbyBikeResponseBean);
+		assertEquals(BikePoller.MIN_INTERVAL_MILLIS, poller.getInterval());
+	}
+}
@@ -0,0 +1,156 @@
+package bike.hackboy.bronco.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import bike.hackboy.bronco.DashboardProto;
+import bike.hackboy.bronco.bean.DashboardBean;
+import bike.hackboy.bronco.telemetry.DashboardFrame;
+import bike.hackboy.bronco.telemetry.EnergyIntegrator;
+import bike.hackboy.bronco.telemetry.RangeEstimator;
+import bike.hackboy.bronco.telemetry.TelemetryBuffer;
+import bike.hackboy.bronco.utils.StatusFormatter;
+
+/**
+ * Runs the per-frame paths over a few thousand synthetic frames and fails the build when
+ * one allocates more bytes per frame than its budget. Part of {@code ./gradlew check}.
+ *
+ * Budgets are what the paths allocate today plus some headroom for JVM differences. If a
+ * change makes a path cheaper, lower its budget with it so the gain can't quietly regress.
+ */
+public class AllocationBudget {
+	protected static final int DISTINCT_FRAMES = 1024;
+	protected static final int WARMUP_FRAMES = 50_000;
+	protected static final int MEASURED_FRAMES = 10_000;
+
+	// bytes per frame
+	protected static final long BUDGET_DECODE = 2816;
+	protected static final long BUDGET_PIPELINE_DECODE = 16;
+	protected static final long BUDGET_TELEMETRY = 16;
+	// formats from raw values, so this now includes what decode used to do for it. It only
+	// runs once per notification interval though, not for every frame
+	protected static final long BUDGET_NOTIFICATION = 3584;
+
+	protected abstract static class Path {
+		final String name;
+		final long budget;
+
+		Path(String name, long budget) {
+			this.name = name;
+			this.budget = budget;
+		}
+
+		/** @return anything derived from the frame, so the work can't be optimized away */
+		abstract int run(int index);
+	}
+
+	protected static final byte[][] frames = new byte[DISTINCT_FRAMES][];
+	protected static final DashboardBean[] beans = new DashboardBean[DISTINCT_FRAMES];
+
+	public static void main(String[] args) throws Exception {
+		com.sun.management.ThreadMXBean threads;
+
+		try {
+			threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} catch (ClassCastException | UnsupportedOperationException e) {
+			System.out.println("allocation budget: this JVM can't count allocated bytes, skipping");
+			return;
+		}
+
+		// a ride: speed and power wander, distance and duration only go up, battery goes down
+		for (int i = 0; i < DISTINCT_FRAMES; i++) {
+			DashboardProto.Dashboard frame = Frames.dashboard(
+				600 + i,
+				18 + i % 9,
+				120 + (i * 37) % 230,
+				4000 + i * 6,
+				90 - i / 64
+			);
+
+			frames[i] = frame.toByteArray();
+			beans[i] = new DashboardBean().fromProtobuf(frame);
+		}
+
+		RangeEstimator range = new RangeEstimator();
+		EnergyIntegrator energy = new EnergyIntegrator();
+		TelemetryBuffer history = new TelemetryBuffer(2048);
+		StatusFormatter formatter = new StatusFormatter("Unlocked", "battery", "Uptime", "cycled");
+
+		List<Path> paths = new ArrayList<>();
+
+		paths.add(new Path("dashboard decode", BUDGET_DECODE) {
+			@Override
+			int run(int index) {
+				try {
+					DashboardProto.Dashboard frame = DashboardProto.Dashboard.parseFrom(frames[index % DISTINCT_FRAMES]);
+					return new DashboardBean().fromProtobuf(frame).getRawSpeed();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+
+		DashboardFrame frame = new DashboardFrame();
+
+		paths.add(new Path("pipeline decode", BUDGET_PIPELINE_DECODE) {
+			@Override
+			int run(int index) {
+				frame.reset(frames[index % DISTINCT_FRAMES], index, index);
+				frame.decode(DashboardFrame.ALL);
+
+				return frame.getSpeed();
+			}
+		});
+
+		paths.add(new Path("telemetry", BUDGET_TELEMETRY) {
+			@Override
+			int run(int index) {
+				DashboardBean db = beans[index % DISTINCT_FRAMES];
+				long time = index * 1_000_000_000L;
+
+				range.onSample(time, db.getRawDistance(), db.getRawPower(), db.getRawBattery(), 1);
+				energy.onSample(time, 1, index, db.getRawDistance(), db.getRawPower());
+				history.push(index * 1000L, db.getRawSpeed(), db.getRawPower(), db.getRawBattery());
+
+				return history.size();
+			}
+		});
+
+		paths.add(new Path("notification text", BUDGET_NOTIFICATION) {
+			@Override
+			int run(int index) {
+				DashboardBean db = beans[index % DISTINCT_FRAMES];
+				return formatter.formatStatus(db.getRawBattery()).length()
+					+ formatter.formatSubStatus(600 + index % DISTINCT_FRAMES, db.getRawDistance()).length();
+			}
+		});
+
+		boolean failed = false;
+		long sink = 0;
+
+		for (Path path : paths) {
+			for (int i = 0; i < WARMUP_FRAMES; i++) sink += path.run(i);
+
+			long threadId = Thread.currentThread().getId();
+			long before = threads.getThreadAllocatedBytes(threadId);
+
+			for (int i = 0; i < MEASURED_FRAMES; i++) sink += path.run(WARMUP_FRAMES + i);
+
+			long perFrame = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_FRAMES;
+			boolean over = perFrame > path.budget;
+			failed |= over;
+
+			System.out.printf("%-20s %6d B/frame, budget %6d B %s%n", path.name, perFrame, path.budget, over ? "OVER BUDGET" : "ok");
+		}
+
+		// keeps the results alive, the number itself means nothing
+		if (sink == 42) System.out.println();
+
+		if (failed) {
+			System.err.println("allocation budget exceeded, see above");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package bike.hackboy.bronco.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import bike.hackboy.bronco.api.BikeParser;
+import bike.hackboy.bronco.bean.CbyBikeResponseBean;
+import bike.hackboy.bronco.utils.DateParser;
+
+/**
+ * A /bikes/{id} response read off the wire: streamed through BikeParser, against the
+ * org.json tree the app used to build from the whole body.
+ */
+@State(Scope.Thread)
+public class BikeParserBenchmark {
+	protected byte[] body;
+
+	@Setup
+	public void setup() {
+		body = Frames.bikeResponse().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public CbyBikeResponseBean jsonReader() throws IOException {
+		return BikeParser.parse(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public CbyBikeResponseBean jsonObject() throws JSONException, ParseException {
+		// the same fields, the way it was done before BikeParser streamed
+		JSONObject bikeJson = new JSONObject(new String(body, StandardCharsets.UTF_8));
+		JSONObject position = bikeJson.getJSONObject("position");
+		JSONObject sku = bikeJson.getJSONObject("sku");
+		CbyBikeResponseBean bike = new CbyBikeResponseBean();
+
+		bike.setBatteryCharge((float) bikeJson.getLong("battery_state_of_charge"));
+		bike.setPcbBatteryCharge((float) bikeJson.getLong("pcb_battery_state_of_charge"));
+		bike.setCarbonSaved(bikeJson.getInt("total_co2_saved"));
+		bike.setTotalDistance((float) bikeJson.getDouble("total_distance"));
+		bike.setAutonomy((float) bikeJson.getDouble("autonomy"));
+
+		bike.setPositionAddress(position.getString("address"));
+		bike.setPositionLat((float) position.getDouble("latitude"));
+		bike.setPositionLon((float) position.getDouble("longitude"));
+		bike.setPositionReceivedAt(DateParser.parseIso8601(position.getString("received_at")));
+
+		bike.setColor(sku.getString("color"));
+		bike.setMarket(sku.getString("market"));
+
+		bike.setPasskey(bikeJson.getString("passkey"));
+		bike.setSerial(bikeJson.getString("serial_number"));
+		bike.setMac(bikeJson.getString("mac_address"));
+		bike.setName(bikeJson.getString("nickname"));
+		bike.setFirmwareVersion(bikeJson.getString("firmware_version"));
+		bike.setActivatedAt(DateParser.formatDisplay(DateParser.parseIso8601(bikeJson.getString("activated_at"))));
+		bike.setSeenAt(DateParser.parseIso8601(bikeJson.getString("seen_at")));
+
+		return bike;
+	}
+}
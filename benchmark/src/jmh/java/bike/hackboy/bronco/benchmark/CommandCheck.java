@@ -0,0 +1,190 @@
+package bike.hackboy.bronco.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import bike.hackboy.bronco.data.Command;
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.gatt.Gatt;
+import bike.hackboy.bronco.hal.BikeSession;
+import bike.hackboy.bronco.hal.ConnectionManager;
+import bike.hackboy.bronco.hal.RegisterCache;
+import bike.hackboy.bronco.hal.sim.RegisterFile;
+import bike.hackboy.bronco.hal.sim.SimulatedBike;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.Telemetry;
+import bike.hackboy.bronco.utils.NotificationEnabler;
+import bike.hackboy.bronco.utils.SequencedWriter;
+
+/**
+ * The settings commands the service sends, sent the same way: {@link Gatt}, {@link SequencedWriter}
+ * and {@link NotificationEnabler} on a {@link BikeSession} from a {@link ConnectionManager},
+ * a {@link SimulatedBike} with a lossy link at the other end. Fails when a setting doesn't
+ * reach the bike, a reply is tagged with the wrong register or the queue depth doesn't come
+ * back to where it started. Part of {@code ./gradlew check}.
+ */
+public class CommandCheck {
+	protected static final double LOSS_RATE = 0.05;
+	protected static final long TIMEOUT = 20000;
+	protected static final int MAX_ROUNDS = 5;
+
+	protected static final int SPEED = 32;
+	protected static final int AUTO_LOCK = 10;
+
+	public static void main(String[] args) throws Exception {
+		SimulatedBike bike = new SimulatedBike(7);
+		bike.setLatency(5, 5);
+		bike.setLossRate(LOSS_RATE);
+
+		ConnectionManager connections = new ConnectionManager(new ConnectionManager.TransportFactory() {
+			@Override
+			public BikeTransport create(String mac) {
+				return bike;
+			}
+		});
+
+		int[] tagged = { 0 };
+		int[] mistagged = { 0 };
+
+		long depth = Telemetry.metrics.queueDepth.get();
+		BikeSession session = connections.open("sim");
+
+		if (!session.awaitReady(TIMEOUT)) {
+			System.err.println("command check: the simulated bike never got ready");
+			System.exit(1);
+		}
+
+		RegisterCache registers = session.getRegisters();
+
+		// what each register the check reads holds before and after, a reply tagged with the
+		// wrong register carries a value from some other list
+		RegisterFile onBike = bike.getRegisters();
+		Map<Integer, List<Integer>> held = new HashMap<>();
+		held.put(key(RegisterFile.UNIT_BIKE, 0), Arrays.asList(onBike.read(RegisterFile.UNIT_BIKE, 0), AUTO_LOCK));
+		held.put(key(RegisterFile.UNIT_BIKE, 4), Arrays.asList(onBike.read(RegisterFile.UNIT_BIKE, 4), SPEED));
+		held.put(key(RegisterFile.UNIT_MOTOR, 11), Collections.singletonList(onBike.read(RegisterFile.UNIT_MOTOR, 11)));
+
+		session.setCallback(new BikeTransport.Callback() {
+			@Override
+			public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+				if (!Uuid.characteristicSettingsRead.equals(characteristic) || value[1] != 0x3) return;
+
+				// the register the service tags its broadcasts with
+				int unit = value[0] & 0xff;
+				List<Integer> values = held.get(key(unit, registers.getLastReplied(unit)));
+
+				synchronized (tagged) {
+					tagged[0]++;
+					if (values == null || !values.contains(((value[3] & 0xff) << 8) | (value[4] & 0xff))) mistagged[0]++;
+				}
+			}
+		});
+
+		// enable-notify
+		CountDownLatch subscribed = new CountDownLatch(1);
+		NotificationEnabler enabler = new NotificationEnabler() {
+			@Override
+			protected void end() {
+				subscribed.countDown();
+			}
+		};
+
+		enabler.setConnection(session);
+		enabler.add(Uuid.serviceCby, Uuid.characteristicUnlock);
+		enabler.add(Uuid.serviceSettings, Uuid.characteristicSettingsRead);
+		enabler.run();
+
+		boolean finished = subscribed.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		int rounds = 0;
+
+		// commands and replies can be lost like anything else, the app would ask again too
+		while (finished && !(settled(registers) && replied(tagged)) && rounds < MAX_ROUNDS) {
+			rounds++;
+
+			// set-speed
+			Gatt.ensureHasCharacteristic(session, Uuid.serviceSettings, Uuid.characteristicSettingsWrite);
+			Gatt.writeCharacteristic(session, Uuid.serviceSettings, Uuid.characteristicSettingsWrite,
+				Command.withChecksum(Command.withValue(Command.SET_SPEED, SPEED)));
+
+			// set-auto-lock, then read-speed-and-motor-mode
+			CountDownLatch written = new CountDownLatch(1);
+			SequencedWriter writer = new SequencedWriter() {
+				@Override
+				protected void end() {
+					written.countDown();
+				}
+			};
+
+			writer.setConnection(session);
+			writer.add(Uuid.serviceSettings, Uuid.characteristicSettingsWrite, Command.withChecksum(Command.withValue(Command.SET_AUTO_LOCK, AUTO_LOCK)));
+			writer.add(Uuid.serviceSettings, Uuid.characteristicSettingsWrite, Command.withChecksum(Command.READ_AUTO_LOCK));
+			writer.add(Uuid.serviceSettings, Uuid.characteristicSettingsWrite, Command.withChecksum(Command.READ_MOTOR_MODE));
+			writer.add(Uuid.serviceSettings, Uuid.characteristicSettingsWrite, Command.withChecksum(Command.READ_SPEED));
+			writer.run();
+
+			finished = written.await(TIMEOUT, TimeUnit.MILLISECONDS) && session.awaitIdle(TIMEOUT);
+		}
+
+		int replies;
+		int wrong;
+
+		synchronized (tagged) {
+			replies = tagged[0];
+			wrong = mistagged[0];
+		}
+
+		System.out.printf("command check: %d rounds, %d tagged replies, %d mistagged, speed %d, auto lock %d, %d packets lost, %d retries%n",
+			rounds, replies, wrong, onBike.read(RegisterFile.UNIT_BIKE, 4), onBike.read(RegisterFile.UNIT_BIKE, 0),
+			bike.getPacketsLost(), Telemetry.metrics.retries.get());
+
+		connections.shutdown();
+
+		boolean failed = false;
+
+		if (!finished) {
+			System.err.println("command check: the commands didn't all go out in time");
+			failed = true;
+		}
+
+		if (!settled(registers) || onBike.read(RegisterFile.UNIT_BIKE, 4) != SPEED || onBike.read(RegisterFile.UNIT_BIKE, 0) != AUTO_LOCK) {
+			System.err.println("command check: the settings didn't make it to the bike and back");
+			failed = true;
+		}
+
+		if (replies == 0 || wrong > 0) {
+			System.err.println("command check: read replies tagged with the wrong register");
+			failed = true;
+		}
+
+		if (Telemetry.metrics.queueDepth.get() != depth) {
+			System.err.println("command check: the queue depth didn't come back down");
+			failed = true;
+		}
+
+		if (failed) System.exit(1);
+	}
+
+	protected static int key(int unit, int register) {
+		return unit << 16 | register;
+	}
+
+	protected static boolean replied(int[] tagged) {
+		synchronized (tagged) {
+			return tagged[0] > 0;
+		}
+	}
+
+	// the bike acknowledged both, by a write reply or a read
+	protected static boolean settled(RegisterCache registers) {
+		Integer speed = registers.get(RegisterFile.UNIT_BIKE, 4);
+		Integer autoLock = registers.get(RegisterFile.UNIT_BIKE, 0);
+
+		return speed != null && speed == SPEED && autoLock != null && autoLock == AUTO_LOCK;
+	}
+}
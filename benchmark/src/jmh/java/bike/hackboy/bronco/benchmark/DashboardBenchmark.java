@@ -0,0 +1,58 @@
+package bike.hackboy.bronco.benchmark;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.ParseException;
+
+import bike.hackboy.bronco.DashboardProto;
+import bike.hackboy.bronco.bean.DashboardBean;
+import bike.hackboy.bronco.utils.Converter;
+import bike.hackboy.bronco.utils.DateParser;
+
+/**
+ * The per-notification dashboard path, plus the timestamp parsing of the cloud responses.
+ */
+@State(Scope.Thread)
+public class DashboardBenchmark {
+	protected byte[] frame;
+	protected DashboardProto.Dashboard parsed;
+	protected int duration;
+
+	@Setup
+	public void setup() {
+		parsed = Frames.dashboard(1234, 24, 250, 5678, 81);
+		frame = parsed.toByteArray();
+		duration = 4321;
+	}
+
+	@Benchmark
+	public DashboardProto.Dashboard parseFrom() throws InvalidProtocolBufferException {
+		return DashboardProto.Dashboard.parseFrom(frame);
+	}
+
+	@Benchmark
+	public DashboardBean fromProtobuf() {
+		return new DashboardBean().fromProtobuf(parsed);
+	}
+
+	@Benchmark
+	public DashboardBean parseAndConvert() throws InvalidProtocolBufferException {
+		// what BikeService does for every frame
+		return new DashboardBean().fromProtobuf(DashboardProto.Dashboard.parseFrom(frame));
+	}
+
+	@Benchmark
+	public int[] secondsToTime() {
+		return Converter.secondsToTime(duration);
+	}
+
+	@Benchmark
+	public long parseIso8601() throws ParseException {
+		return DateParser.parseIso8601Millis("2021-03-14T15:09:26.535Z");
+	}
+}
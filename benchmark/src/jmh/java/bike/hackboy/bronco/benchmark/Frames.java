@@ -0,0 +1,76 @@
+package bike.hackboy.bronco.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import bike.hackboy.bronco.DashboardProto;
+import bike.hackboy.bronco.data.Command;
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.telemetry.FrameLog;
+import bike.hackboy.bronco.telemetry.FrameLogWriter;
+
+/**
+ * Synthetic dashboard frames, shaped like what the bike sends mid ride.
+ */
+public class Frames {
+	public static DashboardProto.Dashboard dashboard(int duration, int speed, int power, int distance, int battery) {
+		return DashboardProto.Dashboard.newBuilder()
+			.setTripId(0x5eed)
+			.setDuration(duration)
+			.setSpeed(speed)
+			.setPower(power)
+			.setDistance(distance)
+			.setBattery(battery)
+			.setAssistance(1)
+			.setLights(1)
+			.build();
+	}
+
+	/** Shaped like a /bikes/{id} response, including the parts the app never reads. */
+	public static String bikeResponse() {
+		StringBuilder rides = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			if (i > 0) rides.append(',');
+			rides.append("{\"id\":").append(1000 + i)
+				.append(",\"distance\":").append(3.5 + i)
+				.append(",\"started_at\":\"2021-03-0").append(1 + i % 9).append("T08:12:44.000Z\"}");
+		}
+
+		return "{\"id\":4242,\"serial_number\":\"CBY-000424242\",\"mac_address\":\"E8:EB:11:0B:FA:42\","
+			+ "\"nickname\":\"Bronco\",\"passkey\":\"123456\",\"firmware_version\":\"1.4.2\","
+			+ "\"battery_state_of_charge\":81,\"pcb_battery_state_of_charge\":97,\"total_co2_saved\":12345,"
+			+ "\"total_distance\":1234.5,\"autonomy\":42.7,\"activated_at\":\"2020-06-12T14:03:27.000Z\","
+			+ "\"seen_at\":\"2021-03-09T18:22:10.123Z\",\"stolen\":false,\"offline\":null,"
+			+ "\"position\":{\"address\":\"Dam 1, Amsterdam\",\"latitude\":52.3731,\"longitude\":4.8926,"
+			+ "\"received_at\":\"2021-03-09T18:20:02.000Z\",\"accuracy\":12},"
+			+ "\"sku\":{\"color\":\"absolute-black\",\"market\":\"NL\",\"model\":\"classic\",\"size\":\"m\"},"
+			+ "\"rides\":[" + rides + "]}";
+	}
+
+	/**
+	 * Writes a capture of a ride: the lock read, a speed read and its reply, then one dashboard
+	 * frame a second, locking again at the end. Timestamps are fixed, so the file is the same
+	 * every time.
+	 */
+	public static void capture(File file, int frames) throws IOException {
+		long second = 1_000_000_000L;
+		long time = 1000 * second;
+
+		FrameLogWriter writer = new FrameLogWriter(file, 1_600_000_000_000L, time);
+
+		writer.append(FrameLog.TYPE_READ, Uuid.characteristicUnlock, time, new byte[] { 1 });
+		writer.append(FrameLog.TYPE_WRITE, Uuid.characteristicSettingsWrite, time + 1000, Command.withChecksum(Command.READ_SPEED));
+		writer.append(FrameLog.TYPE_NOTIFY, Uuid.characteristicSettingsRead, time + 2000, Command.withChecksum(new byte[] { 10, 3, 2, 0, 25 }));
+
+		for (int i = 0; i < frames; i++) {
+			time += second;
+
+			// a ride: speed and power wander, distance and duration only go up, battery goes down
+			DashboardProto.Dashboard frame = dashboard(i, 18 + i % 9, 120 + (i * 37) % 230, i * 6, Math.max(1, 90 - i / 64));
+			writer.append(FrameLog.TYPE_NOTIFY, Uuid.characteristicDashboard, time, frame.toByteArray());
+		}
+
+		writer.append(FrameLog.TYPE_NOTIFY, Uuid.characteristicUnlock, time + second, new byte[] { 0 });
+		writer.close();
+	}
+}
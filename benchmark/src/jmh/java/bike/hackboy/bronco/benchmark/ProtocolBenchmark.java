@@ -0,0 +1,53 @@
+package bike.hackboy.bronco.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import bike.hackboy.bronco.data.Command;
+import bike.hackboy.bronco.utils.Converter;
+import bike.hackboy.bronco.utils.Crc16;
+
+/**
+ * Building and checking settings commands, what every Modbus write and reply goes through.
+ */
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+	protected byte[] command;
+	protected byte[] reply;
+	protected int speed;
+
+	@Setup
+	public void setup() {
+		command = Command.withValue(Command.SET_SPEED, 32);
+		reply = Command.withChecksum(new byte[] { 1, 16, 1, (byte) 0xFF, 0, 1 });
+		speed = 32;
+	}
+
+	@Benchmark
+	public byte[] crc16() {
+		return Crc16.getChecksum(command);
+	}
+
+	@Benchmark
+	public byte[] withValue() {
+		return Command.withValue(Command.SET_SPEED, speed);
+	}
+
+	@Benchmark
+	public byte[] withChecksum() {
+		return Command.withChecksum(command);
+	}
+
+	@Benchmark
+	public byte[] withValueAndChecksum() {
+		return Command.withChecksum(Command.withValue(Command.SET_SPEED, speed));
+	}
+
+	@Benchmark
+	public String byteArrayToHexString() {
+		// FlashWriter compares replies this way
+		return Converter.byteArrayToHexString(reply);
+	}
+}
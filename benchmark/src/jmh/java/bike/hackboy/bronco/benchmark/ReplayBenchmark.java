@@ -0,0 +1,66 @@
+package bike.hackboy.bronco.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import bike.hackboy.bronco.hal.transport.ReplayTransport;
+import bike.hackboy.bronco.telemetry.FrameLogReader;
+import bike.hackboy.bronco.telemetry.Replay;
+
+/**
+ * A recorded ride read back: just the file, and the whole replay through its own pipeline.
+ * Both are per capture of {@link #FRAMES} frames, not per frame.
+ */
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+	protected static final int FRAMES = 1000;
+
+	protected File capture;
+
+	@Setup
+	public void setup() throws IOException {
+		capture = File.createTempFile("replay", ".bin");
+		Frames.capture(capture, FRAMES);
+	}
+
+	@TearDown
+	public void tearDown() {
+		capture.delete();
+	}
+
+	@Benchmark
+	public long read() throws IOException {
+		long bytes = 0;
+
+		try (FrameLogReader reader = new FrameLogReader(capture)) {
+			while (reader.next()) bytes += reader.getValue().length;
+		}
+
+		return bytes;
+	}
+
+	@Benchmark
+	public double replay() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+
+		Replay replay = new Replay(capture, ReplayTransport.AS_FAST_AS_POSSIBLE);
+		replay.setOnFinishedListener(new Replay.OnFinishedListener() {
+			@Override
+			public void onFinished(Replay replay) {
+				done.countDown();
+			}
+		});
+
+		replay.start();
+		done.await();
+
+		return replay.getTotalEnergy();
+	}
+}
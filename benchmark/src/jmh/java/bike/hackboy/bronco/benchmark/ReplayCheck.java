@@ -0,0 +1,87 @@
+package bike.hackboy.bronco.benchmark;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import bike.hackboy.bronco.hal.transport.ReplayTransport;
+import bike.hackboy.bronco.telemetry.Replay;
+
+/**
+ * Replays the same capture twice as fast as it goes and fails when the two runs don't agree
+ * on every number, or when a version 1 capture no longer plays. Part of {@code ./gradlew check}.
+ */
+public class ReplayCheck {
+	protected static final int FRAMES = 5000;
+
+	public static void main(String[] args) throws Exception {
+		File capture = File.createTempFile("replay", ".bin");
+		capture.deleteOnExit();
+		Frames.capture(capture, FRAMES);
+
+		String first = run(capture);
+		String second = run(capture);
+
+		System.out.println("replay: " + first);
+
+		boolean failed = false;
+
+		if (!first.equals(second)) {
+			System.err.println("replay: two runs of the same capture differ");
+			System.err.println("replay: " + second);
+			failed = true;
+		}
+
+		if (!first.startsWith(FRAMES + " frames, 1 reads, 1 writes")) {
+			System.err.println("replay: records went missing");
+			failed = true;
+		}
+
+		// older captures only have notifications, the layout is otherwise the same
+		try (RandomAccessFile raf = new RandomAccessFile(capture, "rw")) {
+			raf.seek(4);
+			raf.writeShort(1);
+		}
+
+		String legacy = run(capture);
+
+		if (!legacy.equals(first)) {
+			System.err.println("replay: version 1 capture doesn't play the same");
+			System.err.println("replay: " + legacy);
+			failed = true;
+		}
+
+		if (failed) System.exit(1);
+	}
+
+	/** @return everything the replay worked out, as one string to compare */
+	protected static String run(File capture) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+
+		Replay replay = new Replay(capture, ReplayTransport.AS_FAST_AS_POSSIBLE);
+		replay.setOnFinishedListener(new Replay.OnFinishedListener() {
+			@Override
+			public void onFinished(Replay replay) {
+				done.countDown();
+			}
+		});
+
+		replay.start();
+
+		if (!done.await(30, TimeUnit.SECONDS)) {
+			replay.stop();
+			throw new IllegalStateException("replay of " + FRAMES + " frames didn't finish in 30 s");
+		}
+
+		return String.format("%d frames, %d reads, %d writes, %d invalid, %d trips, %.6f Wh, %.6f km range",
+			replay.getFrames(),
+			replay.getReads(),
+			replay.getWrites(),
+			replay.getFramesInvalid(),
+			replay.getTrips().size(),
+			replay.getTotalEnergy(),
+			replay.getRange().getRange()
+		);
+	}
+}
@@ -0,0 +1,146 @@
+package bike.hackboy.bronco.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import bike.hackboy.bronco.data.Uuid;
+import bike.hackboy.bronco.hal.sim.SimulatedBike;
+import bike.hackboy.bronco.hal.transport.BikeTransport;
+import bike.hackboy.bronco.telemetry.DashboardFrame;
+import bike.hackboy.bronco.telemetry.DashboardPipeline;
+import bike.hackboy.bronco.telemetry.EnergyIntegrator;
+
+/**
+ * A few seconds of riding a {@link SimulatedBike} over a lossy link, its dashboard frames fed
+ * through a {@link DashboardPipeline} the way the service does it. Fails when a frame goes
+ * missing between the simulator and the consumer, or arrives out of order. Part of
+ * {@code ./gradlew check}.
+ */
+public class SimulatedRide {
+	protected static final long RIDE_MILLIS = 3000;
+	protected static final double FRAMES_PER_SECOND = 100;
+	protected static final double LOSS_RATE = 0.05;
+
+	public static void main(String[] args) throws Exception {
+		SimulatedBike bike = new SimulatedBike(42);
+		bike.setLatency(5, 5);
+		bike.setLossRate(LOSS_RATE);
+		bike.setDashboardRate(FRAMES_PER_SECOND);
+
+		EnergyIntegrator energy = new EnergyIntegrator();
+		DashboardPipeline pipeline = new DashboardPipeline();
+
+		int[] frames = { 0 };
+		int[] outOfOrder = { 0 };
+		int[] notifications = { 0 };
+
+		DashboardPipeline.Consumer consumer = new DashboardPipeline.Consumer("ride", DashboardFrame.ALL, 0) {
+			protected int lastDuration = -1;
+			protected int lastDistance = -1;
+
+			@Override
+			public boolean onFrame(DashboardFrame frame) {
+				frames[0]++;
+
+				if (frame.getDuration() < lastDuration || frame.getDistance() < lastDistance) outOfOrder[0]++;
+				lastDuration = frame.getDuration();
+				lastDistance = frame.getDistance();
+
+				energy.onSample(frame.getTimestamp(), frame.getTripId(), frame.getDuration(), frame.getDistance(), frame.getPower());
+				return true;
+			}
+		};
+
+		pipeline.add(consumer);
+		pipeline.setActive(consumer, true);
+
+		CountDownLatch unlocked = new CountDownLatch(1);
+
+		bike.connect(new BikeTransport.Callback() {
+			@Override
+			public void onConnectionStateChange(int newState) {
+				if (newState == BikeTransport.STATE_CONNECTED) bike.discoverServices();
+			}
+
+			@Override
+			public void onServicesDiscovered(boolean success) {
+				bike.setNotification(Uuid.serviceCby, Uuid.characteristicUnlock, true);
+				bike.setNotification(Uuid.serviceCby, Uuid.characteristicDashboard, true);
+			}
+
+			@Override
+			public void onDescriptorWrite(UUID characteristic, boolean success) {
+				if (Uuid.characteristicDashboard.equals(characteristic)) {
+					bike.writeCharacteristic(Uuid.serviceCby, Uuid.characteristicUnlock, new byte[] { 1 });
+				}
+			}
+
+			@Override
+			public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+				notifications[0]++;
+
+				if (Uuid.characteristicUnlock.equals(characteristic)) {
+					if (value[0] == 1) unlocked.countDown();
+					return;
+				}
+
+				long now = bike.nanoTime();
+				pipeline.onFrame(value, now, now);
+			}
+		});
+
+		// the unlock write can be lost like anything else, ask again until it goes through
+		while (!unlocked.await(200, TimeUnit.MILLISECONDS)) {
+			bike.writeCharacteristic(Uuid.serviceCby, Uuid.characteristicUnlock, new byte[] { 1 });
+		}
+
+		Thread.sleep(RIDE_MILLIS);
+
+		bike.writeCharacteristic(Uuid.serviceCby, Uuid.characteristicUnlock, new byte[] { 0 });
+		// let whatever is still on the link land
+		Thread.sleep(200);
+
+		long sent;
+		long lost;
+		int received;
+		int decoded;
+
+		// the callbacks run on the simulator thread
+		synchronized (bike) {
+			sent = bike.getNotificationsSent();
+			lost = bike.getPacketsLost();
+			received = notifications[0];
+			decoded = frames[0];
+		}
+
+		bike.close();
+
+		System.out.printf("simulated ride: %d frames decoded, %d notifications sent, %d received, %d packets lost, %d out of order, %.3f Wh%n",
+			decoded, sent, received, lost, outOfOrder[0], energy.getTripEnergy());
+
+		boolean failed = false;
+
+		if (decoded < RIDE_MILLIS / 1000 * FRAMES_PER_SECOND * (1 - LOSS_RATE) / 2) {
+			System.err.println("simulated ride: far fewer frames than the bike should have sent");
+			failed = true;
+		}
+
+		if (received != sent) {
+			System.err.println("simulated ride: notifications sent and received don't match");
+			failed = true;
+		}
+
+		if (outOfOrder[0] > 0) {
+			System.err.println("simulated ride: frames arrived out of order");
+			failed = true;
+		}
+
+		if (energy.getTripEnergy() <= 0) {
+			System.err.println("simulated ride: no energy integrated");
+			failed = true;
+		}
+
+		if (failed) System.exit(1);
+	}
+}